@@ -38,6 +38,9 @@ abstract class AbstractLazyLoader implements LazyLoader {
     private final Session session;
     private final Mapper mapper;
 
+    private boolean loaded;
+    private Object loadedObject;
+
     public AbstractLazyLoader(Session session, Mapper mapper) {
         this.session = session;
         this.mapper = mapper;
@@ -58,10 +61,17 @@ abstract class AbstractLazyLoader implements LazyLoader {
         return sessionToUse;
     }
 
+    /**
+     * @return true if the session supplied was created for the loading, and is therefore released once loaded
+     */
+    protected final boolean isTemporarySession(Session session) {
+        Session sessionToUse = Jcrom.getCurrentSession() != null ? Jcrom.getCurrentSession() : this.session;
+        return sessionToUse == null || !sessionToUse.equals(session);
+    }
+
     private void releaseSession(Session session) {
         if (session != null) {
-            Session sessionToUse = Jcrom.getCurrentSession() != null ? Jcrom.getCurrentSession() : this.session;
-            if (!sessionToUse.equals(session)) {
+            if (isTemporarySession(session)) {
                 SessionFactoryUtils.releaseSession(session);
                 if (logger.isLoggable(Level.FINE)) {
                     logger.fine("Closing the newly created session");
@@ -70,16 +80,51 @@ abstract class AbstractLazyLoader implements LazyLoader {
         }
     }
 
+    /**
+     * Loads the object once, the proxy and the mapper then share the same instance.
+     */
     @Override
-    public final Object loadObject() throws Exception {
+    public final synchronized Object loadObject() throws Exception {
+        if (loaded) {
+            return loadedObject;
+        }
         // Retrieve the session. If the session is closed, create a new session
         Session sessionToUse = getSession();
+        // Record the resolution if N+1 detection is enabled
+        LazyLoadDetector detector = mapper.getJcrom().getLazyLoadDetector();
+        if (detector != null) {
+            detector.record(getParentObject(), getFieldName(), getLoadedPath());
+        }
         // Load object
         Object obj = doLoadObject(sessionToUse, mapper);
         // Close only the newly created session
         releaseSession(sessionToUse);
+        loadedObject = obj;
+        loaded = true;
         return obj;
     }
 
+    /**
+     * @return true if the object has been loaded, either by the proxy or by the mapper
+     */
+    final synchronized boolean isLoaded() {
+        return loaded;
+    }
+
     protected abstract Object doLoadObject(Session session, Mapper mapper) throws Exception;
+
+    /**
+     * @return the entity holding the lazily loaded field
+     */
+    protected abstract Object getParentObject();
+
+    /**
+     * @return the name of the lazily loaded field
+     */
+    protected abstract String getFieldName();
+
+    /**
+     * @return the path of the loaded item, that is the path of the parent entity node followed by the child node or property name
+     */
+    protected abstract String getLoadedPath();
 }
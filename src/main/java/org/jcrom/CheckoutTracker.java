@@ -0,0 +1,124 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.nodetype.NodeType;
+
+import org.jcrom.util.JcrUtils;
+
+/**
+ * Keeps track of the versionable nodes modified while updating an entity.
+ * A versionable node is checked out lazily, just before the first modification of itself or of one of its
+ * non-versionable descendants, so that only the modified versionable nodes need to be checked in afterwards.
+ * 
+ * @author Nicolas Dos Santos
+ */
+class CheckoutTracker {
+
+    private static final Logger logger = Logger.getLogger(CheckoutTracker.class.getName());
+
+    private static final String NOT_VERSIONABLE = "";
+
+    private static final Comparator<Node> DEEPEST_FIRST = new Comparator<Node>() {
+        @Override
+        public int compare(Node n1, Node n2) {
+            try {
+                return n2.getDepth() - n1.getDepth();
+            } catch (RepositoryException e) {
+                throw new JcrMappingException("Could not get node depth", e);
+            }
+        }
+    };
+
+    /** Path of the nearest versionable ancestor-or-self, by node path */
+    private final Map<String, String> versionablePaths = new HashMap<String, String>();
+    /** Versionable nodes modified, by path */
+    private final Map<String, Node> modifiedNodes = new LinkedHashMap<String, Node>();
+
+    /**
+     * Must be called before modifying the node supplied (setting a property, adding or removing a child node).
+     * Checks out the nearest versionable ancestor-or-self of the node, if it is not already checked out.
+     * 
+     * @param node the node about to be modified
+     * @throws RepositoryException
+     */
+    void checkout(Node node) throws RepositoryException {
+        Node versionable = findVersionable(node);
+        if (versionable != null && !modifiedNodes.containsKey(versionable.getPath())) {
+            if (!versionable.isCheckedOut()) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Checking out " + versionable.getPath());
+                }
+                JcrUtils.checkout(versionable);
+            }
+            modifiedNodes.put(versionable.getPath(), versionable);
+        }
+    }
+
+    /**
+     * @return the versionable nodes modified, the deepest first
+     */
+    List<Node> getModifiedNodes() {
+        List<Node> nodes = new ArrayList<Node>(modifiedNodes.values());
+        Collections.sort(nodes, DEEPEST_FIRST);
+        return nodes;
+    }
+
+    private Node findVersionable(Node node) throws RepositoryException {
+        List<String> visitedPaths = new ArrayList<String>();
+        Node current = node;
+        String versionablePath = null;
+        while (versionablePath == null) {
+            String path = current.getPath();
+            versionablePath = versionablePaths.get(path);
+            if (versionablePath == null) {
+                visitedPaths.add(path);
+                if (current.isNodeType(NodeType.MIX_VERSIONABLE)) {
+                    versionablePath = path;
+                } else if (current.getDepth() == 0) {
+                    versionablePath = NOT_VERSIONABLE;
+                } else {
+                    current = current.getParent();
+                }
+            }
+        }
+        for (String path : visitedPaths) {
+            versionablePaths.put(path, versionablePath);
+        }
+        if (versionablePath.equals(NOT_VERSIONABLE)) {
+            return null;
+        }
+        Node versionable = modifiedNodes.get(versionablePath);
+        if (versionable == null) {
+            versionable = versionablePath.equals(current.getPath()) ? current : node.getSession().getNode(versionablePath);
+        }
+        return versionable;
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Workspace;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.NodeTypeTemplate;
+
+import org.jcrom.annotations.JcrChildNode.Bucketing;
+
+/**
+ * Layout of the children of a List stored in intermediate bucket nodes. See {@link Bucketing}.
+ * Bucket nodes carry a mixin type registered on first use, which tells them apart from children named like a bucket.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+final class ChildNodeBuckets {
+
+    private static final String POLICY_NODE_NAME = "rep:policy";
+
+    static final String MIXIN_TYPE = JcromNamespace.PREFIX + ":bucket";
+
+    private ChildNodeBuckets() {
+    }
+
+    /**
+     * @param bucketing the layout
+     * @return the number of bucket levels between the container node and the children
+     */
+    static int getDepth(Bucketing bucketing) {
+        switch (bucketing) {
+            case HASH:
+                return 1;
+            case DATE:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Returns the names of the buckets storing a child, from the container node.
+     * 
+     * @param bucketing the layout
+     * @param childName the clean name of the child
+     * @param date the date the child is added
+     * @return the names of the buckets
+     */
+    static String[] getBucketNames(Bucketing bucketing, String childName, Calendar date) {
+        switch (bucketing) {
+            case HASH:
+                return new String[] { String.format("%02x", childName.hashCode() & 0xff) };
+            case DATE:
+                return new String[] { String.format("%04d", date.get(Calendar.YEAR)), String.format("%02d", date.get(Calendar.MONTH) + 1), String.format("%02d", date.get(Calendar.DAY_OF_MONTH)) };
+            default:
+                return new String[0];
+        }
+    }
+
+    /**
+     * Returns the bucket node in which a new child is added, creating it if needed.
+     * 
+     * @param container the container node
+     * @param bucketing the layout
+     * @param childName the clean name of the child
+     * @param nodeType the node type of the bucket nodes
+     * @param mapper the mapper
+     * @return the bucket node
+     * @throws RepositoryException
+     */
+    static Node getBucket(Node container, Bucketing bucketing, String childName, String nodeType, Mapper mapper) throws RepositoryException {
+        return getBucket(container, getBucketNames(bucketing, childName, Calendar.getInstance()), nodeType, mapper);
+    }
+
+    private static Node getBucket(Node container, String[] bucketNames, String nodeType, Mapper mapper) throws RepositoryException {
+        Node bucket = container;
+        for (String bucketName : bucketNames) {
+            if (bucket.hasNode(bucketName)) {
+                bucket = bucket.getNode(bucketName);
+                if (!isBucket(bucket)) {
+                    throw new JcrMappingException("Could not use " + bucket.getPath() + " as a bucket, since it is not a bucket node");
+                }
+            } else {
+                mapper.checkout(bucket);
+                bucket = bucket.addNode(bucketName, nodeType);
+                addMixinType(bucket);
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the children stored in a container node, in the order of the buckets. Children not moved into a bucket yet
+     * are returned as well.
+     * 
+     * @param container the container node
+     * @param bucketing the layout
+     * @return the child nodes
+     * @throws RepositoryException
+     */
+    static List<Node> getChildNodes(Node container, Bucketing bucketing) throws RepositoryException {
+        List<Node> childNodes = new ArrayList<Node>();
+        collectChildNodes(container, getDepth(bucketing), childNodes);
+        return childNodes;
+    }
+
+    private static void collectChildNodes(Node node, int depth, List<Node> childNodes) throws RepositoryException {
+        NodeIterator iterator = node.getNodes();
+        while (iterator.hasNext()) {
+            Node child = iterator.nextNode();
+            // ignore the policy node
+            if (child.getName().equals(POLICY_NODE_NAME)) {
+                continue;
+            }
+            if (depth == 0 || !isBucket(child)) {
+                childNodes.add(child);
+            } else {
+                collectChildNodes(child, depth - 1, childNodes);
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets left without any child.
+     * 
+     * @param container the container node
+     * @param bucketing the layout
+     * @param mapper the mapper
+     * @throws RepositoryException
+     */
+    static void removeEmptyBuckets(Node container, Bucketing bucketing, Mapper mapper) throws RepositoryException {
+        removeEmptyBuckets(container, getDepth(bucketing), mapper);
+    }
+
+    private static void removeEmptyBuckets(Node node, int depth, Mapper mapper) throws RepositoryException {
+        if (depth == 0) {
+            return;
+        }
+        NodeIterator iterator = node.getNodes();
+        while (iterator.hasNext()) {
+            Node bucket = iterator.nextNode();
+            if (bucket.getName().equals(POLICY_NODE_NAME) || !isBucket(bucket)) {
+                continue;
+            }
+            removeEmptyBuckets(bucket, depth - 1, mapper);
+            if (!bucket.hasNodes()) {
+                mapper.checkout(node);
+                bucket.remove();
+            }
+        }
+    }
+
+    /**
+     * Moves the children stored directly in a container node into buckets. The bucket nodes are recognized by their mixin
+     * type. Nothing is moved if a child is named like a first-level bucket, since it would collide with a bucket.
+     * With Bucketing.DATE, the children are bucketed by their jcr:created date when they have one, by the current date
+     * otherwise.
+     * 
+     * @param container the container node
+     * @param bucketing the layout
+     * @param nodeType the node type of the bucket nodes
+     * @param mapper the mapper
+     * @return the number of children moved
+     * @throws RepositoryException
+     */
+    static int migrate(Node container, Bucketing bucketing, String nodeType, Mapper mapper) throws RepositoryException {
+        List<Node> flatChildren = new ArrayList<Node>();
+        NodeIterator iterator = container.getNodes();
+        while (iterator.hasNext()) {
+            Node child = iterator.nextNode();
+            if (!child.getName().equals(POLICY_NODE_NAME) && !isBucket(child)) {
+                if (isBucketName(bucketing, child.getName())) {
+                    throw new JcrMappingException("Could not bucket the child nodes of " + container.getPath() + ", since the child " + child.getName() + " is named like a bucket");
+                }
+                flatChildren.add(child);
+            }
+        }
+        for (Node child : flatChildren) {
+            Calendar date = child.hasProperty(Property.JCR_CREATED) ? child.getProperty(Property.JCR_CREATED).getDate() : Calendar.getInstance();
+            Node bucket = getBucket(container, getBucketNames(bucketing, child.getName(), date), nodeType, mapper);
+            mapper.checkout(container);
+            container.getSession().move(child.getPath(), bucket.getPath() + "/" + child.getName());
+        }
+        return flatChildren.size();
+    }
+
+    /**
+     * Looks for the mixin type by name, since Node.isNodeType fails while the namespace is not registered.
+     */
+    private static boolean isBucket(Node node) throws RepositoryException {
+        for (NodeType mixinType : node.getMixinNodeTypes()) {
+            if (MIXIN_TYPE.equals(mixinType.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addMixinType(Node bucket) throws RepositoryException {
+        Workspace workspace = bucket.getSession().getWorkspace();
+        JcromNamespace.register(workspace);
+        NodeTypeManager nodeTypeManager = workspace.getNodeTypeManager();
+        if (!nodeTypeManager.hasNodeType(MIXIN_TYPE)) {
+            NodeTypeTemplate mixinType = nodeTypeManager.createNodeTypeTemplate();
+            mixinType.setName(MIXIN_TYPE);
+            mixinType.setMixin(true);
+            // allow updates, in case another session registered the type concurrently
+            nodeTypeManager.registerNodeType(mixinType, true);
+        }
+        bucket.addMixin(MIXIN_TYPE);
+    }
+
+    private static boolean isBucketName(Bucketing bucketing, String name) {
+        switch (bucketing) {
+            case HASH:
+                return name.matches("[0-9a-f]{2}");
+            case DATE:
+                return name.matches("[0-9]{4}");
+            default:
+                return false;
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.jcrom;
 
+import java.lang.reflect.Field;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,8 +44,9 @@ class ChildNodeListLoader extends AbstractLazyLoader {
     private final int depth;
     private final NodeFilter nodeFilter;
     private final JcrChildNode jcrChildNode;
+    private final Field field;
 
-    ChildNodeListLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode) {
+    ChildNodeListLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode, Field field) {
         super(session, mapper);
         this.objectClass = objectClass;
         this.parentObject = parentObject;
@@ -52,6 +54,7 @@ class ChildNodeListLoader extends AbstractLazyLoader {
         this.depth = depth;
         this.nodeFilter = nodeFilter;
         this.jcrChildNode = jcrChildNode;
+        this.field = field;
     }
 
     @Override
@@ -63,4 +66,19 @@ class ChildNodeListLoader extends AbstractLazyLoader {
         return mapper.getChildNodeMapper().getChildrenList(objectClass, childrenContainer, parentObject, mapper, depth, nodeFilter, jcrChildNode);
     }
 
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return containerPath;
+    }
 }
@@ -17,6 +17,7 @@
  */
 package org.jcrom;
 
+import java.lang.reflect.Field;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,12 +43,13 @@ class ChildNodeLoader extends AbstractLazyLoader {
     private final int depth;
     private final NodeFilter nodeFilter;
     private final boolean pathIsContainer;
+    private final Field field;
 
-    ChildNodeLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter) {
-        this(objectClass, parentObject, containerPath, session, mapper, depth, nodeFilter, true);
+    ChildNodeLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, Field field) {
+        this(objectClass, parentObject, containerPath, session, mapper, depth, nodeFilter, true, field);
     }
 
-    ChildNodeLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, boolean pathIsContainer) {
+    ChildNodeLoader(Class<?> objectClass, Object parentObject, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, boolean pathIsContainer, Field field) {
         super(session, mapper);
         this.objectClass = objectClass;
         this.parentObject = parentObject;
@@ -55,6 +57,7 @@ class ChildNodeLoader extends AbstractLazyLoader {
         this.depth = depth;
         this.nodeFilter = nodeFilter;
         this.pathIsContainer = pathIsContainer;
+        this.field = field;
     }
 
     @Override
@@ -70,4 +73,19 @@ class ChildNodeLoader extends AbstractLazyLoader {
         }
         return mapper.getChildNodeMapper().getSingleChild(objectClass, node, parentObject, mapper, depth, nodeFilter);
     }
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return containerPath;
+    }
 }
@@ -22,8 +22,12 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -31,6 +35,7 @@ import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 
 import org.jcrom.annotations.JcrChildNode;
+import org.jcrom.annotations.JcrChildNode.Bucketing;
 import org.jcrom.type.TypeHandler;
 import org.jcrom.util.NodeFilter;
 import org.jcrom.util.ReflectionUtils;
@@ -43,6 +48,8 @@ import org.jcrom.util.ReflectionUtils;
  */
 class ChildNodeMapper {
 
+    private static final Logger logger = Logger.getLogger(ChildNodeMapper.class.getName());
+
     private static final String POLICY_NODE_NAME = "rep:policy";
 
     private final Mapper mapper;
@@ -54,7 +61,7 @@ class ChildNodeMapper {
         this.typeHandler = this.mapper.getTypeHandler();
     }
 
-    private String getNodeName(Field field) {
+    String getNodeName(Field field) {
         JcrChildNode jcrChildNode = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrChildNode.class);
         String name = field.getName();
         if (!jcrChildNode.name().equals(Mapper.DEFAULT_FIELDNAME)) {
@@ -69,6 +76,7 @@ class ChildNodeMapper {
             Node currentNode = nodeIterator.nextNode();
             // ignore the policy node
             if (!currentNode.getName().equals(POLICY_NODE_NAME)) {
+                mapper.checkout(containerNode);
                 currentNode.remove();
             }
         }
@@ -77,6 +85,7 @@ class ChildNodeMapper {
     private Node createChildNodeContainer(Node node, String containerName, JcrChildNode jcrChildNode, Mapper mapper) throws RepositoryException {
 
         if (!node.hasNode(mapper.getCleanName(containerName))) {
+            mapper.checkout(node);
             Node containerNode = node.addNode(mapper.getCleanName(containerName), jcrChildNode.containerNodeType());
 
             // add annotated mixin types
@@ -132,6 +141,7 @@ class ChildNodeMapper {
                 } else {
                     NodeIterator nodeIterator = node.getNodes(nodeName);
                     while (nodeIterator.hasNext()) {
+                        mapper.checkout(node);
                         nodeIterator.nextNode().remove();
                     }
                 }
@@ -143,37 +153,53 @@ class ChildNodeMapper {
 
         Node childContainer = createChildNodeContainer(node, nodeName, jcrChildNode, mapper);
         List<?> children = (List<?>) typeHandler.getObject(field, obj);
+        Bucketing bucketing = jcrChildNode.bucketing();
         if (children != null && !children.isEmpty()) {
             if (childContainer.hasNodes()) {
                 // children exist, we must update
-                NodeIterator childNodes = childContainer.getNodes();
                 Map<String, Object> childrenMap = new HashMap<String, Object>();
                 for (Object child : children) {
                     childrenMap.put(mapper.getNodePath(child), child);
                 }
-                while (childNodes.hasNext()) {
-                    Node child = childNodes.nextNode();
-                    // Object childEntity = mapper.findEntityByPath(children, child.getPath());
-                    Object childEntity = childrenMap.get(child.getPath());
-                    if (childEntity == null) {
+                // remove the children that are no longer in the list, in a single pass
+                Map<String, Node> childNodesByPath = new HashMap<String, Node>();
+                Set<String> childNodeNames = new HashSet<String>();
+                boolean removed = false;
+                for (Node child : ChildNodeBuckets.getChildNodes(childContainer, bucketing)) {
+                    if (childrenMap.containsKey(child.getPath())) {
+                        childNodesByPath.put(child.getPath(), child);
+                        childNodeNames.add(child.getName());
+                    } else {
                         // this child was not found, so we remove it
+                        mapper.checkout(child.getParent());
                         child.remove();
-                    } else {
-                        mapper.updateNode(child, childEntity, childEntity.getClass(), nodeFilter, depth + 1, null);
+                        removed = true;
                     }
                 }
-                // we must add new children, if any
-                for (int i = 0; i < children.size(); i++) {
-                    Object child = children.get(i);
+                // update the existing children and add the new ones, collecting the nodes in the order of the list
+                List<Node> orderedNodes = new ArrayList<Node>(children.size());
+                for (Object child : children) {
                     String childPath = mapper.getNodePath(child);
-                    if (childPath == null || childPath.equals("") || !childContainer.hasNode(mapper.getCleanName(mapper.getNodeName(child)))) {
-                        mapper.addNode(childContainer, child, null, null);
+                    Node childNode = childPath != null ? childNodesByPath.remove(childPath) : null;
+                    if (childNode != null) {
+                        Object childEntity = childrenMap.get(childPath);
+                        orderedNodes.add(mapper.updateNode(childNode, childEntity, childEntity.getClass(), nodeFilter, depth + 1, null));
+                    } else if (childPath == null || childPath.equals("") || !childNodeNames.contains(mapper.getCleanName(mapper.getNodeName(child)))) {
+                        Node addedNode = addChildToContainer(childContainer, child, jcrChildNode, mapper);
+                        // a later entry with the same name is then treated as existing, as it was by hasNode
+                        childNodeNames.add(addedNode.getName());
+                        orderedNodes.add(addedNode);
                     }
                 }
+                if (bucketing == Bucketing.NONE) {
+                    orderChildren(childContainer, orderedNodes, mapper);
+                } else if (removed) {
+                    ChildNodeBuckets.removeEmptyBuckets(childContainer, bucketing, mapper);
+                }
             } else {
                 // no children exist, we add
                 for (int i = 0; i < children.size(); i++) {
-                    mapper.addNode(childContainer, children.get(i), null, null);
+                    addChildToContainer(childContainer, children.get(i), jcrChildNode, mapper);
                 }
             }
         } else {
@@ -182,6 +208,109 @@ class ChildNodeMapper {
         }
     }
 
+    private static Node addChildToContainer(Node childContainer, Object child, JcrChildNode jcrChildNode, Mapper mapper) throws IllegalAccessException, RepositoryException, IOException {
+        Node parentNode = childContainer;
+        if (jcrChildNode.bucketing() != Bucketing.NONE) {
+            parentNode = ChildNodeBuckets.getBucket(childContainer, jcrChildNode.bucketing(), mapper.getCleanName(mapper.getNodeName(mapper.clearCglib(child))), jcrChildNode.containerNodeType(), mapper);
+        }
+        return mapper.addNode(parentNode, child, null, null);
+    }
+
+    /**
+     * Orders the child nodes of a container as in the list supplied, with as few moves as possible: the children
+     * forming the longest subsequence already in the right order stay in place, and the others are moved.
+     * 
+     * @param childContainer the container node
+     * @param orderedNodes the child nodes, in the order of the list mapped
+     * @param mapper the mapper
+     * @throws RepositoryException
+     */
+    private static void orderChildren(Node childContainer, List<Node> orderedNodes, Mapper mapper) throws RepositoryException {
+        if (orderedNodes.size() < 2 || !childContainer.getPrimaryNodeType().hasOrderableChildNodes()) {
+            return;
+        }
+        // read the current order, which includes the renamed and added children
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        Map<String, String> names = new HashMap<String, String>();
+        Set<String> uniqueNames = new HashSet<String>();
+        NodeIterator childNodes = childContainer.getNodes();
+        while (childNodes.hasNext()) {
+            Node child = childNodes.nextNode();
+            if (!uniqueNames.add(child.getName())) {
+                // same-name siblings cannot be ordered by name
+                return;
+            }
+            positions.put(child.getIdentifier(), positions.size());
+            names.put(child.getIdentifier(), child.getName());
+        }
+
+        int size = orderedNodes.size();
+        String[] ids = new String[size];
+        int[] currentPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = orderedNodes.get(i).getIdentifier();
+            Integer position = positions.get(ids[i]);
+            if (position == null) {
+                // the child was moved out of the container by a callback
+                return;
+            }
+            currentPositions[i] = position;
+        }
+        boolean[] inPlace = getLongestIncreasingSubsequence(currentPositions);
+
+        // from the end of the list, move each misplaced child before its successor
+        String nextName = null;
+        int moves = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            String name = names.get(ids[i]);
+            if (!inPlace[i]) {
+                mapper.checkout(childContainer);
+                childContainer.orderBefore(name, nextName);
+                moves++;
+            }
+            nextName = name;
+        }
+        if (moves > 0 && logger.isLoggable(Level.FINE)) {
+            logger.fine("Moved " + moves + " of the " + size + " children of " + childContainer.getPath());
+        }
+    }
+
+    /**
+     * Finds a longest strictly increasing subsequence of the values supplied, in O(n log n).
+     * 
+     * @param values the values
+     * @return for each value, whether it belongs to the subsequence
+     */
+    static boolean[] getLongestIncreasingSubsequence(int[] values) {
+        int n = values.length;
+        // tails[k] is the index of the smallest tail of the increasing subsequences of length k + 1
+        int[] tails = new int[n];
+        int[] predecessors = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] inSubsequence = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = predecessors[i]) {
+            inSubsequence[i] = true;
+        }
+        return inSubsequence;
+    }
+
     /**
      * Maps a Map<String,Object> or Map<String,List<Object>> to a JCR Node.
      */
@@ -200,6 +329,7 @@ class ChildNodeMapper {
                     if (childContainer.hasNode(cleanKey)) {
                         if (typeHandler.isList(paramClass)) {
                             // lists are hard to update, so we just recreate it
+                            mapper.checkout(childContainer);
                             childContainer.getNode(cleanKey).remove();
                             Node listContainer = childContainer.addNode(cleanKey);
                             List<?> childList = (List<?>) entry.getValue();
@@ -222,6 +352,7 @@ class ChildNodeMapper {
                 while (childNodes.hasNext()) {
                     Node child = childNodes.nextNode();
                     if (!mapWithCleanKeys.containsKey(child.getName())) {
+                        mapper.checkout(childContainer);
                         child.remove();
                     }
                 }
@@ -243,6 +374,7 @@ class ChildNodeMapper {
         if (typeHandler.isList(paramClass)) {
             List<?> childList = (List<?>) childMap.get(key);
             // create a container for the List
+            mapper.checkout(childContainer);
             Node listContainer = childContainer.addNode(cleanKey);
             for (int i = 0; i < childList.size(); i++) {
                 mapper.addNode(listContainer, childList.get(i), null, null);
@@ -286,19 +418,15 @@ class ChildNodeMapper {
     @SuppressWarnings("unchecked")
     List<?> getChildrenList(Class<?> childObjClass, Node childrenContainer, Object parentObj, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode) throws ClassNotFoundException, InstantiationException, RepositoryException, IllegalAccessException, IOException {
         List<Object> children = jcrChildNode.listContainerClass().newInstance();
-        NodeIterator iterator = childrenContainer.getNodes();
-        while (iterator.hasNext()) {
-            Node childNode = iterator.nextNode();
-            // ignore the policy node when loading child nodes
-            if (!childNode.getName().equals(POLICY_NODE_NAME)) {
-                children.add(getSingleChild(childObjClass, childNode, parentObj, mapper, depth, nodeFilter));
-            }
+        // the policy node is ignored when loading child nodes
+        for (Node childNode : ChildNodeBuckets.getChildNodes(childrenContainer, jcrChildNode.bucketing())) {
+            children.add(getSingleChild(childObjClass, childNode, parentObj, mapper, depth, nodeFilter));
         }
         return children;
     }
 
     @SuppressWarnings("unchecked")
-    private Map<?, ?> getChildrenMap(Class<?> mapParamClass, Node childrenContainer, Object parentObj, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode) throws ClassNotFoundException, InstantiationException, RepositoryException, IllegalAccessException, IOException {
+    private Map<?, ?> getChildrenMap(Field field, Class<?> mapParamClass, Node childrenContainer, Object parentObj, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode) throws ClassNotFoundException, InstantiationException, RepositoryException, IllegalAccessException, IOException {
 
         Map<Object, Object> children = jcrChildNode.mapContainerClass().newInstance();
         NodeIterator iterator = childrenContainer.getNodes();
@@ -308,7 +436,7 @@ class ChildNodeMapper {
                 // each value in the map is a list of child nodes
                 if (jcrChildNode.lazy()) {
                     // lazy loading
-                    children.put(childNode.getName(), ProxyFactory.createChildNodeListProxy(mapParamClass, parentObj, childNode.getPath(), childNode.getSession(), mapper, depth, nodeFilter, jcrChildNode));
+                    children.put(childNode.getName(), ProxyFactory.createChildNodeListProxy(mapParamClass, parentObj, childNode.getPath(), childNode.getSession(), mapper, depth, nodeFilter, jcrChildNode, field));
                 } else {
                     // eager loading
                     children.put(childNode.getName(), getChildrenList(mapParamClass, childNode, parentObj, mapper, depth, nodeFilter, jcrChildNode));
@@ -317,7 +445,7 @@ class ChildNodeMapper {
                 // each value in the map is a child node
                 if (jcrChildNode.lazy()) {
                     // lazy loading
-                	children.put(childNode.getName(), ProxyFactory.createChildNodeProxy(mapper.findClassFromNode(mapParamClass, childNode), parentObj, childNode.getPath(), childNode.getSession(), mapper, depth, nodeFilter, false));
+                	children.put(childNode.getName(), ProxyFactory.createChildNodeProxy(mapper.findClassFromNode(mapParamClass, childNode), parentObj, childNode.getPath(), childNode.getSession(), mapper, depth, nodeFilter, false, field));
                 } else {
                     // eager loading
                     children.put(childNode.getName(), getSingleChild(mapParamClass, childNode, parentObj, mapper, depth, nodeFilter));
@@ -334,25 +462,26 @@ class ChildNodeMapper {
         return childObj;
     }
 
-    void getChildrenFromNode(Field field, Node node, Object obj, int depth, NodeFilter nodeFilter, Mapper mapper) throws ClassNotFoundException, InstantiationException, RepositoryException, IllegalAccessException, IOException {
+    void getChildrenFromNode(Field field, NodeSnapshot snapshot, Object obj, int depth, NodeFilter nodeFilter, Mapper mapper) throws ClassNotFoundException, InstantiationException, RepositoryException, IllegalAccessException, IOException {
 
         String nodeName = getNodeName(field);
         JcrChildNode jcrChildNode = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrChildNode.class);
 
-        boolean childHasNodes = node.hasNode(nodeName) && (node.getNode(nodeName).hasNodes() || node.getNode(nodeName).hasProperty(Property.JCR_CHILD_VERSION_HISTORY));
+        Node node = snapshot.getNode();
+        Node childNode = snapshot.getChildNode(nodeName);
+        boolean childHasNodes = childNode != null && (childNode.hasNodes() || childNode.hasProperty(Property.JCR_CHILD_VERSION_HISTORY));
 
-        if (node.hasNode(nodeName) && (childHasNodes || (!jcrChildNode.createContainerNode() && !typeHandler.isList(field.getType()) && !typeHandler.isMap(field.getType()))) && nodeFilter.isIncluded(nodeName, depth)) {
+        if (childNode != null && (childHasNodes || (!jcrChildNode.createContainerNode() && !typeHandler.isList(field.getType()) && !typeHandler.isMap(field.getType()))) && nodeFilter.isIncluded(nodeName, depth)) {
 
             // child nodes are almost always stored inside a container node
-            Node childrenContainer = node.getNode(nodeName);
-            childrenContainer = mapper.checkIfVersionedChild(childrenContainer);
+            Node childrenContainer = mapper.checkIfVersionedChild(childNode);
             if (typeHandler.isList(field.getType())) {
                 // we can expect more than one child object here
                 Class<?> childObjClass = ReflectionUtils.getParameterizedClass(field.getGenericType());
                 List<?> children;
                 if (jcrChildNode.lazy()) {
                     // lazy loading
-                    children = ProxyFactory.createChildNodeListProxy(childObjClass, obj, childrenContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrChildNode);
+                    children = ProxyFactory.createChildNodeListProxy(childObjClass, obj, childrenContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrChildNode, field);
                 } else {
                     // eager loading
                     children = getChildrenList(childObjClass, childrenContainer, obj, mapper, depth, nodeFilter, jcrChildNode);
@@ -362,7 +491,7 @@ class ChildNodeMapper {
                 // dynamic map of child nodes
                 // lazy loading is applied to each value in the Map
                 Class<?> mapParamClass = ReflectionUtils.getParameterizedClass(field.getGenericType(), 1);
-                Map<?, ?> childrenMap = getChildrenMap(mapParamClass, childrenContainer, obj, mapper, depth, nodeFilter, jcrChildNode);
+                Map<?, ?> childrenMap = getChildrenMap(field, mapParamClass, childrenContainer, obj, mapper, depth, nodeFilter, jcrChildNode);
                 typeHandler.setObject(field, obj, childrenMap);
             } else {
                 // instantiate the field class
@@ -370,7 +499,7 @@ class ChildNodeMapper {
                 if (childrenContainer.hasNodes() || !jcrChildNode.createContainerNode()) {
                     if (jcrChildNode.lazy()) {
                         // lazy loading
-                        typeHandler.setObject(field, obj, ProxyFactory.createChildNodeProxy(childObjClass, obj, childrenContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrChildNode.createContainerNode()));
+                        typeHandler.setObject(field, obj, ProxyFactory.createChildNodeProxy(childObjClass, obj, childrenContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrChildNode.createContainerNode(), field));
                     } else {
                         // eager loading
                         if (jcrChildNode.createContainerNode()) {
@@ -430,6 +559,10 @@ class ChildNodeMapper {
                             throw new IllegalAccessException("The child container node not found with name '" + nodeName + "' from parent node '" + parentNode.getPath() + "'");
                         }
                         Node n = parentNode.getNode(nodeName);
+                        if (jcrChildNode.bucketing() != Bucketing.NONE && childNodeName != null) {
+                            // the child is created in its bucket
+                            n = ChildNodeBuckets.getBucket(n, jcrChildNode.bucketing(), mapper.getCleanName(childNodeName), jcrChildNode.containerNodeType(), mapper);
+                        }
                         containers.add(n.getPath());
                     } else {
                         children.add(nodeName);
@@ -0,0 +1,154 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Workspace;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.NodeTypeTemplate;
+import javax.jcr.nodetype.PropertyDefinitionTemplate;
+
+import org.jcrom.util.io.FileUtils;
+import org.jcrom.util.io.IOUtils;
+
+/**
+ * Handles the SHA-256 digests of file contents. A digest is stored on the jcr:content node, through a mixin type
+ * registered on first use, so that the upload of an unchanged content can be skipped.
+ * 
+ * @author Nicolas Dos Santos
+ */
+final class ContentDigest {
+
+    static final String MIXIN_TYPE = JcromNamespace.PREFIX + ":digestible";
+    static final String PROPERTY_NAME = JcromNamespace.PREFIX + ":sha256";
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ContentDigest() {
+    }
+
+    static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new JcrMappingException("Could not create a " + ALGORITHM + " digest", e);
+        }
+    }
+
+    static String toHex(byte[] digest) {
+        char[] chars = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+            chars[2 * i + 1] = HEX_DIGITS[digest[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    static String digest(byte[] bytes) {
+        return toHex(newMessageDigest().digest(bytes));
+    }
+
+    static String digest(File file) throws IOException {
+        MessageDigest messageDigest = newMessageDigest();
+        InputStream input = FileUtils.openInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, n);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * @return the digest stored on the content node, or null if there is none
+     */
+    static String getDigest(Node contentNode) throws RepositoryException {
+        if (hasMixinType(contentNode) && contentNode.hasProperty(PROPERTY_NAME)) {
+            return contentNode.getProperty(PROPERTY_NAME).getString();
+        }
+        return null;
+    }
+
+    static void setDigest(Node contentNode, String digest) throws RepositoryException {
+        if (!hasMixinType(contentNode)) {
+            registerMixinType(contentNode.getSession());
+            contentNode.addMixin(MIXIN_TYPE);
+        }
+        contentNode.setProperty(PROPERTY_NAME, digest);
+    }
+
+    /**
+     * Removes the digest stored on the content node, which no longer matches its content once the content is written
+     * without a digest.
+     */
+    static void removeDigest(Node contentNode) throws RepositoryException {
+        if (hasMixinType(contentNode) && contentNode.hasProperty(PROPERTY_NAME)) {
+            contentNode.getProperty(PROPERTY_NAME).remove();
+        }
+    }
+
+    /**
+     * Looks for the mixin type by name, since Node.isNodeType fails while the namespace is not registered.
+     */
+    private static boolean hasMixinType(Node contentNode) throws RepositoryException {
+        for (NodeType mixinType : contentNode.getMixinNodeTypes()) {
+            if (MIXIN_TYPE.equals(mixinType.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void registerMixinType(Session session) throws RepositoryException {
+        Workspace workspace = session.getWorkspace();
+        JcromNamespace.register(workspace);
+        NodeTypeManager nodeTypeManager = workspace.getNodeTypeManager();
+        if (nodeTypeManager.hasNodeType(MIXIN_TYPE)) {
+            return;
+        }
+
+        NodeTypeTemplate mixinType = nodeTypeManager.createNodeTypeTemplate();
+        mixinType.setName(MIXIN_TYPE);
+        mixinType.setMixin(true);
+        PropertyDefinitionTemplate digestProperty = nodeTypeManager.createPropertyDefinitionTemplate();
+        digestProperty.setName(PROPERTY_NAME);
+        digestProperty.setRequiredType(PropertyType.STRING);
+        @SuppressWarnings("unchecked")
+        List<PropertyDefinitionTemplate> propertyDefinitions = mixinType.getPropertyDefinitionTemplates();
+        propertyDefinitions.add(digestProperty);
+        // allow updates, in case another session registered the type concurrently
+        nodeTypeManager.registerNodeType(mixinType, true);
+    }
+}
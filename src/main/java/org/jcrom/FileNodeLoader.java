@@ -17,6 +17,7 @@
  */
 package org.jcrom;
 
+import java.lang.reflect.Field;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,8 +44,9 @@ public class FileNodeLoader extends AbstractLazyLoader {
     private final JcrFileNode jcrFileNode;
     private final int depth;
     private final NodeFilter nodeFilter;
+    private final Field field;
 
-    FileNodeLoader(Class<?> objectClass, Object parentObject, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode) {
+    FileNodeLoader(Class<?> objectClass, Object parentObject, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode, Field field) {
         super(session, mapper);
         this.objectClass = objectClass;
         this.parentObject = parentObject;
@@ -52,6 +54,7 @@ public class FileNodeLoader extends AbstractLazyLoader {
         this.fileContainerPath = fileContainerPath;
         this.depth = depth;
         this.nodeFilter = nodeFilter;
+        this.field = field;
     }
 
     @Override
@@ -62,4 +65,19 @@ public class FileNodeLoader extends AbstractLazyLoader {
         Node fileContainer = PathUtils.getNode(fileContainerPath, session);
         return mapper.getFileNodeMapper().getSingleFile(objectClass, fileContainer, parentObject, jcrFileNode, depth, nodeFilter, mapper);
     }
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return fileContainerPath;
+    }
 }
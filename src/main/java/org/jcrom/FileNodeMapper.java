@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.security.DigestInputStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -33,6 +34,7 @@ import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import javax.jcr.Value;
 import javax.jcr.ValueFactory;
 import javax.jcr.nodetype.NodeType;
 
@@ -72,6 +74,7 @@ class FileNodeMapper {
     private Node createFileFolderNode(JcrNode jcrNode, String containerName, Node parentNode, Mapper mapper) throws RepositoryException {
 
         if (!parentNode.hasNode(mapper.getCleanName(containerName))) {
+            mapper.checkout(parentNode);
             if (jcrNode != null && (jcrNode.nodeType().equals("nt:unstructured") || jcrNode.nodeType().equals(NodeType.NT_UNSTRUCTURED))) {
                 return parentNode.addNode(mapper.getCleanName(containerName));
             } else {
@@ -84,26 +87,45 @@ class FileNodeMapper {
         }
     }
 
-    private <T extends JcrFile> void setFileNodeProperties(Node contentNode, T file) throws RepositoryException, IOException {
-        contentNode.setProperty(Property.JCR_MIMETYPE, file.getMimeType());
-        contentNode.setProperty(Property.JCR_LAST_MODIFIED, file.getLastModified());
-        if (file.getEncoding() != null) {
-            contentNode.setProperty(Property.JCR_ENCODING, file.getEncoding());
+    private void setContentProperty(Node contentNode, String propertyName, Value value) throws RepositoryException {
+        if (value == null) {
+            if (contentNode.hasProperty(propertyName)) {
+                mapper.checkout(contentNode);
+                contentNode.setProperty(propertyName, (Value) null);
+            }
+        } else if (!PropertyMapper.isUnchanged(contentNode, propertyName, value)) {
+            // unchanged properties are not rewritten
+            mapper.checkout(contentNode);
+            contentNode.setProperty(propertyName, value);
         }
+    }
+
+    private <T extends JcrFile> void setFileNodeProperties(Node contentNode, T file) throws RepositoryException, IOException {
+        ValueFactory valueFactory = contentNode.getSession().getValueFactory();
 
         // add the file data
+        boolean contentUnchanged = false;
         JcrDataProvider dataProvider = file.getDataProvider();
         if (dataProvider != null && !dataProvider.isPersisted()) {
-            ValueFactory valueFactory = contentNode.getSession().getValueFactory();
-            if (dataProvider.isFile() && dataProvider.getFile() != null) {
+            if (mapper.getJcrom().isContentDigest()) {
+                contentUnchanged = setDigestedFileData(contentNode, dataProvider, valueFactory);
+            } else if (dataProvider.isFile() && dataProvider.getFile() != null) {
+                mapper.checkout(contentNode);
                 //contentNode.setProperty("jcr:data", new FileInputStream(dataProvider.getFile()));
-                Binary binary = valueFactory.createBinary(new FileInputStream(dataProvider.getFile()));
-                contentNode.setProperty(Property.JCR_DATA, binary);
+                InputStream input = new FileInputStream(dataProvider.getFile());
+                try {
+                    Binary binary = valueFactory.createBinary(input);
+                    contentNode.setProperty(Property.JCR_DATA, binary);
+                } finally {
+                    IOUtils.closeQuietly(input);
+                }
             } else if (dataProvider.isBytes() && dataProvider.getBytes() != null) {
+                mapper.checkout(contentNode);
                 //contentNode.setProperty("jcr:data", new ByteArrayInputStream(dataProvider.getBytes()));
                 Binary binary = valueFactory.createBinary(new ByteArrayInputStream(dataProvider.getBytes()));
                 contentNode.setProperty(Property.JCR_DATA, binary);
             } else if (dataProvider.isStream() && dataProvider.getInputStream() != null) {
+                mapper.checkout(contentNode);
                 try {
                     // contentNode.setProperty("jcr:data", dataProvider.getInputStream());
                     Binary binary = valueFactory.createBinary(dataProvider.getInputStream());
@@ -113,11 +135,73 @@ class FileNodeMapper {
                     throw re;
                 }
             }
+            if (!mapper.getJcrom().isContentDigest()) {
+                // a digest stored while the digests were enabled no longer matches the content
+                ContentDigest.removeDigest(contentNode);
+            }
+        }
+
+        setContentProperty(contentNode, Property.JCR_MIMETYPE, file.getMimeType() != null ? valueFactory.createValue(file.getMimeType()) : null);
+        // an unchanged content keeps its last modification date
+        if (!contentUnchanged) {
+            setContentProperty(contentNode, Property.JCR_LAST_MODIFIED, file.getLastModified() != null ? valueFactory.createValue(file.getLastModified()) : null);
+        }
+        if (file.getEncoding() != null) {
+            setContentProperty(contentNode, Property.JCR_ENCODING, valueFactory.createValue(file.getEncoding()));
+        }
+    }
+
+    /**
+     * Sets the data of a file node along with the SHA-256 digest of its content, unless the digest already stored on
+     * the content node shows that the content is unchanged. File and byte array contents are compared before being
+     * uploaded, while stream contents are digested as they are uploaded.
+     * 
+     * @return true if the content is unchanged
+     */
+    private boolean setDigestedFileData(Node contentNode, JcrDataProvider dataProvider, ValueFactory valueFactory) throws RepositoryException, IOException {
+        String storedDigest = ContentDigest.getDigest(contentNode);
+        InputStream input;
+        boolean closeInput = true;
+        if (dataProvider.isFile() && dataProvider.getFile() != null) {
+            if (storedDigest != null && storedDigest.equals(ContentDigest.digest(dataProvider.getFile()))) {
+                return true;
+            }
+            input = new FileInputStream(dataProvider.getFile());
+        } else if (dataProvider.isBytes() && dataProvider.getBytes() != null) {
+            if (storedDigest != null && storedDigest.equals(ContentDigest.digest(dataProvider.getBytes()))) {
+                return true;
+            }
+            input = new ByteArrayInputStream(dataProvider.getBytes());
+        } else if (dataProvider.isStream() && dataProvider.getInputStream() != null) {
+            input = dataProvider.getInputStream();
+            closeInput = false;
+        } else {
+            return false;
         }
+
+        DigestInputStream digestInput = new DigestInputStream(input, ContentDigest.newMessageDigest());
+        Binary binary;
+        try {
+            binary = valueFactory.createBinary(digestInput);
+        } finally {
+            if (closeInput) {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        String digest = ContentDigest.toHex(digestInput.getMessageDigest().digest());
+        if (digest.equals(storedDigest)) {
+            binary.dispose();
+            return true;
+        }
+        mapper.checkout(contentNode);
+        contentNode.setProperty(Property.JCR_DATA, binary);
+        ContentDigest.setDigest(contentNode, digest);
+        return false;
     }
 
     private <T extends JcrFile> void addFileNode(JcrNode jcrNode, Node parentNode, T file, Mapper mapper) throws IllegalAccessException, RepositoryException, IOException {
         Node fileNode;
+        mapper.checkout(parentNode);
         if (jcrNode == null || (jcrNode.nodeType().equals("nt:unstructured") || jcrNode.nodeType().equals(NodeType.NT_UNSTRUCTURED))) {
             fileNode = parentNode.addNode(mapper.getCleanName(file.getName()));
         } else {
@@ -162,6 +246,7 @@ class FileNodeMapper {
         if (fileNode.hasNode(Property.JCR_CONTENT)) {
             contentNode = fileNode.getNode(Property.JCR_CONTENT);
         } else {
+            mapper.checkout(fileNode);
             contentNode = fileNode.addNode(Property.JCR_CONTENT, NodeType.NT_RESOURCE);
         }
         setFileNodeProperties(contentNode, file);
@@ -176,6 +261,9 @@ class FileNodeMapper {
 
     private void removeChildren(Node containerNode) throws RepositoryException {
         NodeIterator nodeIterator = containerNode.getNodes();
+        if (nodeIterator.hasNext()) {
+            mapper.checkout(containerNode);
+        }
         while (nodeIterator.hasNext()) {
             nodeIterator.nextNode().remove();
         }
@@ -218,6 +306,7 @@ class FileNodeMapper {
                     JcrFile childEntity = (JcrFile) mapper.findEntityByPath(children, child.getPath());
                     if (childEntity == null) {
                         // this child was not found, so we remove it
+                        mapper.checkout(fileContainer);
                         child.remove();
                     } else {
                         updateFileNode(child, childEntity, nodeFilter, depth, mapper);
@@ -264,7 +353,13 @@ class FileNodeMapper {
 
         JcrNode fileJcrNode = typeHandler.getJcrNodeAnnotation(fileClass, genericType, obj);
         String cleanName = mapper.getCleanName(nodeName);
-        Node fileContainer = node.hasNode(cleanName) ? node.getNode(cleanName) : node.addNode(cleanName); // this is just a nt:unstructured node
+        Node fileContainer;
+        if (node.hasNode(cleanName)) {
+            fileContainer = node.getNode(cleanName);
+        } else {
+            mapper.checkout(node);
+            fileContainer = node.addNode(cleanName); // this is just a nt:unstructured node
+        }
 
         Map<?, ?> children = (Map<?, ?>) field.get(obj);
         if (children != null && !children.isEmpty()) {
@@ -298,6 +393,7 @@ class FileNodeMapper {
                 while (childNodes.hasNext()) {
                     Node child = childNodes.nextNode();
                     if (!mapWithCleanKeys.containsKey(child.getName())) {
+                        mapper.checkout(fileContainer);
                         child.remove();
                     }
                 }
@@ -362,17 +458,7 @@ class FileNodeMapper {
 
         // file data
         if (nodeFilter.isIncluded("jcr:data", depth)) {
-            if (jcrFileNode == null || jcrFileNode.loadType() == JcrFileNode.LoadType.STREAM) {
-                // InputStream is = contentNode.getProperty(Property.JCR_DATA).getBinary().getStream();
-                // JcrDataProviderImpl dataProvider = new JcrDataProviderImpl(is, contentNode.getProperty(Property.JCR_DATA).getLength());
-                Binary binary = contentNode.getProperty(Property.JCR_DATA).getBinary();
-                JcrDataProvider dataProvider = new JcrDataProviderImpl(binary);
-                fileObj.setDataProvider(dataProvider);
-            } else if (jcrFileNode.loadType() == JcrFileNode.LoadType.BYTES) {
-                InputStream is = contentNode.getProperty(Property.JCR_DATA).getBinary().getStream();
-                JcrDataProviderImpl dataProvider = new JcrDataProviderImpl(IOUtils.toByteArray(is));
-                fileObj.setDataProvider(dataProvider);
-            }
+            fileObj.setDataProvider(loadData(jcrFileNode, contentNode));
         }
 
         // if this is a JcrFile subclass, it may contain custom properties and 
@@ -380,6 +466,34 @@ class FileNodeMapper {
         fileObj = (T) mapper.mapNodeToClass(fileObj, fileNode, nodeFilter, parentObject, depth + 1);
     }
 
+    /**
+     * Creates the data provider of a file content, according to the load type of the field.
+     */
+    private static JcrDataProvider loadData(JcrFileNode jcrFileNode, Node contentNode) throws RepositoryException, IOException {
+        Binary binary = contentNode.getProperty(Property.JCR_DATA).getBinary();
+        JcrFileNode.LoadType loadType = jcrFileNode != null ? jcrFileNode.loadType() : JcrFileNode.LoadType.STREAM;
+        if (loadType == JcrFileNode.LoadType.BYTES && jcrFileNode.spillThreshold() >= 0 && binary.getSize() > jcrFileNode.spillThreshold()) {
+            // too large to be loaded in memory
+            loadType = JcrFileNode.LoadType.TEMP_FILE;
+        }
+        switch (loadType) {
+            case BYTES:
+                InputStream is = binary.getStream();
+                try {
+                    return new JcrDataProviderImpl(IOUtils.toByteArray(is));
+                } finally {
+                    IOUtils.closeQuietly(is);
+                    binary.dispose();
+                }
+            case TEMP_FILE:
+                return TempFileDataProvider.spool(binary, false);
+            case MMAP:
+                return TempFileDataProvider.spool(binary, true);
+            default:
+                return new JcrDataProviderImpl(binary);
+        }
+    }
+
     void addFiles(Field field, Object obj, Node node, Mapper mapper) throws IllegalAccessException, RepositoryException, IOException {
         setFiles(field, obj, node, mapper, NodeFilter.DEPTH_INFINITE, null);
     }
@@ -424,17 +538,7 @@ class FileNodeMapper {
 
         // file data
         if (nodeFilter.isIncluded("jcr:data", depth)) {
-            if (jcrFileNode == null || jcrFileNode.loadType() == JcrFileNode.LoadType.STREAM) {
-                // InputStream is = contentNode.getProperty(Property.JCR_DATA).getBinary().getStream();
-                // JcrDataProviderImpl dataProvider = new JcrDataProviderImpl(is, contentNode.getProperty(Property.JCR_DATA).getLength());
-                Binary binary = contentNode.getProperty(Property.JCR_DATA).getBinary();
-                JcrDataProvider dataProvider = new JcrDataProviderImpl(binary);
-                fileObj.setDataProvider(dataProvider);
-            } else if (jcrFileNode.loadType() == JcrFileNode.LoadType.BYTES) {
-                InputStream is = contentNode.getProperty(Property.JCR_DATA).getBinary().getStream();
-                JcrDataProviderImpl dataProvider = new JcrDataProviderImpl(IOUtils.toByteArray(is));
-                fileObj.setDataProvider(dataProvider);
-            }
+            fileObj.setDataProvider(loadData(jcrFileNode, contentNode));
         }
 
     }
@@ -451,14 +555,14 @@ class FileNodeMapper {
                 Class<?> childObjClass = ReflectionUtils.getTypeArgumentOfParameterizedClass(field.getGenericType(), 1, 0);
                 if (jcrFileNode.lazy()) {
                     // lazy loading
-                    children.put(childNode.getName(), ProxyFactory.createFileNodeListProxy(childObjClass, obj, fileContainer.getPath(), fileContainer.getSession(), mapper, depth, nodeFilter, jcrFileNode));
+                    children.put(childNode.getName(), ProxyFactory.createFileNodeListProxy(childObjClass, obj, fileContainer.getPath(), fileContainer.getSession(), mapper, depth, nodeFilter, jcrFileNode, field));
                 } else {
                     children.put(childNode.getName(), getFileList(childObjClass, childNode, obj, jcrFileNode, depth, nodeFilter, mapper));
                 }
             } else {
                 if (jcrFileNode.lazy()) {
                     // lazy loading
-                    children.put(childNode.getName(), ProxyFactory.createFileNodeProxy(mapParamClass, obj, fileContainer.getPath(), fileContainer.getSession(), mapper, depth, nodeFilter, jcrFileNode));
+                    children.put(childNode.getName(), ProxyFactory.createFileNodeProxy(mapParamClass, obj, fileContainer.getPath(), fileContainer.getSession(), mapper, depth, nodeFilter, jcrFileNode, field));
                 } else {
                     children.put(childNode.getName(), getSingleFile(mapParamClass, fileContainer, obj, jcrFileNode, depth, nodeFilter, mapper));
                 }
@@ -481,7 +585,7 @@ class FileNodeMapper {
                 Class<?> childObjClass = ReflectionUtils.getParameterizedClass(field.getGenericType());
                 if (jcrFileNode.lazy()) {
                     // lazy loading
-                    children = ProxyFactory.createFileNodeListProxy(childObjClass, obj, fileContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrFileNode);
+                    children = ProxyFactory.createFileNodeListProxy(childObjClass, obj, fileContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrFileNode, field);
                 } else {
                     // eager loading
                     children = getFileList(childObjClass, fileContainer, obj, jcrFileNode, depth, nodeFilter, mapper);
@@ -498,7 +602,7 @@ class FileNodeMapper {
                     Class type = typeHandler.getType(field.getType(), field.getGenericType(), obj);
                     if (jcrFileNode.lazy()) {
                         // lazy loading
-                        file = ProxyFactory.createFileNodeProxy(type, obj, fileContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrFileNode);
+                        file = ProxyFactory.createFileNodeProxy(type, obj, fileContainer.getPath(), node.getSession(), mapper, depth, nodeFilter, jcrFileNode, field);
                     } else {
                         // eager loading
                         file = getSingleFile(type, fileContainer, obj, jcrFileNode, depth, nodeFilter, mapper);
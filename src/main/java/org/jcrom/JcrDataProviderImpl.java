@@ -17,12 +17,17 @@
  */
 package org.jcrom;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Logger;
 
 import javax.jcr.Binary;
@@ -38,12 +43,15 @@ import javax.jcr.RepositoryException;
  * @author Olafur Gauti Gudmundsson
  * @author Nicolas Dos Santos
  */
-public class JcrDataProviderImpl implements JcrDataProvider {
+public class JcrDataProviderImpl implements RangedJcrDataProvider {
 
     private static final long serialVersionUID = 1L;
 
     private static final Logger logger = Logger.getLogger(JcrDataProviderImpl.class.getName());
 
+    /** Maximum number of bytes read from a {@link Binary} at once by the positional and ranged reads */
+    private static final int CHUNK_SIZE = 65536;
+
     private final TYPE type;
     private final byte[] bytes;
     private final File file;
@@ -224,4 +232,213 @@ public class JcrDataProviderImpl implements JcrDataProvider {
         return binary != null;
     }
 
+    /**
+     * Reads the file content through a {@link FileChannel}, and the persisted content through {@link Binary#read(byte[], long)}.
+     * The content of a stream that is not persisted cannot be read from a position.
+     */
+    @Override
+    public int read(ByteBuffer buffer, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position: " + position);
+        }
+        if (binary != null) {
+            return readBinary(binary, buffer, position);
+        } else if (type == TYPE.BYTES) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int length = (int) Math.min(buffer.remaining(), bytes.length - position);
+            buffer.put(bytes, (int) position, length);
+            return length;
+        } else if (type == TYPE.FILE) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                return randomAccessFile.getChannel().read(buffer, position);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+        throw new UnsupportedOperationException("The content of a stream that is not persisted cannot be read from a position");
+    }
+
+    private static int readBinary(Binary binary, ByteBuffer buffer, long position) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return 0;
+        }
+        // Binary.read fills the array from its start, up to its length: a backing array is used when it matches
+        int size = Math.min(buffer.remaining(), CHUNK_SIZE);
+        boolean direct = buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 && buffer.array().length == size;
+        byte[] b = direct ? buffer.array() : new byte[size];
+        int n;
+        try {
+            n = binary.read(b, position);
+        } catch (RepositoryException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (n > 0) {
+            if (direct) {
+                buffer.position(buffer.position() + n);
+            } else {
+                buffer.put(b, 0, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Seeks the file content through its channel, and reads the persisted content through {@link Binary#read(byte[], long)}.
+     * The bytes before the range of a stream that is not persisted are skipped, consuming the stream.
+     */
+    @Override
+    public InputStream openRange(long offset, long length) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        long limit = length < 0 ? Long.MAX_VALUE : length;
+        if (binary != null) {
+            return new BinaryRangeInputStream(binary, offset, limit);
+        } else if (type == TYPE.BYTES) {
+            int start = (int) Math.min(offset, bytes.length);
+            return new ByteArrayInputStream(bytes, start, (int) Math.min(limit, bytes.length - start));
+        } else if (type == TYPE.FILE) {
+            FileInputStream in = new FileInputStream(file);
+            in.getChannel().position(offset);
+            return new RangeInputStream(in, limit);
+        }
+        InputStream in = getInputStream();
+        long skipped = 0;
+        while (skipped < offset) {
+            long n = in.skip(offset - skipped);
+            if (n <= 0) {
+                if (in.read() < 0) {
+                    break;
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+        return new RangeInputStream(in, limit);
+    }
+
+    /**
+     * Stream reading at most a number of bytes from another stream.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Stream reading a range of a {@link Binary} by chunks, through positional reads.
+     */
+    private static final class BinaryRangeInputStream extends InputStream {
+
+        private final Binary binary;
+        private long position;
+        private long remaining;
+        private byte[] chunk;
+
+        BinaryRangeInputStream(Binary binary, long offset, long length) {
+            this.binary = binary;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+            // Binary.read fills the array from its start, up to its length
+            int size = (int) Math.min(Math.min(len, remaining), CHUNK_SIZE);
+            byte[] buffer;
+            if (off == 0 && b.length == size) {
+                buffer = b;
+            } else {
+                if (chunk == null || chunk.length != size) {
+                    chunk = new byte[size];
+                }
+                buffer = chunk;
+            }
+            int n;
+            try {
+                n = binary.read(buffer, position);
+            } catch (RepositoryException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (n <= 0) {
+                remaining = 0;
+                return -1;
+            }
+            if (buffer != b) {
+                System.arraycopy(buffer, 0, b, off, n);
+            }
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+    }
 }
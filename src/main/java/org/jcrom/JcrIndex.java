@@ -0,0 +1,536 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.query.Query;
+
+import org.jcrom.annotations.JcrIndexed;
+import org.jcrom.annotations.JcrNode;
+import org.jcrom.annotations.JcrProperty;
+import org.jcrom.converter.DefaultConverter;
+import org.jcrom.util.PathUtils;
+import org.jcrom.util.ReflectionUtils;
+
+/**
+ * In-memory indexes over the {@link JcrIndexed} fields of the entities of a class stored under a root path.
+ * <p>
+ * The indexes are built by a query when started, and then kept up to date with the observation events of the
+ * repository. They map the values of each indexed property to the identifiers of the entity nodes, which can then be
+ * loaded with {@link org.jcrom.dao.JcrDAO#loadById(String)}. Equality lookups take constant time, and the properties
+ * marked as sorted also support range scans.
+ * </p>
+ * <p>
+ * The session supplied to {@link #start(Session)} is used by the observation thread to read the modified nodes, and
+ * must therefore be dedicated to the index. Lookups are thread-safe.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class JcrIndex<T> implements EventListener {
+
+    private static final Logger logger = Logger.getLogger(JcrIndex.class.getName());
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private final Jcrom jcrom;
+    private final Class<T> entityClass;
+    private final String rootPath;
+    private final String nodeType;
+    private final String classNameProperty;
+
+    /**
+     * Indexed fields by property name.
+     */
+    private final Map<String, Field> indexedFields = new LinkedHashMap<String, Field>();
+
+    /**
+     * Names of the properties indexed as sorted.
+     */
+    private final Set<String> sortedProperties = new HashSet<String>();
+
+    /**
+     * The indexes, replaced as a whole when rebuilt so that lookups never see a partially built index.
+     */
+    private volatile IndexState state;
+
+    private Session session;
+
+    /**
+     * @param jcrom the Jcrom instance mapping the entity class
+     * @param entityClass the class of the indexed entities
+     * @param rootPath the path under which the entity nodes are indexed
+     */
+    public JcrIndex(Jcrom jcrom, Class<T> entityClass, String rootPath) {
+        this.jcrom = jcrom;
+        this.entityClass = entityClass;
+        this.rootPath = rootPath;
+
+        JcrNode jcrNode = ReflectionUtils.getJcrNodeAnnotation(entityClass);
+        this.nodeType = jcrNode != null ? jcrNode.nodeType() : NodeType.NT_UNSTRUCTURED;
+        this.classNameProperty = jcrNode != null && !jcrNode.classNameProperty().equals("none") ? jcrNode.classNameProperty() : null;
+
+        AnnotationReader annotationReader = jcrom.getAnnotationReader();
+        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(entityClass, false)) {
+            JcrIndexed jcrIndexed = annotationReader.getAnnotation(field, JcrIndexed.class);
+            if (jcrIndexed == null) {
+                continue;
+            }
+            JcrProperty jcrProperty = annotationReader.getAnnotation(field, JcrProperty.class);
+            Class<?> type = field.getType();
+            if (jcrProperty == null || jcrProperty.converter() != DefaultConverter.class || type.isArray() || jcrom.getMapper().getTypeHandler().isList(type) || jcrom.getMapper().getTypeHandler().isMap(type)) {
+                throw new JcrMappingException("Could not index field " + field.getName() + " of " + entityClass.getName() + ": only single-valued @JcrProperty fields without converter can be indexed");
+            }
+            String propertyName = jcrom.getMapper().getQueryPropertyName(entityClass, field.getName());
+            indexedFields.put(propertyName, field);
+            if (jcrIndexed.sorted()) {
+                sortedProperties.add(propertyName);
+            }
+        }
+        if (indexedFields.isEmpty()) {
+            throw new JcrMappingException("Could not find any @JcrIndexed field in " + entityClass.getName());
+        }
+        state = new IndexState();
+    }
+
+    /**
+     * Returns the definition of the listener keeping the indexes up to date.
+     * 
+     * @return the definition of this listener
+     */
+    public EventListenerDefinition getEventListenerDefinition() {
+        EventListenerDefinition definition = new EventListenerDefinition();
+        definition.setListener(this);
+        definition.setEventTypes(EVENT_TYPES);
+        definition.setAbsPath(rootPath);
+        definition.setDeep(true);
+        return definition;
+    }
+
+    /**
+     * Registers this index as a listener of the workspace of the session supplied, and builds the indexes.
+     * 
+     * @param session the session dedicated to this index
+     * @throws RepositoryException if the listener cannot be registered, or the query fails
+     */
+    public synchronized void start(Session session) throws RepositoryException {
+        this.session = session;
+        EventListenerDefinition definition = getEventListenerDefinition();
+        // registered before the query, so that no change is missed
+        session.getWorkspace().getObservationManager().addEventListener(definition.getListener(), definition.getEventTypes(), definition.getAbsPath(), definition.isDeep(), definition.getUuid(), definition.getNodeTypeName(), definition.isNoLocal());
+        rebuild();
+    }
+
+    /**
+     * Unregisters this index and clears it.
+     * 
+     * @throws RepositoryException if the listener cannot be unregistered
+     */
+    public synchronized void stop() throws RepositoryException {
+        if (session != null) {
+            session.getWorkspace().getObservationManager().removeEventListener(this);
+            session = null;
+        }
+        state = new IndexState();
+    }
+
+    /**
+     * Builds the indexes again from a query over the entity nodes. Lookups use the previous indexes until the new ones
+     * are complete.
+     * 
+     * @throws RepositoryException if the query fails
+     */
+    public synchronized void rebuild() throws RepositoryException {
+        checkStarted();
+        IndexState rebuilt = new IndexState();
+        String statement = "SELECT * FROM [" + nodeType + "] AS n WHERE ISDESCENDANTNODE(n, " + PathUtils.toQueryPath(rootPath) + ")";
+        NodeIterator nodes = session.getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2).execute().getNodes();
+        while (nodes.hasNext()) {
+            rebuilt.index(nodes.nextNode());
+        }
+        state = rebuilt;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Indexed " + rebuilt.entries.size() + " nodes of " + entityClass.getName() + " under " + rootPath);
+        }
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        synchronized (this) {
+            if (session == null) {
+                return;
+            }
+            try {
+                Set<String> modifiedIds = new HashSet<String>();
+                Set<String> movedIds = new HashSet<String>();
+                while (events.hasNext()) {
+                    Event event = events.nextEvent();
+                    switch (event.getType()) {
+                        case Event.NODE_REMOVED:
+                            state.removeSubtree(event.getPath());
+                            break;
+                        case Event.NODE_MOVED:
+                            state.removeSubtree((String) event.getInfo().get("srcAbsPath"));
+                            movedIds.add(event.getIdentifier());
+                            break;
+                        case Event.NODE_ADDED:
+                            modifiedIds.add(event.getIdentifier());
+                            break;
+                        default:
+                            // the identifier of a property event is the one of its parent node
+                            String propertyName = event.getPath().substring(event.getPath().lastIndexOf('/') + 1);
+                            if (indexedFields.containsKey(propertyName) || propertyName.equals(classNameProperty)) {
+                                modifiedIds.add(event.getIdentifier());
+                            }
+                            break;
+                    }
+                }
+                if (!modifiedIds.isEmpty() || !movedIds.isEmpty()) {
+                    session.refresh(false);
+                    for (String id : modifiedIds) {
+                        refresh(id);
+                    }
+                    // the descendants of a moved node are moved without events of their own
+                    for (String id : movedIds) {
+                        refreshSubtree(id);
+                    }
+                }
+            } catch (RepositoryException e) {
+                logger.log(Level.WARNING, "Could not update the index of " + entityClass.getName() + " under " + rootPath, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the identifiers of the entity nodes having the value supplied.
+     * 
+     * @param fieldName the name of the indexed field
+     * @param value the value of the field
+     * @return the identifiers of the matching nodes, empty if the value is null as null values are not indexed
+     */
+    public Set<String> getIds(String fieldName, Object value) {
+        PropertyIndex index = getIndex(fieldName);
+        if (value == null) {
+            return Collections.emptySet();
+        }
+        Set<String> ids = index.ids.get(toKey(index, value));
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.<String> emptySet();
+    }
+
+    /**
+     * Returns the identifier of one of the entity nodes having the value supplied, typically for unique values.
+     * 
+     * @param fieldName the name of the indexed field
+     * @param value the value of the field
+     * @return the identifier of a matching node, or null if there is none
+     */
+    public String getId(String fieldName, Object value) {
+        for (String id : getIds(fieldName, value)) {
+            return id;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the identifiers of the entity nodes whose value is in the range supplied, ordered by value.
+     * The field must be indexed with <code>@JcrIndexed(sorted = true)</code>.
+     * 
+     * @param fieldName the name of the indexed field
+     * @param from the lower bound of the range, or null for no lower bound
+     * @param fromInclusive whether the lower bound is included
+     * @param to the upper bound of the range, or null for no upper bound
+     * @param toInclusive whether the upper bound is included
+     * @return the identifiers of the matching nodes
+     */
+    public List<String> getIds(String fieldName, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        PropertyIndex index = getIndex(fieldName);
+        if (index.sortedIds == null) {
+            throw new JcrMappingException("Field " + fieldName + " of " + entityClass.getName() + " is not sorted");
+        }
+        NavigableMap<Object, Set<String>> range = index.sortedIds;
+        if (from != null) {
+            range = range.tailMap(toKey(index, from), fromInclusive);
+        }
+        if (to != null) {
+            range = range.headMap(toKey(index, to), toInclusive);
+        }
+        List<String> ids = new ArrayList<String>();
+        for (Set<String> valueIds : range.values()) {
+            ids.addAll(valueIds);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of indexed nodes
+     */
+    public int size() {
+        return state.entries.size();
+    }
+
+    private PropertyIndex getIndex(String fieldName) {
+        for (PropertyIndex index : state.indexes.values()) {
+            if (index.field.getName().equals(fieldName)) {
+                return index;
+            }
+        }
+        throw new JcrMappingException("Field " + fieldName + " of " + entityClass.getName() + " is not indexed");
+    }
+
+    private void checkStarted() {
+        if (session == null) {
+            throw new IllegalStateException("The index of " + entityClass.getName() + " under " + rootPath + " is not started");
+        }
+    }
+
+    /**
+     * Converts a field value to the key of the index, the same way the property value is converted.
+     */
+    private Object toKey(PropertyIndex index, Object value) {
+        if (value == null) {
+            return null;
+        }
+        Session currentSession = session;
+        if (currentSession == null) {
+            throw new IllegalStateException("The index of " + entityClass.getName() + " under " + rootPath + " is not started");
+        }
+        try {
+            return toKey(jcrom.getMapper().getTypeHandler().createValue(index.field.getType(), value, currentSession.getValueFactory()));
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not convert the value of field " + index.field.getName(), e);
+        }
+    }
+
+    private static Object toKey(Value value) throws RepositoryException {
+        switch (value.getType()) {
+            case PropertyType.LONG:
+                return value.getLong();
+            case PropertyType.DOUBLE:
+                return value.getDouble();
+            case PropertyType.DECIMAL:
+                return value.getDecimal();
+            case PropertyType.BOOLEAN:
+                return value.getBoolean();
+            case PropertyType.DATE:
+                return value.getDate().getTimeInMillis();
+            default:
+                return value.getString();
+        }
+    }
+
+    private void refresh(String id) throws RepositoryException {
+        Node node;
+        try {
+            node = session.getNodeByIdentifier(id);
+        } catch (ItemNotFoundException e) {
+            state.remove(id);
+            return;
+        }
+        refresh(node);
+    }
+
+    private void refresh(Node node) throws RepositoryException {
+        if (isUnderRoot(node) && node.isNodeType(nodeType)) {
+            state.index(node);
+        } else {
+            state.remove(node.getIdentifier());
+        }
+    }
+
+    /**
+     * Indexes a moved node and all its descendants, if it was moved under the root path.
+     */
+    private void refreshSubtree(String id) throws RepositoryException {
+        Node node;
+        try {
+            node = session.getNodeByIdentifier(id);
+        } catch (ItemNotFoundException e) {
+            state.remove(id);
+            return;
+        }
+        if (isUnderRoot(node)) {
+            refreshSubtree(node);
+        } else {
+            state.remove(id);
+        }
+    }
+
+    private void refreshSubtree(Node node) throws RepositoryException {
+        refresh(node);
+        NodeIterator children = node.getNodes();
+        while (children.hasNext()) {
+            refreshSubtree(children.nextNode());
+        }
+    }
+
+    private boolean isUnderRoot(Node node) throws RepositoryException {
+        return node.getPath().startsWith(rootPath.endsWith("/") ? rootPath : rootPath + "/");
+    }
+
+    /**
+     * The indexes of the properties and the indexed values of the nodes. Updates are serialized by the enclosing index,
+     * while lookups are concurrent.
+     */
+    private final class IndexState {
+
+        /**
+         * Indexes by property name.
+         */
+        private final Map<String, PropertyIndex> indexes = new LinkedHashMap<String, PropertyIndex>();
+
+        /**
+         * Indexed values by node identifier.
+         */
+        private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+        IndexState() {
+            for (Map.Entry<String, Field> indexedField : indexedFields.entrySet()) {
+                indexes.put(indexedField.getKey(), new PropertyIndex(indexedField.getValue(), sortedProperties.contains(indexedField.getKey())));
+            }
+        }
+
+        void index(Node node) throws RepositoryException {
+            String id = node.getIdentifier();
+            if (classNameProperty != null && !(node.hasProperty(classNameProperty) && node.getProperty(classNameProperty).getString().equals(entityClass.getCanonicalName()))) {
+                remove(id);
+                return;
+            }
+            Map<String, Object> keys = new HashMap<String, Object>();
+            for (Map.Entry<String, PropertyIndex> index : indexes.entrySet()) {
+                if (node.hasProperty(index.getKey()) && !node.getProperty(index.getKey()).isMultiple()) {
+                    keys.put(index.getKey(), toKey(node.getProperty(index.getKey()).getValue()));
+                }
+            }
+            Entry previous = entries.put(id, new Entry(node.getPath(), keys));
+            for (Map.Entry<String, PropertyIndex> index : indexes.entrySet()) {
+                Object previousKey = previous != null ? previous.keys.get(index.getKey()) : null;
+                Object key = keys.get(index.getKey());
+                if (previousKey != null && !previousKey.equals(key)) {
+                    index.getValue().remove(previousKey, id);
+                }
+                if (key != null) {
+                    index.getValue().add(key, id);
+                }
+            }
+        }
+
+        void remove(String id) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                for (Map.Entry<String, Object> key : entry.keys.entrySet()) {
+                    indexes.get(key.getKey()).remove(key.getValue(), id);
+                }
+            }
+        }
+
+        void removeSubtree(String path) {
+            List<String> removedIds = new ArrayList<String>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                String entryPath = entry.getValue().path;
+                if (entryPath.equals(path) || entryPath.startsWith(path + "/")) {
+                    removedIds.add(entry.getKey());
+                }
+            }
+            for (String id : removedIds) {
+                remove(id);
+            }
+        }
+    }
+
+    /**
+     * The indexed values of a node.
+     */
+    private static final class Entry {
+
+        private final String path;
+        private final Map<String, Object> keys;
+
+        Entry(String path, Map<String, Object> keys) {
+            this.path = path;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * The index of one property.
+     */
+    private static final class PropertyIndex {
+
+        private final Field field;
+        private final ConcurrentMap<Object, Set<String>> ids = new ConcurrentHashMap<Object, Set<String>>();
+        private final ConcurrentNavigableMap<Object, Set<String>> sortedIds;
+
+        PropertyIndex(Field field, boolean sorted) {
+            this.field = field;
+            this.sortedIds = sorted ? new ConcurrentSkipListMap<Object, Set<String>>() : null;
+        }
+
+        void add(Object key, String id) {
+            Set<String> valueIds = ids.get(key);
+            if (valueIds == null) {
+                valueIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                ids.put(key, valueIds);
+                if (sortedIds != null) {
+                    sortedIds.put(key, valueIds);
+                }
+            }
+            valueIds.add(id);
+        }
+
+        void remove(Object key, String id) {
+            Set<String> valueIds = ids.get(key);
+            if (valueIds != null) {
+                valueIds.remove(id);
+                if (valueIds.isEmpty()) {
+                    ids.remove(key);
+                    if (sortedIds != null) {
+                        sortedIds.remove(key);
+                    }
+                }
+            }
+        }
+    }
+}
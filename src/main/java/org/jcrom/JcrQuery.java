@@ -0,0 +1,386 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NodeType;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
+
+import org.jcrom.annotations.JcrNode;
+import org.jcrom.util.NodeFilter;
+import org.jcrom.util.PathUtils;
+import org.jcrom.util.ReflectionUtils;
+
+/**
+ * A typed criteria query on the nodes mapped to an entity class, for example:
+ * <pre>
+ * dao.query().where("title").like("John%").orderBy("birthDay").limit(20).list();
+ * </pre>
+ * Field names are translated to property names and the node type is read from the mapping metadata.
+ * The query is compiled to a JCR-SQL2 statement whose values are bind variables, so that the statement
+ * only depends on the shape of the query and is compiled once per {@link Jcrom} instance.
+ * Ordering, offset and limit are executed by the repository.
+ * <p>
+ * Conditions are combined with AND. Instances are not thread-safe.
+ * 
+ * @param <T> the entity class
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class JcrQuery<T> {
+
+    private static final String SELECTOR = "n";
+    private static final String BIND_VARIABLE_PREFIX = "p";
+    /** Stands for a path in the cached statements, since a path cannot be a bind variable; '*' is invalid in a JCR name */
+    private static final String PATH_PLACEHOLDER = "[*]";
+    /** Maximum number of compiled statements kept by a Jcrom instance */
+    private static final int MAX_CACHED_STATEMENTS = 256;
+
+    private final Jcrom jcrom;
+    private final Session session;
+    private final Class<T> entityClass;
+
+    private final List<String> constraints = new ArrayList<String>();
+    private final List<Object> values = new ArrayList<Object>();
+    private final List<String> paths = new ArrayList<String>();
+    private final List<String> orderings = new ArrayList<String>();
+    private long offset = 0;
+    private long limit = -1;
+
+    public JcrQuery(Jcrom jcrom, Session session, Class<T> entityClass) {
+        this.jcrom = jcrom;
+        this.session = session;
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * Starts a condition on the field supplied.
+     * 
+     * @param fieldName the name of a field mapped with @JcrProperty, @JcrProtectedProperty, @JcrSerializedProperty,
+     * @JcrReference, @JcrUUID, @JcrCreated or @JcrName
+     * @return the condition, to complete with an operator
+     */
+    public Condition where(String fieldName) {
+        return new Condition(getOperand(fieldName));
+    }
+
+    /**
+     * Alias of {@link #where(String)}, for readability.
+     */
+    public Condition and(String fieldName) {
+        return where(fieldName);
+    }
+
+    /**
+     * Restricts the query to the children of the node at the path supplied.
+     */
+    public JcrQuery<T> childOf(String path) {
+        constraints.add("ISCHILDNODE(" + SELECTOR + ", " + PATH_PLACEHOLDER + ")");
+        paths.add(path);
+        return this;
+    }
+
+    /**
+     * Restricts the query to the descendants of the node at the path supplied.
+     */
+    public JcrQuery<T> descendantOf(String path) {
+        constraints.add("ISDESCENDANTNODE(" + SELECTOR + ", " + PATH_PLACEHOLDER + ")");
+        paths.add(path);
+        return this;
+    }
+
+    public JcrQuery<T> orderBy(String fieldName) {
+        orderings.add(getOperand(fieldName) + " ASC");
+        return this;
+    }
+
+    public JcrQuery<T> orderByDescending(String fieldName) {
+        orderings.add(getOperand(fieldName) + " DESC");
+        return this;
+    }
+
+    /**
+     * @param offset the zero based index of the first item to return
+     */
+    public JcrQuery<T> offset(long offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * @param limit the maximum number of items to return, or a negative value to return all
+     */
+    public JcrQuery<T> limit(long limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Returns the JCR-SQL2 statement of this query. Values are referenced as bind variables named p0, p1, etc.
+     * 
+     * @return the compiled statement
+     */
+    public String getStatement() {
+        return getStatement(null);
+    }
+
+    /**
+     * Returns the JCR-SQL2 statement of the projection of this query on the class supplied.
+     * Only the properties mapped by the @JcrProperty fields of the projection class are selected.
+     * 
+     * @param projectionClass the projection class, or null to select all the properties
+     * @return the compiled statement
+     */
+    public String getStatement(Class<?> projectionClass) {
+        StringBuilder key = new StringBuilder(entityClass.getName());
+        if (projectionClass != null) {
+            key.append("|SELECT ").append(projectionClass.getName());
+        }
+        for (String constraint : constraints) {
+            key.append('|').append(constraint);
+        }
+        for (String ordering : orderings) {
+            key.append("|ORDER ").append(ordering);
+        }
+
+        String statement = jcrom.getMapper().getQueryStatements().get(key.toString());
+        if (statement == null) {
+            statement = compile(projectionClass);
+            if (jcrom.getMapper().getQueryStatements().size() < MAX_CACHED_STATEMENTS) {
+                jcrom.getMapper().getQueryStatements().put(key.toString(), statement);
+            }
+        }
+        return paths.isEmpty() ? statement : setPaths(statement);
+    }
+
+    private String setPaths(String statement) {
+        StringBuilder buf = new StringBuilder(statement.length());
+        int start = 0;
+        for (String path : paths) {
+            int idx = statement.indexOf(PATH_PLACEHOLDER, start);
+            buf.append(statement, start, idx).append(PathUtils.toQueryPath(path));
+            start = idx + PATH_PLACEHOLDER.length();
+        }
+        return buf.append(statement, start, statement.length()).toString();
+    }
+
+    private String compile(Class<?> projectionClass) {
+        JcrNode jcrNode = ReflectionUtils.getJcrNodeAnnotation(entityClass);
+        String nodeType = jcrNode != null ? jcrNode.nodeType() : NodeType.NT_UNSTRUCTURED;
+
+        StringBuilder statement = new StringBuilder();
+        statement.append("SELECT ");
+        if (projectionClass != null) {
+            List<String> propertyNames = jcrom.getMapper().getProjectionPropertyNames(projectionClass);
+            for (int i = 0; i < propertyNames.size(); i++) {
+                statement.append(i == 0 ? "" : ", ").append(SELECTOR).append(".[").append(propertyNames.get(i)).append("] AS [").append(propertyNames.get(i)).append(']');
+            }
+            if (propertyNames.isEmpty()) {
+                statement.append(SELECTOR).append(".[").append(Property.JCR_PRIMARY_TYPE).append(']');
+            }
+        } else {
+            statement.append('*');
+        }
+        statement.append(" FROM [").append(nodeType).append("] AS ").append(SELECTOR);
+        for (int i = 0; i < constraints.size(); i++) {
+            statement.append(i == 0 ? " WHERE " : " AND ").append(constraints.get(i));
+        }
+        for (int i = 0; i < orderings.size(); i++) {
+            statement.append(i == 0 ? " ORDER BY " : ", ").append(orderings.get(i));
+        }
+        return statement.toString();
+    }
+
+    /**
+     * Executes the query and maps all the nodes found.
+     * 
+     * @return a list of objects mapped from the nodes
+     */
+    public List<T> list() {
+        return list(new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE));
+    }
+
+    /**
+     * Executes the query and maps the nodes found.
+     * 
+     * @param nodeFilter the NodeFilter to apply when mapping child nodes and references
+     * @return a list of objects mapped from the nodes
+     */
+    public List<T> list(NodeFilter nodeFilter) {
+        try {
+            List<T> objects = new ArrayList<T>();
+            NodeIterator nodeIterator = execute(getStatement()).getNodes();
+            while (nodeIterator.hasNext()) {
+                objects.add(jcrom.fromNode(entityClass, nodeIterator.nextNode(), nodeFilter));
+            }
+            return objects;
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not execute query", e);
+        }
+    }
+
+    /**
+     * Executes the query and returns the identifiers of the nodes found, without mapping them.
+     * 
+     * @return the identifiers of the nodes found
+     * @since 2.2.1
+     */
+    public List<String> listIds() {
+        try {
+            List<String> ids = new ArrayList<String>();
+            NodeIterator nodeIterator = execute(getStatement()).getNodes();
+            while (nodeIterator.hasNext()) {
+                ids.add(nodeIterator.nextNode().getIdentifier());
+            }
+            return ids;
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not execute query", e);
+        }
+    }
+
+    /**
+     * Executes the query and maps each row to an instance of the projection class supplied, without loading the nodes.
+     * See {@link Jcrom#fromRow(Class, javax.jcr.query.Row)}.
+     * 
+     * @param projectionClass a class declaring a subset of the @JcrProperty fields of the entity class
+     * @return a list of objects mapped from the rows
+     */
+    public <P> List<P> project(Class<P> projectionClass) {
+        try {
+            List<P> objects = new ArrayList<P>();
+            RowIterator rowIterator = execute(getStatement(projectionClass)).getRows();
+            while (rowIterator.hasNext()) {
+                objects.add(jcrom.fromRow(projectionClass, rowIterator.nextRow()));
+            }
+            return objects;
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not execute query", e);
+        }
+    }
+
+    private QueryResult execute(String statement) throws RepositoryException {
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        Query query = queryManager.createQuery(statement, Query.JCR_SQL2);
+        ValueFactory valueFactory = session.getValueFactory();
+        for (int i = 0; i < values.size(); i++) {
+            query.bindValue(BIND_VARIABLE_PREFIX + i, createValue(values.get(i), valueFactory));
+        }
+        if (offset > 0) {
+            query.setOffset(offset);
+        }
+        if (limit >= 0) {
+            query.setLimit(limit);
+        }
+        return query.execute();
+    }
+
+    private Value createValue(Object value, ValueFactory valueFactory) throws RepositoryException {
+        Class<?> type = value instanceof Enum<?> ? ((Enum<?>) value).getDeclaringClass() : value.getClass();
+        Value jcrValue = jcrom.getMapper().getTypeHandler().createValue(type, value, valueFactory);
+        if (jcrValue == null) {
+            throw new JcrMappingException("Could not convert query value of type " + type.getName());
+        }
+        return jcrValue;
+    }
+
+    private String getOperand(String fieldName) {
+        String propertyName = jcrom.getMapper().getQueryPropertyName(entityClass, fieldName);
+        return propertyName != null ? SELECTOR + ".[" + propertyName + "]" : "NAME(" + SELECTOR + ")";
+    }
+
+    /**
+     * A condition on a field, completed by one of the operator methods.
+     */
+    public class Condition {
+
+        private final String operand;
+
+        private Condition(String operand) {
+            this.operand = operand;
+        }
+
+        public JcrQuery<T> eq(Object value) {
+            return compare("=", value);
+        }
+
+        public JcrQuery<T> ne(Object value) {
+            return compare("<>", value);
+        }
+
+        public JcrQuery<T> lt(Object value) {
+            return compare("<", value);
+        }
+
+        public JcrQuery<T> le(Object value) {
+            return compare("<=", value);
+        }
+
+        public JcrQuery<T> gt(Object value) {
+            return compare(">", value);
+        }
+
+        public JcrQuery<T> ge(Object value) {
+            return compare(">=", value);
+        }
+
+        /**
+         * @param pattern the pattern, where % matches any string and _ matches any character
+         */
+        public JcrQuery<T> like(String pattern) {
+            return compare("LIKE", pattern);
+        }
+
+        public JcrQuery<T> isNotNull() {
+            checkPropertyOperand();
+            constraints.add(operand + " IS NOT NULL");
+            return JcrQuery.this;
+        }
+
+        public JcrQuery<T> isNull() {
+            checkPropertyOperand();
+            constraints.add("NOT " + operand + " IS NOT NULL");
+            return JcrQuery.this;
+        }
+
+        private void checkPropertyOperand() {
+            if (!operand.startsWith(SELECTOR + ".")) {
+                throw new JcrMappingException("Existence constraints are not supported on the node name");
+            }
+        }
+
+        private JcrQuery<T> compare(String operator, Object value) {
+            if (value == null) {
+                throw new JcrMappingException("Query value is null, use isNull() instead");
+            }
+            constraints.add(operand + " " + operator + " $" + BIND_VARIABLE_PREFIX + values.size());
+            values.add(value);
+            return JcrQuery.this;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+import org.jcrom.util.NodeFilter;
+import org.jcrom.util.ReflectionUtils;
+import org.jcrom.util.io.IOUtils;
+
+/**
+ * Immutable snapshot of an entity graph, which can be shared between threads.
+ * <p>
+ * The snapshot maps the node at the path supplied with a {@link NodeFilter}, and loads all its lazy proxies, so that
+ * the graph does not hold any reference to the session. The lists and maps of the mapped entities are replaced by
+ * unmodifiable copies, and the contents of the files streamed from the repository are read into memory. The entities
+ * themselves must be treated as read-only by the callers.
+ * </p>
+ * <p>
+ * Once started, the snapshot is mapped again when the subtree changes, and the new graph replaces the previous one
+ * atomically: the callers of {@link #get()} either see the previous graph or the new one, never a partially updated
+ * graph. The session supplied to {@link #start(Session)} is used by the observation thread, and must therefore be
+ * dedicated to the snapshot.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class JcrSnapshot<T> implements EventListener {
+
+    private static final Logger logger = Logger.getLogger(JcrSnapshot.class.getName());
+
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private final Jcrom jcrom;
+    private final Class<T> entityClass;
+    private final String path;
+    private final NodeFilter nodeFilter;
+
+    private volatile T snapshot;
+    private Session session;
+
+    /**
+     * @param jcrom the Jcrom instance mapping the entity class
+     * @param entityClass the class of the root entity
+     * @param path the path of the root node
+     * @param nodeFilter the filter applied when mapping the graph
+     */
+    public JcrSnapshot(Jcrom jcrom, Class<T> entityClass, String path, NodeFilter nodeFilter) {
+        this.jcrom = jcrom;
+        this.entityClass = entityClass;
+        this.path = path;
+        this.nodeFilter = nodeFilter;
+    }
+
+    /**
+     * Returns the definition of the listener refreshing the snapshot.
+     * 
+     * @return the definition of this listener
+     */
+    public EventListenerDefinition getEventListenerDefinition() {
+        EventListenerDefinition definition = new EventListenerDefinition();
+        definition.setListener(this);
+        definition.setEventTypes(EVENT_TYPES);
+        definition.setAbsPath(path);
+        definition.setDeep(true);
+        return definition;
+    }
+
+    /**
+     * Registers this snapshot as a listener of the workspace of the session supplied, and maps the graph.
+     * 
+     * @param session the session dedicated to this snapshot
+     * @throws RepositoryException if the listener cannot be registered
+     */
+    public synchronized void start(Session session) throws RepositoryException {
+        this.session = session;
+        EventListenerDefinition definition = getEventListenerDefinition();
+        // registered before the graph is mapped, so that no change is missed
+        session.getWorkspace().getObservationManager().addEventListener(definition.getListener(), definition.getEventTypes(), definition.getAbsPath(), definition.isDeep(), definition.getUuid(), definition.getNodeTypeName(), definition.isNoLocal());
+        refresh();
+    }
+
+    /**
+     * Unregisters this snapshot. The last graph mapped remains available.
+     * 
+     * @throws RepositoryException if the listener cannot be unregistered
+     */
+    public synchronized void stop() throws RepositoryException {
+        if (session != null) {
+            session.getWorkspace().getObservationManager().removeEventListener(this);
+            session = null;
+        }
+    }
+
+    /**
+     * Returns the current graph. It must not be modified.
+     * 
+     * @return the root entity of the graph, or null if the node does not exist
+     */
+    public T get() {
+        return snapshot;
+    }
+
+    /**
+     * Maps the graph again, and replaces the current one.
+     * 
+     * @throws RepositoryException if the node cannot be read
+     */
+    public synchronized void refresh() throws RepositoryException {
+        if (session == null) {
+            throw new IllegalStateException("The snapshot of " + path + " is not started");
+        }
+        session.refresh(false);
+        T entity;
+        try {
+            entity = jcrom.fromNode(entityClass, session.getNode(path), nodeFilter);
+        } catch (PathNotFoundException e) {
+            entity = null;
+        }
+        if (entity != null) {
+            try {
+                entity = entityClass.cast(freeze(entity, new IdentityHashMap<Object, Object>()));
+            } catch (IllegalAccessException e) {
+                throw new JcrMappingException("Could not create the snapshot of " + path, e);
+            } catch (IOException e) {
+                throw new JcrMappingException("Could not create the snapshot of " + path, e);
+            }
+        }
+        snapshot = entity;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Mapped the snapshot of " + path);
+        }
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        synchronized (this) {
+            if (session == null) {
+                return;
+            }
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Could not refresh the snapshot of " + path, e);
+            } catch (RepositoryException e) {
+                logger.log(Level.WARNING, "Could not refresh the snapshot of " + path, e);
+            }
+        }
+    }
+
+    /**
+     * Loads the lazy proxies of the value supplied, replaces the lists and maps of the entities by unmodifiable copies,
+     * and detaches the contents of the files from the session.
+     * 
+     * @param value the value to freeze
+     * @param frozen the values already frozen, to handle the cycles of the graph
+     * @return the frozen value
+     */
+    private Object freeze(Object value, Map<Object, Object> frozen) throws IllegalAccessException, IOException {
+        if (value == null) {
+            return null;
+        }
+        Object frozenValue = frozen.get(value);
+        if (frozenValue != null) {
+            return frozenValue;
+        }
+        Mapper mapper = jcrom.getMapper();
+        if (value instanceof LazyProxy) {
+            Object loadedValue = mapper.clearCglib(value);
+            frozenValue = freeze(loadedValue, frozen);
+            frozen.put(value, frozenValue);
+            return frozenValue;
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<Object>(((List<?>) value).size());
+            frozen.put(value, Collections.unmodifiableList(list));
+            for (Object element : (List<?>) value) {
+                list.add(freeze(element, frozen));
+            }
+            return frozen.get(value);
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            frozen.put(value, Collections.unmodifiableMap(map));
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(entry.getKey(), freeze(entry.getValue(), frozen));
+            }
+            return frozen.get(value);
+        }
+        frozen.put(value, value);
+        if (value instanceof JcrFile) {
+            JcrFile file = (JcrFile) value;
+            file.setDataProvider(detach(file.getDataProvider()));
+        }
+        if (mapper.isMapped(value.getClass()) || ReflectionUtils.getJcrNodeAnnotation(value.getClass()) != null) {
+            for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(value.getClass(), false)) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object fieldValue = field.get(value);
+                Object frozenFieldValue = freeze(fieldValue, frozen);
+                // a lazy proxy loading to null is replaced as well, so that its loader does not keep the session
+                if (frozenFieldValue != fieldValue && (frozenFieldValue == null || field.getType().isInstance(frozenFieldValue))) {
+                    field.set(value, frozenFieldValue);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Reads the content of the data provider supplied into a byte array, since a stream may read from a Binary of the
+     * session. Byte arrays are copied, so that the graph does not share them with the entity mapped. Files are kept.
+     */
+    private static JcrDataProvider detach(JcrDataProvider dataProvider) throws IOException {
+        if (dataProvider == null || dataProvider.isFile()) {
+            return dataProvider;
+        }
+        if (dataProvider.isBytes()) {
+            return new JcrDataProviderImpl(dataProvider.getBytes());
+        }
+        InputStream is = dataProvider.getInputStream();
+        try {
+            return new JcrDataProviderImpl(IOUtils.toByteArray(is));
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+}
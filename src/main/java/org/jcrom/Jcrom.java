@@ -18,9 +18,11 @@
 package org.jcrom;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.jcr.Node;
@@ -29,12 +31,15 @@ import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
+import javax.jcr.query.Row;
 
+import org.jcrom.annotations.JcrChildNode;
 import org.jcrom.annotations.JcrNode;
 import org.jcrom.callback.JcromCallback;
 import org.jcrom.type.DefaultTypeHandler;
 import org.jcrom.type.JavaFXTypeHandler;
 import org.jcrom.type.TypeHandler;
+import org.jcrom.util.NodeCache;
 import org.jcrom.util.NodeFilter;
 import org.jcrom.util.ReflectionUtils;
 
@@ -59,6 +64,12 @@ public class Jcrom {
 
     private SessionFactory sessionFactory;
 
+    private LazyLoadDetector lazyLoadDetector;
+
+    private boolean contentDigest;
+
+    private long prefetchLimit;
+
     /**
      * Create a new Jcrom instance that cleans node names, but with dynamic instantiation turned off.
      */
@@ -158,6 +169,7 @@ public class Jcrom {
             Set<Class<?>> validClasses = validator.validate(entityClass, mapper.isDynamicInstantiation());
             for (Class<?> c : validClasses) {
                 mapper.addMappedClass(c);
+                ProxyFactory.prepareProxyClass(c, mapper);
             }
         }
         return this;
@@ -256,6 +268,40 @@ public class Jcrom {
         }
     }
 
+    /**
+     * Moves the children stored directly in the container node of a bucketed List into their buckets. Existing flat
+     * containers must be migrated once the field is annotated with <code>@JcrChildNode(bucketing = ...)</code>. The
+     * session is not saved.
+     * 
+     * @param node the node of the entity holding the List
+     * @param entityClass the class of the entity
+     * @param fieldName the name of the List field
+     * @return the number of children moved
+     * @throws JcrMappingException
+     * @since 2.2.1
+     */
+    public int bucketChildNodes(Node node, Class<?> entityClass, String fieldName) throws JcrMappingException {
+        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(entityClass, false)) {
+            if (!field.getName().equals(fieldName)) {
+                continue;
+            }
+            JcrChildNode jcrChildNode = annotationReader.getAnnotation(field, JcrChildNode.class);
+            if (jcrChildNode == null || jcrChildNode.bucketing() == JcrChildNode.Bucketing.NONE) {
+                throw new JcrMappingException("Field " + fieldName + " of " + entityClass.getName() + " is not a bucketed @JcrChildNode");
+            }
+            try {
+                String containerName = mapper.getChildNodeMapper().getNodeName(field);
+                if (!node.hasNode(containerName)) {
+                    return 0;
+                }
+                return ChildNodeBuckets.migrate(node.getNode(containerName), jcrChildNode.bucketing(), jcrChildNode.containerNodeType(), mapper);
+            } catch (RepositoryException e) {
+                throw new JcrMappingException("Could not bucket the child nodes of " + fieldName, e);
+            }
+        }
+        throw new JcrMappingException("Could not find field " + fieldName + " in " + entityClass.getName());
+    }
+
     public void setBaseVersionInfo(Object object, String name, Calendar created) throws JcrMappingException {
         try {
             mapper.setBaseVersionInfo(object, name, created);
@@ -307,7 +353,12 @@ public class Jcrom {
         if (!mapper.isDynamicInstantiation() && !mapper.isMapped(entityClass)) {
             throw new JcrMappingException("Trying to map to an unmapped class: " + entityClass.getName());
         }
+        NodeCache cache = null;
         try {
+            if (prefetchLimit > 0 && isDeep(nodeFilter) && !node.getSession().hasPendingChanges()) {
+                cache = NodeCache.open(node.getSession());
+                cache.prefetch(node, prefetchLimit);
+            }
             return (T) mapper.fromNodeWithParent(entityClass, node, nodeFilter);
         } catch (ClassNotFoundException e) {
             throw new JcrMappingException("Could not map Object from node", e);
@@ -321,6 +372,40 @@ public class Jcrom {
             throw new JcrMappingException("Could not map Object from node", e);
         } finally {
             mapper.clearHistory();
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    private static boolean isDeep(NodeFilter nodeFilter) {
+        return nodeFilter == null || nodeFilter.getMaxDepth() == NodeFilter.DEPTH_INFINITE || nodeFilter.getMaxDepth() > 1;
+    }
+
+    /**
+     * Maps the query row supplied to an instance of a projection class, without loading the node.
+     * The projection class declares a subset of the @JcrProperty fields of an entity, which are read
+     * from the row columns named after the properties. The @JcrPath and @JcrName fields are read from the row path.
+     * Multi-valued properties are not supported.
+     * 
+     * @param projectionClass the class to instantiate, which does not need to be mapped
+     * @param row the query row, whose columns are named after the properties
+     * @return an instance of the projection class, mapped from the row
+     * @throws JcrMappingException
+     * @since 2.2.1
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T fromRow(Class<T> projectionClass, Row row) throws JcrMappingException {
+        try {
+            return (T) mapper.mapRowToClass(projectionClass, row);
+        } catch (InstantiationException e) {
+            throw new JcrMappingException("Could not map Object from row", e);
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not map Object from row", e);
+        } catch (IllegalAccessException e) {
+            throw new JcrMappingException("Could not map Object from row", e);
+        } catch (IOException e) {
+            throw new JcrMappingException("Could not map Object from row", e);
         }
     }
 
@@ -380,6 +465,7 @@ public class Jcrom {
             throw new JcrMappingException("Could not create node from object", e);
         } finally {
             mapper.clearHistory();
+            NodeCache.invalidate();
         }
     }
 
@@ -456,6 +542,33 @@ public class Jcrom {
             throw new JcrMappingException("Could not update node from object", e);
         } finally {
             mapper.clearHistory();
+            NodeCache.invalidate();
+        }
+    }
+
+    /**
+     * Update an existing JCR node with the entity supplied, checking out the versionable nodes lazily.
+     * <p>
+     * A versionable node is checked out just before the first modification of itself or of one of its non-versionable
+     * descendants, and unchanged properties are not rewritten. The versionable nodes that were modified are added to the
+     * list supplied, the deepest first, so that they can be checked in once the session is saved.
+     * </p>
+     * 
+     * @param node the JCR node to be updated
+     * @param entity the entity that will be mapped to the existing node
+     * @param nodeFilter the NodeFilter to apply when updating child nodes and references
+     * @param action callback object that specifies the Jcrom actions
+     * @param modifiedVersionableNodes the list to which the modified versionable nodes are added
+     * @return the updated node
+     * @throws JcrMappingException
+     * @since 2.2.1
+     */
+    public Node updateNode(Node node, Object entity, NodeFilter nodeFilter, JcromCallback action, List<Node> modifiedVersionableNodes) throws JcrMappingException {
+        mapper.startCheckoutTracking();
+        try {
+            return updateNode(node, entity, nodeFilter, action);
+        } finally {
+            modifiedVersionableNodes.addAll(mapper.stopCheckoutTracking());
         }
     }
 
@@ -483,6 +596,70 @@ public class Jcrom {
         return sessionFactory;
     }
 
+    /**
+     * Enables the detection of N+1 lazy loading patterns. Pass <code>null</code> to disable the detection (default).
+     * 
+     * @param lazyLoadDetector the detector recording the lazy resolutions, or <code>null</code>
+     * @since 2.2.1
+     */
+    public void setLazyLoadDetector(LazyLoadDetector lazyLoadDetector) {
+        this.lazyLoadDetector = lazyLoadDetector;
+    }
+
+    /**
+     * @return the detector recording the lazy resolutions, or <code>null</code> if the detection is disabled
+     * @since 2.2.1
+     */
+    public LazyLoadDetector getLazyLoadDetector() {
+        return lazyLoadDetector;
+    }
+
+    /**
+     * Enables the SHA-256 digests of file contents (disabled by default). When enabled, the digest of each uploaded
+     * content is stored on its jcr:content node, in the jcrom:sha256 property of the jcrom:digestible mixin type, which
+     * is registered on first use. Contents whose digest is unchanged are then not uploaded again on update.
+     * 
+     * @param contentDigest whether to store and compare the digests of file contents
+     * @since 2.2.1
+     */
+    public void setContentDigest(boolean contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+    /**
+     * @return whether the digests of file contents are stored and compared
+     * @since 2.2.1
+     */
+    public boolean isContentDigest() {
+        return contentDigest;
+    }
+
+    /**
+     * Enables the prefetch of the descendants of the nodes mapped with a deep NodeFilter (disabled by default). Before
+     * mapping, the whole subtree is then loaded with one JCR-SQL2 query into a {@link NodeCache} opened for the
+     * duration of the mapping. The mapping then looks up child nodes from the cache
+     * instead of the repository. The prefetch is skipped when the session has pending changes, and subtrees larger
+     * than the limit are only partially cached.
+     * 
+     * @param prefetchLimit the maximum number of descendants to prefetch, or 0 to disable the prefetch
+     * @since 2.2.1
+     */
+    public void setPrefetchLimit(long prefetchLimit) {
+        this.prefetchLimit = prefetchLimit;
+    }
+
+    /**
+     * @return the maximum number of descendants to prefetch, 0 if the prefetch is disabled
+     * @since 2.2.1
+     */
+    public long getPrefetchLimit() {
+        return prefetchLimit;
+    }
+
+    Mapper getMapper() {
+        return mapper;
+    }
+
     public void logNodeInfos(Node node) throws RepositoryException {
         for (PropertyIterator iter = node.getProperties(); iter.hasNext();) {
             Property p = iter.nextProperty();
@@ -0,0 +1,53 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import javax.jcr.NamespaceException;
+import javax.jcr.NamespaceRegistry;
+import javax.jcr.RepositoryException;
+import javax.jcr.Workspace;
+
+/**
+ * The namespace of the node types and properties that JCROM registers itself, such as the mixin types of digested
+ * contents and of child node buckets.
+ * 
+ * @author Nicolas Dos Santos
+ */
+final class JcromNamespace {
+
+    static final String PREFIX = "jcrom";
+    static final String URI = "http://jcrom.org/jcrom/1.0";
+
+    private JcromNamespace() {
+    }
+
+    /**
+     * Registers the JCROM namespace, unless it is registered already.
+     * 
+     * @param workspace the workspace whose namespace registry is updated
+     * @throws RepositoryException
+     */
+    static void register(Workspace workspace) throws RepositoryException {
+        NamespaceRegistry namespaceRegistry = workspace.getNamespaceRegistry();
+        try {
+            namespaceRegistry.getURI(PREFIX);
+        } catch (NamespaceException e) {
+            namespaceRegistry.registerNamespace(PREFIX, URI);
+        }
+    }
+}
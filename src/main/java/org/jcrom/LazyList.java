@@ -0,0 +1,182 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * List used for lazy loaded List fields. Every operation is delegated to the list returned by the loader, which is
+ * only called on first access.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+final class LazyList<E> implements List<E>, LazyProxy {
+
+    private final AbstractLazyLoader lazyLoader;
+
+    LazyList(AbstractLazyLoader lazyLoader) {
+        this.lazyLoader = lazyLoader;
+    }
+
+    AbstractLazyLoader getLazyLoader() {
+        return lazyLoader;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<E> getList() {
+        try {
+            return (List<E>) lazyLoader.loadObject();
+        } catch (Exception e) {
+            throw new JcrMappingException("Could not load lazy list", e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return getList().size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getList().isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return getList().contains(o);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return getList().iterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return getList().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return getList().toArray(a);
+    }
+
+    @Override
+    public boolean add(E e) {
+        return getList().add(e);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return getList().remove(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return getList().containsAll(c);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        return getList().addAll(c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> c) {
+        return getList().addAll(index, c);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return getList().removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return getList().retainAll(c);
+    }
+
+    @Override
+    public void clear() {
+        getList().clear();
+    }
+
+    @Override
+    public E get(int index) {
+        return getList().get(index);
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return getList().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        getList().add(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        return getList().remove(index);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return getList().indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return getList().lastIndexOf(o);
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return getList().listIterator();
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        return getList().listIterator(index);
+    }
+
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return getList().subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || getList().equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return getList().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getList().toString();
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.cglib.proxy.Factory;
+
+/**
+ * Opt-in detector of N+1 lazy loading patterns.
+ * <p>
+ * When registered with {@link Jcrom#setLazyLoadDetector(LazyLoadDetector)}, every lazy proxy resolution is recorded
+ * with the field it belongs to and the call site that triggered it. A field resolved for at least
+ * <code>siblingThreshold</code> distinct entities is reported as suspect: it usually means that a collection of entities
+ * is iterated and a lazy field is touched for each of them, each access doing its own JCR round-trip.
+ * </p>
+ * <p>
+ * Statistics are kept per thread, so that a report matches a single request. Call {@link #reset()} at the start (or end)
+ * of each request.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class LazyLoadDetector {
+
+    private static final Logger logger = Logger.getLogger(LazyLoadDetector.class.getName());
+
+    /** Default number of distinct entities from which a lazily loaded field is reported as suspect */
+    public static final int DEFAULT_SIBLING_THRESHOLD = 10;
+
+    private static final Comparator<LazyLoadStatistics> BY_LOAD_COUNT = new Comparator<LazyLoadStatistics>() {
+        @Override
+        public int compare(LazyLoadStatistics s1, LazyLoadStatistics s2) {
+            return s2.getLoadCount() - s1.getLoadCount();
+        }
+    };
+
+    private final int siblingThreshold;
+    private final boolean captureCallSites;
+
+    private final ThreadLocal<Map<String, LazyLoadStatistics>> statistics = new ThreadLocal<Map<String, LazyLoadStatistics>>() {
+        @Override
+        protected Map<String, LazyLoadStatistics> initialValue() {
+            return new HashMap<String, LazyLoadStatistics>();
+        }
+    };
+
+    public LazyLoadDetector() {
+        this(DEFAULT_SIBLING_THRESHOLD, true);
+    }
+
+    /**
+     * @param siblingThreshold number of distinct entities from which a lazily loaded field is reported as suspect
+     * @param captureCallSites whether to record the call site of each lazy resolution (requires a stack trace per resolution)
+     */
+    public LazyLoadDetector(int siblingThreshold, boolean captureCallSites) {
+        this.siblingThreshold = siblingThreshold;
+        this.captureCallSites = captureCallSites;
+    }
+
+    /**
+     * Records a lazy resolution.
+     * 
+     * @param parentObject the entity holding the lazily loaded field
+     * @param fieldName the name of the lazily loaded field, which may differ from the name of the node or property loaded
+     * @param loadedPath the path of the item loaded: the owner node path followed by the child node or property name
+     */
+    void record(Object parentObject, String fieldName, String loadedPath) {
+        int idx = loadedPath.lastIndexOf('/');
+        String ownerPath = idx > 0 ? loadedPath.substring(0, idx) : "/";
+        String ownerClassName = getOwnerClassName(parentObject);
+
+        String key = ownerClassName + "." + fieldName;
+        Map<String, LazyLoadStatistics> map = statistics.get();
+        LazyLoadStatistics stats = map.get(key);
+        if (stats == null) {
+            stats = new LazyLoadStatistics(ownerClassName, fieldName);
+            map.put(key, stats);
+        }
+        int ownerCount = stats.getOwnerCount();
+        stats.add(ownerPath, captureCallSites ? findCallSite() : null);
+        if (ownerCount < siblingThreshold && stats.getOwnerCount() == siblingThreshold && logger.isLoggable(Level.WARNING)) {
+            logger.warning("Possible N+1 lazy loading detected: " + stats);
+        }
+    }
+
+    /**
+     * Returns the statistics recorded by the current thread since the last {@link #reset()}, ordered by number of lazy
+     * resolutions.
+     * 
+     * @return the statistics of every lazily loaded field
+     */
+    public List<LazyLoadStatistics> getReport() {
+        List<LazyLoadStatistics> report = new ArrayList<LazyLoadStatistics>(statistics.get().values());
+        Collections.sort(report, BY_LOAD_COUNT);
+        return report;
+    }
+
+    /**
+     * Returns the fields resolved for at least <code>siblingThreshold</code> distinct entities by the current thread.
+     * 
+     * @return the statistics of the suspect fields
+     */
+    public List<LazyLoadStatistics> getSuspects() {
+        List<LazyLoadStatistics> suspects = new ArrayList<LazyLoadStatistics>();
+        for (LazyLoadStatistics stats : getReport()) {
+            if (isSuspect(stats)) {
+                suspects.add(stats);
+            }
+        }
+        return suspects;
+    }
+
+    /**
+     * Checks whether the statistics supplied exceed the sibling threshold.
+     * 
+     * @param stats the statistics of a field
+     * @return true if the field was resolved for at least <code>siblingThreshold</code> distinct entities
+     */
+    public boolean isSuspect(LazyLoadStatistics stats) {
+        return stats.getOwnerCount() >= siblingThreshold;
+    }
+
+    /**
+     * Logs a summary of the statistics recorded by the current thread. Suspect fields are logged as warnings, others with
+     * the FINE level.
+     */
+    public void logSummary() {
+        for (LazyLoadStatistics stats : getReport()) {
+            if (isSuspect(stats)) {
+                logger.warning("Possible N+1 lazy loading: " + stats);
+            } else if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Lazy loading: " + stats);
+            }
+        }
+    }
+
+    /**
+     * Clears the statistics recorded by the current thread.
+     */
+    public void reset() {
+        statistics.remove();
+    }
+
+    private static String getOwnerClassName(Object parentObject) {
+        if (parentObject == null) {
+            return "?";
+        }
+        Class<?> c = parentObject.getClass();
+        if (parentObject instanceof Factory) {
+            c = c.getSuperclass();
+        }
+        return c.getName();
+    }
+
+    private static String findCallSite() {
+        for (StackTraceElement element : new Throwable().getStackTrace()) {
+            String className = element.getClassName();
+            if (!isIgnored(className)) {
+                return element.toString();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIgnored(String className) {
+        return className.contains("$$") || className.startsWith("org.jcrom.") || className.startsWith("net.sf.cglib.") || className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("sun.") || className.startsWith("jdk.");
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Statistics about the lazy resolutions of a single mapped field, collected by a {@link LazyLoadDetector}.
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class LazyLoadStatistics {
+
+    private final String ownerClassName;
+    private final String fieldName;
+    private final Set<String> ownerPaths = new LinkedHashSet<String>();
+    private final Set<String> callSites = new LinkedHashSet<String>();
+    private int loadCount;
+
+    LazyLoadStatistics(String ownerClassName, String fieldName) {
+        this.ownerClassName = ownerClassName;
+        this.fieldName = fieldName;
+    }
+
+    void add(String ownerPath, String callSite) {
+        loadCount++;
+        ownerPaths.add(ownerPath);
+        if (callSite != null) {
+            callSites.add(callSite);
+        }
+    }
+
+    /**
+     * @return the name of the class declaring the lazily loaded field
+     */
+    public String getOwnerClassName() {
+        return ownerClassName;
+    }
+
+    /**
+     * @return the name of the lazily loaded field (or the child node name when the field name is not known)
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return the number of lazy resolutions of this field
+     */
+    public int getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * @return the number of distinct entities for which this field was resolved
+     */
+    public int getOwnerCount() {
+        return ownerPaths.size();
+    }
+
+    /**
+     * @return the call sites (first frame outside of JCROM) that triggered the lazy resolutions
+     */
+    public Set<String> getCallSites() {
+        return Collections.unmodifiableSet(callSites);
+    }
+
+    @Override
+    public String toString() {
+        return ownerClassName + "." + fieldName + ": " + loadCount + " lazy loads for " + ownerPaths.size() + " entities from " + callSites;
+    }
+}
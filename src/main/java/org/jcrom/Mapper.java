@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
@@ -29,17 +30,21 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
 import javax.jcr.RepositoryException;
+import javax.jcr.Value;
 import javax.jcr.nodetype.NodeType;
+import javax.jcr.query.Row;
 import javax.jcr.version.Version;
 import javax.jcr.version.VersionManager;
 
-import net.sf.cglib.proxy.LazyLoader;
+import net.sf.cglib.proxy.Factory;
 
 import org.jcrom.annotations.JcrBaseVersionCreated;
 import org.jcrom.annotations.JcrBaseVersionName;
@@ -98,6 +103,17 @@ class Mapper {
 
     private final ThreadLocal<Map<HistoryKey, Object>> history = new ThreadLocal<Map<HistoryKey, Object>>();
 
+    private final ThreadLocal<CheckoutTracker> checkoutTracker = new ThreadLocal<CheckoutTracker>();
+
+    /** Names of the properties and child nodes read when mapping a node to a class */
+    private final ConcurrentMap<Class<?>, NodeSnapshot.Names> snapshotNames = new ConcurrentHashMap<Class<?>, NodeSnapshot.Names>();
+
+    /** JCR-SQL2 statements compiled by {@link JcrQuery}, keyed by the shape of the query */
+    private final ConcurrentMap<String, String> queryStatements = new ConcurrentHashMap<String, String>();
+
+    /** Prototypes of the lazy loading proxies created by {@link ProxyFactory}, keyed by the proxied type */
+    private final ConcurrentMap<Class<?>, Factory> proxyPrototypes = new ConcurrentHashMap<Class<?>, Factory>();
+
     /**
      * Create a Mapper for a specific class.
      * 
@@ -121,6 +137,42 @@ class Mapper {
         history.remove();
     }
 
+    /**
+     * Starts tracking the versionable nodes modified by the current thread. See {@link CheckoutTracker}.
+     */
+    void startCheckoutTracking() {
+        checkoutTracker.set(new CheckoutTracker());
+    }
+
+    /**
+     * Stops tracking the versionable nodes modified by the current thread.
+     * 
+     * @return the versionable nodes modified since the tracking started, the deepest first
+     */
+    List<Node> stopCheckoutTracking() {
+        CheckoutTracker tracker = checkoutTracker.get();
+        checkoutTracker.remove();
+        return tracker != null ? tracker.getModifiedNodes() : new ArrayList<Node>();
+    }
+
+    boolean isCheckoutTracking() {
+        return checkoutTracker.get() != null;
+    }
+
+    /**
+     * Must be called before modifying the node supplied. When the tracking is enabled, the nearest versionable
+     * ancestor-or-self of the node is checked out if needed.
+     * 
+     * @param node the node about to be modified
+     * @throws RepositoryException
+     */
+    void checkout(Node node) throws RepositoryException {
+        CheckoutTracker tracker = checkoutTracker.get();
+        if (tracker != null) {
+            tracker.checkout(node);
+        }
+    }
+
     boolean isMapped(Class<?> c) {
         return mappedClasses.contains(c);
     }
@@ -173,6 +225,113 @@ class Mapper {
         }
     }
 
+    /**
+     * Returns the names of the properties and child nodes mapped by the class supplied, which are read
+     * at once when mapping a node to the class.
+     */
+    NodeSnapshot.Names getSnapshotNames(Class<?> c) {
+        NodeSnapshot.Names names = snapshotNames.get(c);
+        if (names == null) {
+            names = new NodeSnapshot.Names();
+            for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(c, false)) {
+                if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class)) {
+                    // a map of properties is stored in a child node
+                    names.addPropertyName(propertyMapper.getPropertyName(field));
+                    names.addChildName(propertyMapper.getPropertyName(field));
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrSerializedProperty.class)) {
+                    names.addPropertyName(propertyMapper.getSerializedPropertyName(field));
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProtectedProperty.class)) {
+                    names.addPropertyName(propertyMapper.getProtectedPropertyName(field));
+                    names.addChildName(propertyMapper.getProtectedPropertyName(field));
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrUUID.class)) {
+                    names.addPropertyName(Property.JCR_UUID);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrCreated.class)) {
+                    names.addPropertyName(Property.JCR_CREATED);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrChildNode.class)) {
+                    names.addChildName(childNodeMapper.getNodeName(field));
+                }
+            }
+            snapshotNames.putIfAbsent(c, names.build());
+        }
+        return names;
+    }
+
+    ConcurrentMap<String, String> getQueryStatements() {
+        return queryStatements;
+    }
+
+    ConcurrentMap<Class<?>, Factory> getProxyPrototypes() {
+        return proxyPrototypes;
+    }
+
+    /**
+     * Returns the name of the JCR property the field supplied is mapped to, for use in queries.
+     * 
+     * @param entityClass the mapped class
+     * @param fieldName the name of a field declared or inherited by the class
+     * @return the property name, or null if the field is mapped to the node name
+     */
+    String getQueryPropertyName(Class<?> entityClass, String fieldName) {
+        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(entityClass, true)) {
+            if (field.getName().equals(fieldName)) {
+                if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class)) {
+                    return propertyMapper.getPropertyName(field);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProtectedProperty.class)) {
+                    return propertyMapper.getProtectedPropertyName(field);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrSerializedProperty.class)) {
+                    return propertyMapper.getSerializedPropertyName(field);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrReference.class)) {
+                    return referenceMapper.getPropertyName(field);
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrUUID.class)) {
+                    return Property.JCR_UUID;
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrCreated.class)) {
+                    return Property.JCR_CREATED;
+                } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrName.class)) {
+                    return null;
+                }
+                throw new JcrMappingException("Field " + fieldName + " of " + entityClass.getName() + " is not mapped to a property");
+            }
+        }
+        throw new JcrMappingException("Could not find field " + fieldName + " in " + entityClass.getName());
+    }
+
+    /**
+     * Returns the names of the properties mapped by the @JcrProperty fields of a projection class.
+     */
+    List<String> getProjectionPropertyNames(Class<?> projectionClass) {
+        List<String> propertyNames = new ArrayList<String>();
+        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(projectionClass, false)) {
+            if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class)) {
+                propertyNames.add(propertyMapper.getPropertyName(field));
+            }
+        }
+        return propertyNames;
+    }
+
+    /**
+     * Maps a query row to an instance of a projection class, without loading the node.
+     * The @JcrProperty fields are read from the row columns named after the properties,
+     * and the @JcrPath and @JcrName fields from the row path.
+     */
+    Object mapRowToClass(Class<?> projectionClass, Row row) throws RepositoryException, IllegalAccessException, InstantiationException, IOException {
+        Object obj = projectionClass.newInstance();
+        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(projectionClass, false)) {
+            field.setAccessible(true);
+            if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class)) {
+                Value value = row.getValue(propertyMapper.getPropertyName(field));
+                if (value != null) {
+                    propertyMapper.mapValueToField(field, obj, value);
+                }
+            } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrPath.class)) {
+                typeHandler.setObject(field, obj, row.getPath());
+            } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrName.class)) {
+                String path = row.getPath();
+                typeHandler.setObject(field, obj, path.substring(path.lastIndexOf('/') + 1));
+            }
+        }
+        return obj;
+    }
+
     Object findEntityByPath(List<?> entities, String path) throws IllegalAccessException {
         for (Object entity : entities) {
             if (path.equals(getNodePath(entity))) {
@@ -474,6 +633,7 @@ class Mapper {
         JcrNode jcrNode = typeHandler.getJcrNodeAnnotation(entity.getClass(), entity.getClass().getGenericSuperclass(), entity);
         if (createNode) {
             // add node
+            checkout(parentNode);
             String nodeName = getCleanName(getNodeName(entity));
             node = action.doAddNode(parentNode, nodeName, jcrNode, entity);
 
@@ -546,9 +706,17 @@ class Mapper {
         return updateNode(node, entity, entity.getClass(), nodeFilter, 0, action);
     }
 
+    private static boolean isClassNameUnchanged(Node node, JcrNode jcrNode, Object entity) throws RepositoryException {
+        return node.hasProperty(jcrNode.classNameProperty()) && node.getProperty(jcrNode.classNameProperty()).getString().equals(entity.getClass().getCanonicalName());
+    }
+
     Node updateNode(Node node, Object entity, Class<?> entityClass, NodeFilter nodeFilter, int depth, JcromCallback action) throws RepositoryException, IllegalAccessException, IOException {
 
-        entity = clearCglib(entity);
+        if (entity instanceof LazyProxy) {
+            // map the fields of the loaded object, not those of the proxy class
+            entity = clearCglib(entity);
+            entityClass = entity.getClass();
+        }
 
         if (nodeFilter == null) {
             nodeFilter = new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE);
@@ -561,6 +729,10 @@ class Mapper {
         // map the class name to a property
         JcrNode jcrNode = ReflectionUtils.getJcrNodeAnnotation(entityClass);
         if (jcrNode != null && !jcrNode.classNameProperty().equals("none")) {
+            // when tracking checkouts, a node whose class name is unchanged is not checked out
+            if (!isCheckoutTracking() || !isClassNameUnchanged(node, jcrNode, entity)) {
+                checkout(node);
+            }
             // check if the class of the object has changed
             if (node.hasProperty(jcrNode.classNameProperty())) {
                 String oldClassName = node.getProperty(jcrNode.classNameProperty()).getString();
@@ -594,6 +766,11 @@ class Mapper {
         for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(entityClass, true)) {
             field.setAccessible(true);
 
+            if (isUnloadedLazyProxy(typeHandler.getObject(field, entity), entity, node)) {
+                // lazy field never loaded, the repository already holds its state
+                continue;
+            }
+
             if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class) && nodeFilter.isDepthPropertyIncluded(depth)) {
                 propertyMapper.updateProperty(field, entity, node, depth, nodeFilter, this);
 
@@ -619,7 +796,9 @@ class Mapper {
             boolean isVersionable = JcrUtils.hasMixinType(node, "mix:versionable") || JcrUtils.hasMixinType(node, NodeType.MIX_VERSIONABLE);
             Node parentNode = node.getParent();
 
-            if (isVersionable) {
+            // when tracking checkouts, the parent node is checked in after the save
+            checkout(parentNode);
+            if (isVersionable && !isCheckoutTracking()) {
                 if (JcrUtils.hasMixinType(parentNode, "mix:versionable") || JcrUtils.hasMixinType(parentNode, NodeType.MIX_VERSIONABLE)) {
                     JcrUtils.checkout(parentNode);
                 }
@@ -629,7 +808,7 @@ class Mapper {
             String nodeName = getCleanName(getNodeName(entity));
             action.doMoveNode(parentNode, node, nodeName, jcrNode, entity);
 
-            if (isVersionable) {
+            if (isVersionable && !isCheckoutTracking()) {
                 if ((JcrUtils.hasMixinType(parentNode, "mix:versionable") || JcrUtils.hasMixinType(parentNode, NodeType.MIX_VERSIONABLE)) && parentNode.isCheckedOut()) {
                     // Save session changes before checking-in the parent node
                     node.getSession().save();
@@ -685,17 +864,20 @@ class Mapper {
             history.get().put(key, obj);
         }
 
+        // the mapped properties and child nodes are read at once
+        NodeSnapshot snapshot = new NodeSnapshot(node, getSnapshotNames(obj.getClass()));
+
         for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(obj.getClass(), false)) {
             field.setAccessible(true);
 
             if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProperty.class) && nodeFilter.isDepthPropertyIncluded(depth)) {
-                propertyMapper.mapPropertyToField(obj, field, node, depth, nodeFilter);
+                propertyMapper.mapPropertyToField(obj, field, snapshot, depth, nodeFilter);
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrSerializedProperty.class) && nodeFilter.isDepthPropertyIncluded(depth)) {
-                propertyMapper.mapSerializedPropertyToField(obj, field, node, depth, nodeFilter);
+                propertyMapper.mapSerializedPropertyToField(obj, field, snapshot, depth, nodeFilter);
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrProtectedProperty.class)) {
-                propertyMapper.mapProtectedPropertyToField(obj, field, node);
+                propertyMapper.mapProtectedPropertyToField(obj, field, snapshot);
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrUUID.class)) {
-                if (node.hasProperty(Property.JCR_UUID)) {
+                if (snapshot.hasProperty(Property.JCR_UUID)) {
                     // field.set(obj, node.getUUID());
                     typeHandler.setObject(field, obj, node.getIdentifier());
                 }
@@ -735,15 +917,16 @@ class Mapper {
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrCheckedout.class)) {
                 typeHandler.setObject(field, obj, node.isCheckedOut());
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrCreated.class)) {
-                if (node.hasProperty(Property.JCR_CREATED)) {
-                    typeHandler.setObject(field, obj, typeHandler.getValue(field.getType(), null, node.getProperty(Property.JCR_CREATED).getValue(), null));
+                Property created = snapshot.getProperty(Property.JCR_CREATED);
+                if (created != null) {
+                    typeHandler.setObject(field, obj, typeHandler.getValue(field.getType(), null, created.getValue(), null));
                 }
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrParentNode.class)) {
                 if (parentObject != null && typeHandler.getType(field.getType(), field.getGenericType(), obj).isInstance(parentObject)) {
                     typeHandler.setObject(field, obj, parentObject);
                 }
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrChildNode.class) && nodeFilter.isDepthIncluded(depth)) {
-                childNodeMapper.getChildrenFromNode(field, node, obj, depth, nodeFilter, this);
+                childNodeMapper.getChildrenFromNode(field, snapshot, obj, depth, nodeFilter, this);
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrReference.class)) {
                 referenceMapper.getReferencesFromNode(field, node, obj, depth, nodeFilter, this);
             } else if (jcrom.getAnnotationReader().isAnnotationPresent(field, JcrFileNode.class) && nodeFilter.isDepthIncluded(depth)) {
@@ -761,8 +944,7 @@ class Mapper {
     }
 
     static Node getNodeById(Node node, String id) throws RepositoryException {
-        // return node.getSession().getNodeByUUID(uuid);
-        return node.getSession().getNodeByIdentifier(id);
+        return PathUtils.getNodeById(id, node.getSession());
     }
 
     /**
@@ -775,34 +957,49 @@ class Mapper {
      * @throws java.lang.IllegalAccessException
      */
     Object clearCglib(Object obj) throws IllegalAccessException {
-        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(obj.getClass(), true)) {
-            field.setAccessible(true);
-            if (field.getName().equals("CGLIB$LAZY_LOADER_0")) {
-                Object object = typeHandler.getObject(field, obj);
-                if (object != null) {
-                    return object;
-                } else {
-                    // lazy loading has not been triggered yet, so
-                    // we do it manually
-                    return triggerLazyLoading(obj);
-                }
-            }
+        if (obj instanceof LazyProxy) {
+            // the loader returns the object already loaded by the proxy, or
+            // loads it if lazy loading has not been triggered yet
+            return triggerLazyLoading(obj);
         }
         return obj;
     }
 
     Object triggerLazyLoading(Object obj) throws IllegalAccessException {
-        for (Field field : ReflectionUtils.getDeclaredAndInheritedFields(obj.getClass(), false)) {
-            field.setAccessible(true);
-            if (field.getName().equals("CGLIB$CALLBACK_0")) {
-                try {
-                    return ((LazyLoader) typeHandler.getObject(field, obj)).loadObject();
-                } catch (Exception e) {
-                    throw new JcrMappingException("Could not trigger lazy loading", e);
-                }
+        try {
+            return getLazyLoader(obj).loadObject();
+        } catch (Exception e) {
+            throw new JcrMappingException("Could not trigger lazy loading", e);
+        }
+    }
+
+    private static AbstractLazyLoader getLazyLoader(Object proxy) {
+        if (proxy instanceof LazyList) {
+            return ((LazyList<?>) proxy).getLazyLoader();
+        }
+        return (AbstractLazyLoader) ((Factory) proxy).getCallback(0);
+    }
+
+    /**
+     * Checks whether the value of a field is a lazy proxy created when mapping the entity supplied from the node supplied,
+     * and not loaded since. The node already holds the state of such a value, so it does not need to be written on update.
+     * A proxy loading from another node, e.g. when the entity is written to a different node, must be written.
+     * 
+     * @param value the value of a field
+     * @param entity the entity holding the field
+     * @param node the node the entity is written to
+     * @return true if the value is a lazy proxy of the entity and node that has not been loaded
+     */
+    static boolean isUnloadedLazyProxy(Object value, Object entity, Node node) throws RepositoryException {
+        if (value instanceof LazyProxy) {
+            AbstractLazyLoader lazyLoader = getLazyLoader(value);
+            if (lazyLoader.isLoaded() || lazyLoader.getParentObject() != entity) {
+                return false;
             }
+            String nodePath = node.getPath();
+            return lazyLoader.getLoadedPath().startsWith(nodePath.endsWith("/") ? nodePath : nodePath + "/");
         }
-        return obj;
+        return false;
     }
 
     PropertyMapper getPropertyMapper() {
@@ -0,0 +1,173 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+
+import org.jcrom.util.NodeCache;
+
+/**
+ * The mapped properties and child nodes of a node, read with a single <code>getProperties(String[])</code> call
+ * and a single <code>getNodes(String[])</code> call instead of a hasProperty()/getProperty() pair per field.
+ * Each lookup is performed on first use. Names that cannot be expressed as a name glob are read from the node directly.
+ * The child nodes of a node prefetched in the {@link NodeCache} are read from the cache.
+ * 
+ * @author Nicolas Dos Santos
+ */
+class NodeSnapshot {
+
+    private final Node node;
+    private final Names names;
+
+    private Map<String, Property> properties;
+    private Map<String, Node> childNodes;
+
+    NodeSnapshot(Node node, Names names) {
+        this.node = node;
+        this.names = names;
+    }
+
+    Node getNode() {
+        return node;
+    }
+
+    boolean hasProperty(String name) throws RepositoryException {
+        return getProperty(name) != null;
+    }
+
+    /**
+     * @return the property with the name supplied, or null if the node has no such property
+     */
+    Property getProperty(String name) throws RepositoryException {
+        if (!names.propertyNames.contains(name)) {
+            return node.hasProperty(name) ? node.getProperty(name) : null;
+        }
+        if (properties == null) {
+            properties = new HashMap<String, Property>();
+            PropertyIterator propertyIterator = node.getProperties(names.propertyGlobs);
+            while (propertyIterator.hasNext()) {
+                Property property = propertyIterator.nextProperty();
+                properties.put(property.getName(), property);
+            }
+        }
+        return properties.get(name);
+    }
+
+    /**
+     * @return the first child node with the name supplied, or null if the node has no such child
+     */
+    Node getChildNode(String name) throws RepositoryException {
+        if (childNodes == null && names.childNames.contains(name)) {
+            // the children of a prefetched node are already cached
+            NodeCache cache = NodeCache.get(node.getSession());
+            if (cache != null && cache.isPrefetched(node.getPath())) {
+                String childPath = node.getPath().equals("/") ? "/" + name : node.getPath() + "/" + name;
+                return cache.nodeExists(childPath) ? cache.getNode(childPath) : null;
+            }
+            childNodes = readChildNodes();
+        }
+        if (childNodes == null || !names.childNames.contains(name)) {
+            return node.hasNode(name) ? node.getNode(name) : null;
+        }
+        return childNodes.get(name);
+    }
+
+    private Map<String, Node> readChildNodes() throws RepositoryException {
+        Map<String, Node> nodes = new HashMap<String, Node>();
+        try {
+            NodeIterator nodeIterator = node.getNodes(names.childGlobs);
+            while (nodeIterator.hasNext()) {
+                Node childNode = nodeIterator.nextNode();
+                if (!nodes.containsKey(childNode.getName())) {
+                    nodes.put(childNode.getName(), childNode);
+                }
+            }
+        } catch (NoSuchElementException e) {
+            // ModeShape 3.x may fail to filter transient child nodes, they are then read one by one
+            return null;
+        }
+        return nodes;
+    }
+
+    /**
+     * The names of the properties and child nodes mapped by a class, computed once per class.
+     */
+    static class Names {
+
+        private final Set<String> propertyNames = new HashSet<String>();
+        private final Set<String> childNames = new HashSet<String>();
+        private String propertyGlobs;
+        private String childGlobs;
+
+        void addPropertyName(String name) {
+            if (isGlobSafe(name)) {
+                propertyNames.add(name);
+            }
+        }
+
+        void addChildName(String name) {
+            if (isGlobSafe(name)) {
+                childNames.add(name);
+            }
+        }
+
+        Names build() {
+            propertyGlobs = toNamePattern(propertyNames);
+            childGlobs = toNamePattern(childNames);
+            return this;
+        }
+
+        /**
+         * A name glob matches literally unless it contains '*' or '|', and is trimmed by the repository.
+         * Relative paths, indexes and expanded names are read from the node directly.
+         */
+        private static boolean isGlobSafe(String name) {
+            return name.length() > 0 && name.trim().equals(name) && !containsAny(name, "*|/[{");
+        }
+
+        private static String toNamePattern(Set<String> names) {
+            StringBuilder namePattern = new StringBuilder();
+            for (String name : names) {
+                if (namePattern.length() > 0) {
+                    namePattern.append('|');
+                }
+                namePattern.append(name);
+            }
+            return namePattern.toString();
+        }
+
+        private static boolean containsAny(String name, String chars) {
+            for (int i = 0; i < chars.length(); i++) {
+                if (name.indexOf(chars.charAt(i)) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
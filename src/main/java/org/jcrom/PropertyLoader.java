@@ -0,0 +1,104 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.Binary;
+import javax.jcr.Session;
+
+import org.jcrom.util.PathUtils;
+import org.jcrom.util.io.IOUtils;
+
+/**
+ * Handles lazy loading of a binary or serialized property. The node is looked up by identifier, so that the
+ * property can still be loaded after the node has been moved.
+ * 
+ * @author Nicolas Dos Santos
+ */
+class PropertyLoader extends AbstractLazyLoader {
+
+    private static final Logger logger = Logger.getLogger(PropertyLoader.class.getName());
+
+    private final Object parentObject;
+    private final String nodeId;
+    private final String nodePath;
+    private final String propertyName;
+    private final boolean serialized;
+    private final Field field;
+
+    PropertyLoader(Object parentObject, String nodeId, String nodePath, String propertyName, boolean serialized, Session session, Mapper mapper, Field field) {
+        super(session, mapper);
+        this.parentObject = parentObject;
+        this.nodeId = nodeId;
+        this.nodePath = nodePath;
+        this.propertyName = propertyName;
+        this.serialized = serialized;
+        this.field = field;
+    }
+
+    @Override
+    protected Object doLoadObject(Session session, Mapper mapper) throws Exception {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Lazy loading property " + propertyName + " of " + nodePath);
+        }
+        final Binary binary = PathUtils.getNodeById(nodeId, session).getProperty(propertyName).getBinary();
+        if (!serialized && !isTemporarySession(session)) {
+            // the content is streamed from the repository, the binary is disposed once the stream is closed
+            return new FilterInputStream(binary.getStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        binary.dispose();
+                    }
+                }
+            };
+        }
+        try {
+            if (serialized) {
+                return mapper.getPropertyMapper().deserialize(binary.getStream());
+            }
+            // the content is copied, since the session created for the loading is released once loaded
+            return new ByteArrayInputStream(IOUtils.toByteArray(binary.getStream()));
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return nodePath + "/" + propertyName;
+    }
+}
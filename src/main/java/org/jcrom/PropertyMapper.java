@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +37,7 @@ import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.ValueFactory;
@@ -66,7 +68,7 @@ class PropertyMapper {
         this.typeHandler = mapper.getTypeHandler();
     }
 
-    void mapPropertiesToMap(String propertyName, Field field, Object obj, Node node, Class<? extends Converter<?, ?>> converterClass, boolean ignoreReadOnlyProperties) throws RepositoryException, IOException, IllegalAccessException {
+    void mapPropertiesToMap(String propertyName, Field field, Object obj, NodeSnapshot snapshot, Class<? extends Converter<?, ?>> converterClass, boolean ignoreReadOnlyProperties) throws RepositoryException, IOException, IllegalAccessException {
         Map<String, Object> map = new HashMap<String, Object>();
 
         Type genericType = field.getGenericType();
@@ -76,7 +78,10 @@ class PropertyMapper {
         }
 
         Class<?> valueType = ReflectionUtils.getParameterizedClass(genericType, 1);
-        Node childrenContainer = node.getNode(propertyName);
+        Node childrenContainer = snapshot.getChildNode(propertyName);
+        if (childrenContainer == null) {
+            throw new PathNotFoundException(propertyName);
+        }
         PropertyIterator propIterator = childrenContainer.getProperties();
 
         while (propIterator.hasNext()) {
@@ -111,14 +116,20 @@ class PropertyMapper {
         typeHandler.setObject(field, obj, fieldValue);
     }
 
-    void mapSerializedPropertyToField(Object obj, Field field, Node node, int depth, NodeFilter nodeFilter) throws RepositoryException, IOException, IllegalAccessException, ClassNotFoundException {
+    void mapSerializedPropertyToField(Object obj, Field field, NodeSnapshot snapshot, int depth, NodeFilter nodeFilter) throws RepositoryException, IOException, IllegalAccessException, ClassNotFoundException {
         String propertyName = getSerializedPropertyName(field);
 
-        if (nodeFilter == null || nodeFilter.isIncluded(NodeFilter.PROPERTY_PREFIX + field.getName(), node, depth)) {
-            if (node.hasProperty(propertyName)) {
-                Property p = node.getProperty(propertyName);
-                //field.set(obj, deserialize(p.getStream()));
-                typeHandler.setObject(field, obj, deserialize(p.getBinary().getStream()));
+        if (nodeFilter == null || nodeFilter.isIncluded(NodeFilter.PROPERTY_PREFIX + field.getName(), snapshot.getNode(), depth)) {
+            Property p = snapshot.getProperty(propertyName);
+            if (p != null) {
+                JcrSerializedProperty jcrProperty = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrSerializedProperty.class);
+                if (jcrProperty.lazy() && isProxyable(field.getType())) {
+                    // lazy loading
+                    typeHandler.setObject(field, obj, createPropertyProxy(field, field.getType(), obj, snapshot.getNode(), propertyName, true));
+                } else {
+                    //field.set(obj, deserialize(p.getStream()));
+                    typeHandler.setObject(field, obj, deserialize(p.getBinary().getStream()));
+                }
             }
         }
     }
@@ -159,10 +170,10 @@ class PropertyMapper {
         return name;
     }
 
-    void mapPropertyToField(Object obj, Field field, Node node, int depth, NodeFilter nodeFilter) throws RepositoryException, IllegalAccessException, IOException {
+    void mapPropertyToField(Object obj, Field field, NodeSnapshot snapshot, int depth, NodeFilter nodeFilter) throws RepositoryException, IllegalAccessException, IOException {
         String name = getPropertyName(field);
 
-        if (nodeFilter == null || nodeFilter.isIncluded(NodeFilter.PROPERTY_PREFIX + field.getName(), node, depth)) {
+        if (nodeFilter == null || nodeFilter.isIncluded(NodeFilter.PROPERTY_PREFIX + field.getName(), snapshot.getNode(), depth)) {
             Class<?> type = field.getType();
 
             Class<? extends Converter<?, ?>> converterClass = getPropertyConverter(field);
@@ -170,34 +181,40 @@ class PropertyMapper {
                 type = ReflectionUtils.getParameterizedClass(converterClass.getGenericInterfaces()[0], 1);
             }
 
-            if (typeHandler.isMap(type)) {
+            JcrProperty jcrProperty = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrProperty.class);
+            if (jcrProperty.lazy() && converterClass == null && type == InputStream.class) {
+                // lazy loading
+                if (snapshot.hasProperty(name)) {
+                    typeHandler.setObject(field, obj, createPropertyProxy(field, InputStream.class, obj, snapshot.getNode(), name, false));
+                }
+            } else if (typeHandler.isMap(type)) {
                 // map of properties
                 try {
-                    mapPropertiesToMap(name, field, obj, node, converterClass, true);
+                    mapPropertiesToMap(name, field, obj, snapshot, converterClass, true);
                 } catch (PathNotFoundException pne) {
                     // ignore here as the Field could have been added to the model
                     // since the Node was created and not yet been populated.
                 }
             } else {
-                mapToField(name, field, obj, node, converterClass);
+                mapToField(name, field, obj, snapshot, converterClass);
             }
         }
     }
 
-    void mapProtectedPropertyToField(Object obj, Field field, Node node) throws RepositoryException, IllegalAccessException, IOException {
+    void mapProtectedPropertyToField(Object obj, Field field, NodeSnapshot snapshot) throws RepositoryException, IllegalAccessException, IOException {
         String name = getProtectedPropertyName(field);
 
         if (typeHandler.isMap(field.getType())) {
             // map of properties
-            mapPropertiesToMap(name, field, obj, node, null, false);
+            mapPropertiesToMap(name, field, obj, snapshot, null, false);
         } else {
-            mapToField(name, field, obj, node, null);
+            mapToField(name, field, obj, snapshot, null);
         }
     }
 
-    void mapToField(String propertyName, Field field, Object obj, Node node, Class<? extends Converter<?, ?>> converterClass) throws RepositoryException, IllegalAccessException, IOException {
-        if (node.hasProperty(propertyName)) {
-            Property p = node.getProperty(propertyName);
+    void mapToField(String propertyName, Field field, Object obj, NodeSnapshot snapshot, Class<? extends Converter<?, ?>> converterClass) throws RepositoryException, IllegalAccessException, IOException {
+        Property p = snapshot.getProperty(propertyName);
+        if (p != null) {
 
             Class<?> type = field.getType();
             Type genericType = field.getGenericType();
@@ -224,25 +241,69 @@ class PropertyMapper {
                 fieldValue = typeHandler.getValue(type, genericType, p.getValue(), currentValue);
             }
 
-            if (converterClass != null) {
-                try {
-                    Converter converter = converterClass.newInstance();
-                    fieldValue = converter.convertToEntityAttribute(fieldValue);
-                } catch (InstantiationException e) {
-                    throw new IllegalAccessException("Could not instantiate the Converter object from the field '" + field.getName() + "'");
-                }
-            }
+            typeHandler.setObject(field, obj, convertToEntityAttribute(field, converterClass, fieldValue));
+        }
+    }
+
+    /**
+     * Creates a proxy loading the binary or serialized property supplied on first access.
+     */
+    private Object createPropertyProxy(Field field, Class<?> type, Object obj, Node node, String propertyName, boolean serialized) throws RepositoryException {
+        return ProxyFactory.createPropertyProxy(type, obj, node.getIdentifier(), node.getPath(), propertyName, serialized, node.getSession(), mapper, field);
+    }
+
+    /**
+     * CGLIB can proxy interfaces and non-final classes.
+     */
+    private static boolean isProxyable(Class<?> type) {
+        return !type.isArray() && !type.isPrimitive() && !Modifier.isFinal(type.getModifiers());
+    }
+
+    /**
+     * Maps a single value, read from a query row for instance, to the field supplied.
+     */
+    void mapValueToField(Field field, Object obj, Value value) throws RepositoryException, IllegalAccessException, IOException {
+        Class<? extends Converter<?, ?>> converterClass = getPropertyConverter(field);
+        Class<?> type = field.getType();
+        Type genericType = field.getGenericType();
+        if (converterClass != null) {
+            type = ReflectionUtils.getParameterizedClass(converterClass.getGenericInterfaces()[0], 1);
+            genericType = ReflectionUtils.getConverterGenericType(converterClass, 1);
+        }
 
-            typeHandler.setObject(field, obj, fieldValue);
+        Object currentValue = typeHandler.getObject(field, obj);
+        Object fieldValue;
+        if (isListOrArray(type)) {
+            fieldValue = typeHandler.getValues(type, genericType, new Value[] { value }, currentValue);
+        } else {
+            fieldValue = typeHandler.getValue(type, genericType, value, currentValue);
+        }
+        typeHandler.setObject(field, obj, convertToEntityAttribute(field, converterClass, fieldValue));
+    }
+
+    private Object convertToEntityAttribute(Field field, Class<? extends Converter<?, ?>> converterClass, Object fieldValue) throws IllegalAccessException {
+        if (converterClass != null) {
+            try {
+                Converter converter = converterClass.newInstance();
+                return converter.convertToEntityAttribute(fieldValue);
+            } catch (InstantiationException e) {
+                throw new IllegalAccessException("Could not instantiate the Converter object from the field '" + field.getName() + "'");
+            }
         }
+        return fieldValue;
     }
 
     private void mapSerializedFieldToProperty(Field field, Object obj, Node node, int depth, NodeFilter nodeFilter) throws IllegalAccessException, RepositoryException, IOException {
 
         String propertyName = getSerializedPropertyName(field);
+        // a lazy loaded value is serialized without its proxy
         Object fieldValue = typeHandler.getObject(field, obj);
+        if (fieldValue != null) {
+            fieldValue = mapper.clearCglib(fieldValue);
+        }
         // make sure that this property is supposed to be updated
         if (nodeFilter == null || nodeFilter.isIncluded(NodeFilter.PROPERTY_PREFIX + field.getName(), node, depth)) {
+            mapper.checkout(node);
             if (fieldValue != null) {
                 // serialize and store
                 //node.setProperty(propertyName, new ByteArrayInputStream(serialize(fieldValue)));
@@ -267,6 +328,7 @@ class PropertyMapper {
     private void addChildMap(String nodeName, Class<?> paramClass, Map<String, Object> map, Node node, Mapper mapper) throws RepositoryException, IllegalAccessException {
 
         boolean nullOrEmpty = map == null || map.isEmpty();
+        mapper.checkout(node);
         // remove the child node
         NodeIterator nodeIterator = node.getNodes(nodeName);
         while (nodeIterator.hasNext()) {
@@ -328,6 +390,8 @@ class PropertyMapper {
         ValueFactory valueFactory = node.getSession().getValueFactory();
 
         boolean isMultiple = typeHandler.isList(type) || (type.isArray() && type.getComponentType() != byte.class);
+        // when tracking checkouts, unchanged properties are not rewritten, so that their node is not checked out for nothing
+        boolean skipUnchanged = mapper.isCheckoutTracking();
 
         // make sure that the field value is not null
         if (propertyValue != null) {
@@ -335,12 +399,18 @@ class PropertyMapper {
                 // only if there is something to remove... otherwise exception is thrown because nothing to remove
                 Value[] value = typeHandler.createValues(type, paramClass, propertyValue, valueFactory);
                 if(value != null || (value == null && node.hasProperty(propertyName))) {
-                    node.setProperty(propertyName, value);
+                    if (!skipUnchanged || !isUnchanged(node, propertyName, value)) {
+                        mapper.checkout(node);
+                        node.setProperty(propertyName, value);
+                    }
                 }
             } else {
                 Value value = typeHandler.createValue(type, propertyValue, valueFactory);
                 if (value != null) {
-                    node.setProperty(propertyName, value);
+                    if (!skipUnchanged || !isUnchanged(node, propertyName, value)) {
+                        mapper.checkout(node);
+                        node.setProperty(propertyName, value);
+                    }
                 }
             }
         } else {
@@ -348,14 +418,49 @@ class PropertyMapper {
             if (isMultiple) {
                 // only if there is something to remove... otherwise exception is thrown because nothing to remove
                 if(node.hasProperty(propertyName)) {
+                    mapper.checkout(node);
                     node.setProperty(propertyName, (Value[]) null);
                 }
-            } else {
+            } else if (!skipUnchanged || node.hasProperty(propertyName)) {
+                mapper.checkout(node);
                 node.setProperty(propertyName, (Value) null);
             }
         }
     }
 
+    static boolean isUnchanged(Node node, String propertyName, Value value) throws RepositoryException {
+        if (!node.hasProperty(propertyName)) {
+            return false;
+        }
+        Property property = node.getProperty(propertyName);
+        return !property.isMultiple() && isEqual(property.getValue(), value);
+    }
+
+    static boolean isUnchanged(Node node, String propertyName, Value[] values) throws RepositoryException {
+        if (values == null || !node.hasProperty(propertyName)) {
+            return false;
+        }
+        Property property = node.getProperty(propertyName);
+        if (!property.isMultiple()) {
+            return false;
+        }
+        Value[] currentValues = property.getValues();
+        if (currentValues.length != values.length) {
+            return false;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (!isEqual(currentValues[i], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEqual(Value currentValue, Value value) throws RepositoryException {
+        // binary values are never compared
+        return currentValue.getType() == value.getType() && value.getType() != PropertyType.BINARY && currentValue.getString().equals(value.getString());
+    }
+
     /**
      * Serialize an object to a byte array.
      * 
@@ -385,7 +490,7 @@ class PropertyMapper {
      * @return
      * @throws java.lang.Exception
      */
-    private Object deserialize(InputStream byteStream) throws IOException, ClassNotFoundException {
+    Object deserialize(InputStream byteStream) throws IOException, ClassNotFoundException {
         // Deserialize from a byte array
         ObjectInputStream in = new ObjectInputStream(byteStream);
         try {
@@ -18,11 +18,16 @@
 package org.jcrom;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.jcr.Session;
 
 import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
+import net.sf.cglib.proxy.LazyLoader;
 
 import org.jcrom.annotations.JcrChildNode;
 import org.jcrom.annotations.JcrFileNode;
@@ -30,45 +35,125 @@ import org.jcrom.util.NodeFilter;
 
 /**
  * Creates CGLIB proxies for lazy loading.
+ * <p>
+ * One proxy class is generated per proxied type, and new proxies are instantiated through the {@link Factory}
+ * interface of a prototype instance, so that CGLIB does not have to look up its class cache on each call. The
+ * prototypes are kept by the {@link Mapper}, so that they do not outlive the Jcrom instance. Lazy lists are instances
+ * of a plain {@link List} implementation.
  *
  * @author Olafur Gauti Gudmundsson
  * @author Nicolas Dos Santos
  */
 public final class ProxyFactory {
 
+    private static final Logger logger = Logger.getLogger(ProxyFactory.class.getName());
+
+    /**
+     * Callback of the prototype instances, which are never used as proxies.
+     */
+    private static final LazyLoader PROTOTYPE_LOADER = new LazyLoader() {
+        @Override
+        public Object loadObject() {
+            throw new IllegalStateException("Prototype proxies cannot be loaded");
+        }
+    };
+
     private ProxyFactory() {
     }
 
+    /**
+     * Generates the proxy class of the class or interface supplied, unless it has already been generated.
+     * Types that cannot be proxied are ignored.
+     * 
+     * @param c the class or interface to proxy
+     * @param mapper the mapper keeping the proxy classes
+     * @since 2.2.1
+     */
+    public static void prepareProxyClass(Class<?> c, Mapper mapper) {
+        if (mapper.getProxyPrototypes().containsKey(c) || !isProxyable(c)) {
+            return;
+        }
+        try {
+            getPrototype(c, mapper);
+        } catch (RuntimeException e) {
+            // e.g. no default constructor: a proxy will only be required if the type is used by a lazy field,
+            // in which case the error is reported when the field is mapped
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Could not generate the proxy class of " + c.getName() + ": " + e);
+            }
+        }
+    }
+
+    private static boolean isProxyable(Class<?> c) {
+        return !c.isPrimitive() && !c.isArray() && !Modifier.isFinal(c.getModifiers());
+    }
+
     @SuppressWarnings("unchecked")
-    public static <T> T createChildNodeProxy(Class<T> c, Object parentObj, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, boolean pathIsContainer) {
-        ChildNodeLoader childNodeLoader = new ChildNodeLoader(c, parentObj, containerPath, session, mapper, depth, nodeFilter, pathIsContainer);
-        return (T) Enhancer.create(c, childNodeLoader);
+    public static <T> T createChildNodeProxy(Class<T> c, Object parentObj, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, boolean pathIsContainer, Field field) {
+        ChildNodeLoader childNodeLoader = new ChildNodeLoader(c, parentObj, containerPath, session, mapper, depth, nodeFilter, pathIsContainer, field);
+        return (T) createProxy(c, childNodeLoader, mapper);
     }
 
-    public static List<?> createChildNodeListProxy(Class<?> c, Object parentObj, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode) {
-        ChildNodeListLoader childNodeListLoader = new ChildNodeListLoader(c, parentObj, containerPath, session, mapper, depth, nodeFilter, jcrChildNode);
-        return (List<?>) Enhancer.create(List.class, childNodeListLoader);
+    public static List<?> createChildNodeListProxy(Class<?> c, Object parentObj, String containerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrChildNode jcrChildNode, Field field) {
+        ChildNodeListLoader childNodeListLoader = new ChildNodeListLoader(c, parentObj, containerPath, session, mapper, depth, nodeFilter, jcrChildNode, field);
+        return new LazyList<Object>(childNodeListLoader);
     }
 
     @SuppressWarnings("unchecked")
-    public static <T> T createFileNodeProxy(Class<T> c, Object obj, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode) {
-        FileNodeLoader fileNodeLoader = new FileNodeLoader(c, obj, fileContainerPath, session, mapper, depth, nodeFilter, jcrFileNode);
-        return (T) Enhancer.create(c, fileNodeLoader);
+    public static <T> T createFileNodeProxy(Class<T> c, Object obj, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode, Field field) {
+        FileNodeLoader fileNodeLoader = new FileNodeLoader(c, obj, fileContainerPath, session, mapper, depth, nodeFilter, jcrFileNode, field);
+        return (T) createProxy(c, fileNodeLoader, mapper);
     }
 
-    public static List<?> createFileNodeListProxy(Class<?> c, Object obj, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode) {
-        FileNodeListLoader fileNodeListLoader = new FileNodeListLoader(c, obj, fileContainerPath, session, mapper, depth, nodeFilter, jcrFileNode);
-        return (List<?>) Enhancer.create(List.class, fileNodeListLoader);
+    public static List<?> createFileNodeListProxy(Class<?> c, Object obj, String fileContainerPath, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, JcrFileNode jcrFileNode, Field field) {
+        FileNodeListLoader fileNodeListLoader = new FileNodeListLoader(c, obj, fileContainerPath, session, mapper, depth, nodeFilter, jcrFileNode, field);
+        return new LazyList<Object>(fileNodeListLoader);
     }
 
     @SuppressWarnings("unchecked")
     public static <T> T createReferenceProxy(Class<T> c, Object parentObject, String nodePath, String propertyName, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, Field field) {
         ReferenceLoader refLoader = new ReferenceLoader(c, parentObject, nodePath, propertyName, session, mapper, depth, nodeFilter, field);
-        return (T) Enhancer.create(c, refLoader);
+        return (T) createProxy(c, refLoader, mapper);
     }
 
     public static List<?> createReferenceListProxy(Class<?> c, Object parentObject, String nodePath, String propertyName, Session session, Mapper mapper, int depth, NodeFilter nodeFilter, Field field) {
         ReferenceListLoader refListLoader = new ReferenceListLoader(c, parentObject, nodePath, propertyName, session, mapper, depth, nodeFilter, field);
-        return (List<?>) Enhancer.create(List.class, refListLoader);
+        return new LazyList<Object>(refListLoader);
+    }
+
+    /**
+     * @since 2.2.1
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T createPropertyProxy(Class<T> c, Object parentObject, String nodeId, String nodePath, String propertyName, boolean serialized, Session session, Mapper mapper, Field field) {
+        PropertyLoader propertyLoader = new PropertyLoader(parentObject, nodeId, nodePath, propertyName, serialized, session, mapper, field);
+        return (T) createProxy(c, propertyLoader, mapper);
+    }
+
+    /**
+     * Creates a proxy of the class or interface supplied, implementing {@link LazyProxy}.
+     */
+    private static Object createProxy(Class<?> c, LazyLoader lazyLoader, Mapper mapper) {
+        return getPrototype(c, mapper).newInstance(lazyLoader);
+    }
+
+    private static Factory getPrototype(Class<?> c, Mapper mapper) {
+        Factory prototype = mapper.getProxyPrototypes().get(c);
+        if (prototype == null) {
+            Enhancer enhancer = new Enhancer();
+            if (c.isInterface()) {
+                enhancer.setInterfaces(new Class<?>[] { c, LazyProxy.class });
+            } else {
+                enhancer.setSuperclass(c);
+                enhancer.setInterfaces(new Class<?>[] { LazyProxy.class });
+            }
+            enhancer.setCallback(PROTOTYPE_LOADER);
+            prototype = (Factory) enhancer.create();
+            Factory existing = mapper.getProxyPrototypes().putIfAbsent(c, prototype);
+            if (existing != null) {
+                prototype = existing;
+            }
+        }
+        return prototype;
     }
 }
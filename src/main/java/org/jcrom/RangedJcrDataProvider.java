@@ -0,0 +1,55 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link JcrDataProvider} able to read part of its content without reading the bytes before it, e.g. to serve HTTP
+ * range requests. Callers check whether a provider implements this interface before using it.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public interface RangedJcrDataProvider extends JcrDataProvider {
+
+    /**
+     * Reads a sequence of bytes of the content, starting at the position supplied, without reading the bytes before it.
+     * The bytes are transferred into the buffer from its current position, up to its limit.
+     * 
+     * @param buffer the buffer into which the bytes are transferred
+     * @param position the position in the content of the first byte to read
+     * @return the number of bytes read, possibly less than the bytes remaining in the buffer, or -1 if the position is
+     *         at or after the end of the content
+     * @throws IOException if an I/O error occurs
+     * @throws UnsupportedOperationException if the content is a stream that is not persisted
+     */
+    int read(ByteBuffer buffer, long position) throws IOException;
+
+    /**
+     * Opens a stream on a range of the content, without reading the bytes before it.
+     * 
+     * @param offset the position in the content of the first byte of the range
+     * @param length the maximum number of bytes of the range, or -1 to read up to the end of the content
+     * @return a stream on the range, which must be closed by the caller
+     * @throws IOException if an I/O error occurs
+     */
+    InputStream openRange(long offset, long length) throws IOException;
+}
@@ -64,4 +64,19 @@ class ReferenceListLoader extends AbstractLazyLoader {
         Node node = PathUtils.getNode(nodePath, session);
         return mapper.getReferenceMapper().getReferenceList(field, propertyName, objClass, node, parentObject, depth, nodeFilter, mapper);
     }
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return nodePath + "/" + propertyName;
+    }
 }
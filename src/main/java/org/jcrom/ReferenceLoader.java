@@ -64,4 +64,19 @@ class ReferenceLoader extends AbstractLazyLoader {
         Node node = PathUtils.getNode(nodePath, session);
         return mapper.getReferenceMapper().createReferencedObject(field, node.getProperty(propertyName).getValue(), parentObject, session, objClass, depth, nodeFilter, mapper);
     }
+
+    @Override
+    protected Object getParentObject() {
+        return parentObject;
+    }
+
+    @Override
+    protected String getFieldName() {
+        return field.getName();
+    }
+
+    @Override
+    protected String getLoadedPath() {
+        return nodePath + "/" + propertyName;
+    }
 }
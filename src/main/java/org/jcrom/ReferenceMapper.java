@@ -20,17 +20,25 @@ package org.jcrom;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.NamespaceRegistry;
 import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.query.RowIterator;
 
 import org.jcrom.annotations.JcrFileNode;
 import org.jcrom.annotations.JcrReference;
@@ -47,6 +55,11 @@ import org.jcrom.util.ReflectionUtils;
  */
 class ReferenceMapper {
 
+    /**
+     * Maximum number of identifiers checked by one existence query.
+     */
+    private static final int EXISTENCE_CHECK_BATCH_SIZE = 100;
+
     private final Mapper mapper;
 
     private final TypeHandler typeHandler;
@@ -56,7 +69,7 @@ class ReferenceMapper {
         this.typeHandler = mapper.getTypeHandler();
     }
 
-    private String getPropertyName(Field field) {
+    String getPropertyName(Field field) {
         JcrReference jcrReference = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrReference.class);
         String name = field.getName();
         if (!jcrReference.name().equals(Mapper.DEFAULT_FIELDNAME)) {
@@ -67,34 +80,81 @@ class ReferenceMapper {
 
     private List<Value> getReferenceValues(List<?> references, Session session, JcrReference jcrReference) throws IllegalAccessException, RepositoryException {
         List<Value> refValues = new ArrayList<Value>();
-        for (Object reference : references) {
-            if (jcrReference.byPath()) {
+        if (jcrReference.byPath()) {
+            for (Object reference : references) {
                 String referencePath = mapper.getNodePath(reference);
                 if (referencePath != null && !referencePath.equals("")) {
-                    if (session.getRootNode().hasNode(PathUtils.relativePath(referencePath))) {
+                    if (PathUtils.nodeExists(referencePath, session)) {
                         refValues.add(session.getValueFactory().createValue(referencePath));
                     }
                 }
-            } else {
+            }
+        } else {
+            List<String> referenceIds = new ArrayList<String>(references.size());
+            for (Object reference : references) {
                 String referenceId = mapper.getNodeId(reference);
                 if (referenceId != null && !referenceId.equals("")) {
-                    //Node referencedNode = session.getNodeByUUID(referenceUUID);
-                    Node referencedNode = PathUtils.getNodeById(referenceId, session);
-                    Value value;
-                    if (jcrReference.weak()) {
-                        value = session.getValueFactory().createValue(referencedNode, true);
-                    } else {
-                        value = session.getValueFactory().createValue(referencedNode);
-                    }
-                    refValues.add(value);
+                    referenceIds.add(referenceId);
                 }
             }
+            if (jcrReference.validate()) {
+                checkReferencedNodesExist(referenceIds, session);
+            }
+            ValueFactory valueFactory = session.getValueFactory();
+            for (String referenceId : referenceIds) {
+                refValues.add(createReferenceValue(referenceId, jcrReference, valueFactory));
+            }
         }
         return refValues;
     }
 
+    /**
+     * Creates a reference value from the identifier of the referenced node, without loading it.
+     */
+    private static Value createReferenceValue(String referenceId, JcrReference jcrReference, ValueFactory valueFactory) throws RepositoryException {
+        return valueFactory.createValue(referenceId, jcrReference.weak() ? PropertyType.WEAKREFERENCE : PropertyType.REFERENCE);
+    }
+
+    /**
+     * Checks that the nodes with the identifiers supplied exist. The identifiers are looked up by batches with a query,
+     * and those not found (e.g. nodes not saved yet, which are not visible to queries) are then loaded one by one.
+     * 
+     * @throws javax.jcr.ItemNotFoundException if one of the nodes does not exist
+     */
+    private static void checkReferencedNodesExist(List<String> referenceIds, Session session) throws RepositoryException {
+        Set<String> missingIds = new HashSet<String>(referenceIds);
+        if (missingIds.size() > 1) {
+            QueryManager queryManager = session.getWorkspace().getQueryManager();
+            List<String> ids = new ArrayList<String>(missingIds);
+            for (int i = 0; i < ids.size(); i += EXISTENCE_CHECK_BATCH_SIZE) {
+                List<String> batch = ids.subList(i, Math.min(i + EXISTENCE_CHECK_BATCH_SIZE, ids.size()));
+                StringBuilder statement = new StringBuilder("SELECT n.[jcr:uuid] AS [jcr:uuid] FROM [mix:referenceable] AS n WHERE ");
+                for (int j = 0; j < batch.size(); j++) {
+                    if (j > 0) {
+                        statement.append(" OR ");
+                    }
+                    statement.append("n.[jcr:uuid] = $p").append(j);
+                }
+                Query query = queryManager.createQuery(statement.toString(), Query.JCR_SQL2);
+                for (int j = 0; j < batch.size(); j++) {
+                    query.bindValue("p" + j, session.getValueFactory().createValue(batch.get(j)));
+                }
+                RowIterator rows = query.execute().getRows();
+                while (rows.hasNext()) {
+                    Value uuid = rows.nextRow().getValue("jcr:uuid");
+                    if (uuid != null) {
+                        missingIds.remove(uuid.getString());
+                    }
+                }
+            }
+        }
+        for (String referenceId : missingIds) {
+            PathUtils.getNodeById(referenceId, session);
+        }
+    }
+
     private void addSingleReferenceToNode(Field field, Object obj, String propertyName, Node node) throws IllegalAccessException, RepositoryException {
-        // extract the Identifier from the object, load the node, and add a reference to it
+        // extract the Identifier from the object, and add a reference to it
         JcrReference jcrReference = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrReference.class);
         Object referenceObject = typeHandler.getObject(field, obj);
         if (referenceObject != null) {
@@ -105,6 +165,7 @@ class ReferenceMapper {
             mapSingleReference(jcrReference, referenceObject, node, propertyName);
         } else {
             // remove the reference
+            mapper.checkout(node);
             node.setProperty(propertyName, (Value) null);
         }
     }
@@ -114,6 +175,7 @@ class ReferenceMapper {
         JcrReference jcrReference = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrReference.class);
         List<?> references = (List<?>) field.get(obj);
         if (node.hasProperty(propertyName) && !node.getProperty(propertyName).getDefinition().isMultiple()) {
+            mapper.checkout(node);
             node.setProperty(propertyName, (Value) null);
             //node.save();
             node.getSession().save();
@@ -121,77 +183,141 @@ class ReferenceMapper {
         if (references != null && !references.isEmpty()) {
             List<Value> refValues = getReferenceValues(references, node.getSession(), jcrReference);
             if (!refValues.isEmpty()) {
-                node.setProperty(propertyName, refValues.toArray(new Value[refValues.size()]));
+                Value[] values = refValues.toArray(new Value[refValues.size()]);
+                // unchanged references are not rewritten
+                if (!PropertyMapper.isUnchanged(node, propertyName, values)) {
+                    mapper.checkout(node);
+                    node.setProperty(propertyName, values);
+                }
             } else if (node.hasProperty(propertyName)) {
+                mapper.checkout(node);
                 node.setProperty(propertyName, (Value[]) null);
             }
         } else if (node.hasProperty(propertyName)) {
+            mapper.checkout(node);
             node.setProperty(propertyName, (Value[]) null);
         }
     }
 
     private void mapSingleReference(JcrReference jcrReference, Object referenceObject, Node containerNode, String propertyName) throws IllegalAccessException, RepositoryException {
+        Value value = getSingleReferenceValue(jcrReference, referenceObject, containerNode.getSession());
+        if (value != null) {
+            setReferenceProperty(containerNode, propertyName, value);
+        } else if (!jcrReference.byPath()) {
+            // remove the reference
+            mapper.checkout(containerNode);
+            containerNode.setProperty(propertyName, (Value) null);
+        }
+    }
 
+    /**
+     * Creates the value of a reference to the object supplied, or returns null if the object has no identifier, or no
+     * existing path when referenced by path.
+     */
+    private Value getSingleReferenceValue(JcrReference jcrReference, Object referenceObject, Session session) throws IllegalAccessException, RepositoryException {
         if (jcrReference.byPath()) {
             String referencePath = mapper.getNodePath(referenceObject);
-            if (referencePath != null && !referencePath.equals("")) {
-                if (containerNode.getSession().getRootNode().hasNode(PathUtils.relativePath(referencePath))) {
-                    containerNode.setProperty(propertyName, containerNode.getSession().getValueFactory().createValue(referencePath));
-                }
+            if (referencePath != null && !referencePath.equals("") && PathUtils.nodeExists(referencePath, session)) {
+                return session.getValueFactory().createValue(referencePath);
             }
         } else {
             String referenceId = mapper.getNodeId(referenceObject);
             if (referenceId != null && !referenceId.equals("")) {
-                //Node referencedNode = containerNode.getSession().getNodeByUUID(referenceUUID);
-                Node referencedNode = PathUtils.getNodeById(referenceId, containerNode.getSession());
-                if (jcrReference.weak()) {
-                    containerNode.setProperty(propertyName, containerNode.getSession().getValueFactory().createValue(referencedNode, true));
-                } else {
-                    containerNode.setProperty(propertyName, referencedNode);
+                if (jcrReference.validate()) {
+                    checkReferencedNodesExist(Collections.singletonList(referenceId), session);
                 }
-            } else {
-                // remove the reference
-                containerNode.setProperty(propertyName, (Value) null);
+                return createReferenceValue(referenceId, jcrReference, session.getValueFactory());
             }
         }
+        return null;
+    }
+
+    private void setReferenceProperty(Node containerNode, String propertyName, Value value) throws RepositoryException {
+        // unchanged references are not rewritten
+        if (!PropertyMapper.isUnchanged(containerNode, propertyName, value)) {
+            mapper.checkout(containerNode);
+            containerNode.setProperty(propertyName, value);
+        }
     }
 
     /**
      * Maps a Map<String,Object> or Map<String,List<Object>> to a JCR Node.
+     * The existing reference container is updated in place: only the changed keys are written, and the properties of
+     * the keys no longer in the map are removed.
      */
     private void addMapOfReferencesToNode(Field field, Object obj, String containerName, Node node) throws IllegalAccessException, RepositoryException {
 
         JcrReference jcrReference = mapper.getJcrom().getAnnotationReader().getAnnotation(field, JcrReference.class);
 
-        // remove previous references if they exist
+        // create a reference container, unless it already exists
+        Node referenceContainer;
         if (node.hasNode(containerName)) {
-            node.getNode(containerName).remove();
+            referenceContainer = node.getNode(containerName);
+        } else {
+            mapper.checkout(node);
+            referenceContainer = node.addNode(containerName);
         }
-
-        // create a reference container
-        Node referenceContainer = node.addNode(containerName);
+        Session session = referenceContainer.getSession();
 
         // map the references as properties on the container node
         Map<?, ?> referenceMap = (Map<?, ?>) field.get(obj);
+        Set<String> keys = new HashSet<String>();
         if (referenceMap != null && !referenceMap.isEmpty()) {
             Class<?> paramClass = ReflectionUtils.getParameterizedClass(field.getGenericType(), 1);
+            boolean multiple = typeHandler.isList(paramClass);
             for (Map.Entry<?, ?> entry : referenceMap.entrySet()) {
                 String key = (String) entry.getKey();
-                if (typeHandler.isList(paramClass)) {
+                if (multiple) {
                     List<?> references = (List<?>) entry.getValue();
-                    List<Value> refValues = getReferenceValues(references, referenceContainer.getSession(), jcrReference);
+                    List<Value> refValues = references != null ? getReferenceValues(references, session, jcrReference) : null;
                     if (refValues != null && !refValues.isEmpty()) {
-                        referenceContainer.setProperty(key, refValues.toArray(new Value[refValues.size()]));
+                        Value[] values = refValues.toArray(new Value[refValues.size()]);
+                        if (!PropertyMapper.isUnchanged(referenceContainer, key, values)) {
+                            prepareReferenceProperty(referenceContainer, key, true);
+                            referenceContainer.setProperty(key, values);
+                        }
+                        keys.add(key);
                     }
-
                 } else {
                     Object referenceObject = entry.getValue();
-                    if (referenceObject != null) {
-                    	mapSingleReference(jcrReference, referenceObject, referenceContainer, key);
+                    Value value = referenceObject != null ? getSingleReferenceValue(jcrReference, mapper.clearCglib(referenceObject), session) : null;
+                    if (value != null) {
+                        if (!PropertyMapper.isUnchanged(referenceContainer, key, value)) {
+                            prepareReferenceProperty(referenceContainer, key, false);
+                            referenceContainer.setProperty(key, value);
+                        }
+                        keys.add(key);
                     }
                 }
             }
         }
+
+        // remove the references of the keys no longer in the map
+        List<String> removedKeys = new ArrayList<String>();
+        PropertyIterator propertyIterator = referenceContainer.getProperties();
+        while (propertyIterator.hasNext()) {
+            Property property = propertyIterator.nextProperty();
+            if (!property.getDefinition().isProtected() && !keys.contains(property.getName())) {
+                removedKeys.add(property.getName());
+            }
+        }
+        if (!removedKeys.isEmpty()) {
+            mapper.checkout(referenceContainer);
+            for (String key : removedKeys) {
+                referenceContainer.getProperty(key).remove();
+            }
+        }
+    }
+
+    /**
+     * Checks out a reference container before setting one of its properties, removing the existing property if it does
+     * not have the cardinality required.
+     */
+    private void prepareReferenceProperty(Node referenceContainer, String key, boolean multiple) throws RepositoryException {
+        mapper.checkout(referenceContainer);
+        if (referenceContainer.hasProperty(key) && referenceContainer.getProperty(key).isMultiple() != multiple) {
+            referenceContainer.getProperty(key).remove();
+        }
     }
 
     private void setReferenceProperties(Field field, Object obj, Node node, NodeFilter nodeFilter) throws IllegalAccessException, RepositoryException {
@@ -0,0 +1,167 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+
+import org.jcrom.util.io.FileUtils;
+import org.jcrom.util.io.IOUtils;
+
+/**
+ * A JcrDataProvider holding a content spooled to a temporary file, so that large contents are neither loaded in
+ * memory nor tied to the session they were read from.
+ * <p>
+ * The temporary file is deleted when the provider is closed, or else when it is garbage collected. The content can
+ * also be mapped in memory read-only, see {@link #getByteBuffer()}. The file is owned by this instance only: a
+ * serialized provider is written as a {@link JcrDataProviderImpl} holding the content in a byte array.
+ * </p>
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class TempFileDataProvider extends JcrDataProviderImpl implements Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = Logger.getLogger(TempFileDataProvider.class.getName());
+
+    private transient MappedByteBuffer byteBuffer;
+
+    private volatile boolean closed;
+
+    public TempFileDataProvider(File file) {
+        super(file);
+    }
+
+    /**
+     * Spools a binary to a new temporary file.
+     * 
+     * @param binary the binary to spool, disposed once spooled
+     * @param mapped whether to map the temporary file in memory
+     * @return a provider of the temporary file
+     */
+    static TempFileDataProvider spool(Binary binary, boolean mapped) throws RepositoryException, IOException {
+        File file = File.createTempFile("jcrom", ".tmp");
+        try {
+            InputStream in = binary.getStream();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                IOUtils.copyLarge(in, out);
+            } finally {
+                IOUtils.closeQuietly(in);
+                out.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        } catch (RepositoryException e) {
+            file.delete();
+            throw e;
+        } finally {
+            binary.dispose();
+        }
+        TempFileDataProvider dataProvider = new TempFileDataProvider(file);
+        if (mapped) {
+            dataProvider.getByteBuffer();
+        }
+        return dataProvider;
+    }
+
+    /**
+     * Returns the content mapped in memory read-only. The file is mapped on first call.
+     * 
+     * @return a new read-only buffer on the mapped content
+     * @throws IOException if the file cannot be mapped, e.g. because it is larger than 2 GB
+     */
+    public synchronized ByteBuffer getByteBuffer() throws IOException {
+        if (closed) {
+            throw new IOException("The temporary file " + getFile() + " has been deleted");
+        }
+        if (byteBuffer == null) {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(getFile(), "r");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                // the mapping remains valid after the channel is closed
+                byteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+        return byteBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Deletes the temporary file. The memory mapping, if any, is released when the buffers are garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            byteBuffer = null;
+            if (!getFile().delete() && getFile().exists()) {
+                logger.warning("Could not delete the temporary file " + getFile());
+            } else if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Deleted the temporary file " + getFile());
+            }
+        }
+    }
+
+    /**
+     * Replaces this provider by a provider of the content bytes, so that a deserialized copy neither reads nor deletes
+     * the temporary file of this instance.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("The temporary file " + getFile() + " has been deleted");
+                }
+                return new JcrDataProviderImpl(FileUtils.readFileToByteArray(getFile()));
+            }
+        } catch (IOException e) {
+            InvalidObjectException ex = new InvalidObjectException("Could not serialize the content of " + getFile());
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            close();
+        } finally {
+            super.finalize();
+        }
+    }
+}
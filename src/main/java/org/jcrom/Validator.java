@@ -236,6 +236,10 @@ class Validator {
                 } else {
                 	fieldType = type;
                 }
+
+                if (field.getAnnotation(JcrChildNode.class).bucketing() != JcrChildNode.Bucketing.NONE && !typeHandler.isList(type)) {
+                    throw new JcrMappingException("In [" + c.getName() + "]: Field [" + field.getName() + "] which is annotated as @JcrChildNode with bucketing is not a java.util.List.");
+                }
                 
                 if (fieldType != null) {
                     // validate the class
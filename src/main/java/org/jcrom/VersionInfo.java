@@ -0,0 +1,118 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Value;
+
+/**
+ * Lightweight description of a version of an entity, read from the version history without mapping the frozen node.
+ * The entity itself can be loaded on demand with {@link org.jcrom.dao.JcrDAO#getVersion(String, String)}.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class VersionInfo {
+
+    private final String name;
+    private final Calendar created;
+    private final String[] labels;
+    private final List<String> predecessors;
+    private final List<String> successors;
+    private final boolean baseVersion;
+    private final String frozenNodeId;
+    private final Map<String, Value[]> frozenProperties;
+
+    public VersionInfo(String name, Calendar created, String[] labels, List<String> predecessors, List<String> successors, boolean baseVersion, String frozenNodeId, Map<String, Value[]> frozenProperties) {
+        this.name = name;
+        this.created = created;
+        this.labels = labels;
+        this.predecessors = Collections.unmodifiableList(predecessors);
+        this.successors = Collections.unmodifiableList(successors);
+        this.baseVersion = baseVersion;
+        this.frozenNodeId = frozenNodeId;
+        this.frozenProperties = Collections.unmodifiableMap(frozenProperties);
+    }
+
+    /**
+     * @return the version name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the date when the version was created
+     */
+    public Calendar getCreated() {
+        return created;
+    }
+
+    /**
+     * @return the labels of the version
+     */
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * @return the names of the direct predecessors of the version
+     */
+    public List<String> getPredecessors() {
+        return predecessors;
+    }
+
+    /**
+     * @return the names of the direct successors of the version
+     */
+    public List<String> getSuccessors() {
+        return successors;
+    }
+
+    /**
+     * @return true if this version is the base version of the versionable node
+     */
+    public boolean isBaseVersion() {
+        return baseVersion;
+    }
+
+    /**
+     * @return the identifier of the frozen node of the version
+     */
+    public String getFrozenNodeId() {
+        return frozenNodeId;
+    }
+
+    /**
+     * Returns the frozen properties requested when listing the versions. Single-valued properties are returned as an array with one element.
+     * 
+     * @return the requested frozen properties, by property name
+     */
+    public Map<String, Value[]> getFrozenProperties() {
+        return frozenProperties;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionInfo [name=" + name + ", created=" + (created != null ? created.getTime() : null) + ", baseVersion=" + baseVersion + "]";
+    }
+}
@@ -45,6 +45,28 @@ import javax.jcr.nodetype.NodeType;
 @Target(ElementType.FIELD)
 public @interface JcrChildNode {
 
+    /**
+     * Layouts of the children of a List, stored either directly in the container node, or in intermediate bucket
+     * nodes.
+     * 
+     * @since 2.2.1
+     */
+    public enum Bucketing {
+
+        /**
+         * The children are stored directly in the container node.
+         */
+        NONE,
+        /**
+         * The children are stored in 256 buckets named after the hash code of their name, from "00" to "ff".
+         */
+        HASH,
+        /**
+         * The children are stored in buckets named after the date they are added, as "yyyy/MM/dd".
+         */
+        DATE
+    }
+
     /**
      * The name of the JCR container node for the child/children.
      * Defaults to the name of the field being annotated.
@@ -103,4 +125,16 @@ public @interface JcrChildNode {
      * @since 1.4
      */
     Class<? extends Map> mapContainerClass() default HashMap.class;
+
+    /**
+     * Layout of the children of a List. Defaults to Bucketing.NONE, which stores the children directly in the container
+     * node. Bucketing.HASH and Bucketing.DATE store them in intermediate bucket nodes, which keeps very large lists
+     * from growing a flat container node. A bucketed list is loaded in the order of its buckets, and existing flat
+     * containers must be migrated with {@link org.jcrom.Jcrom#bucketChildNodes(javax.jcr.Node, Class, String)}.
+     * This does not apply to single children or Maps of child nodes.
+     * 
+     * @return the layout of the children
+     * @since 2.2.1
+     */
+    Bucketing bucketing() default Bucketing.NONE;
 }
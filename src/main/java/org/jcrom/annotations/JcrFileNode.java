@@ -46,7 +46,20 @@ public @interface JcrFileNode {
     public enum LoadType {
 
         STREAM,
-        BYTES
+        BYTES,
+        /**
+         * The content is spooled once to a temporary file, exposed by a {@link org.jcrom.TempFileDataProvider}.
+         * 
+         * @since 2.2.1
+         */
+        TEMP_FILE,
+        /**
+         * The content is spooled once to a temporary file, which is mapped in memory read-only and exposed by
+         * {@link org.jcrom.TempFileDataProvider#getByteBuffer()}.
+         * 
+         * @since 2.2.1
+         */
+        MMAP
     }
 
     /**
@@ -61,12 +74,22 @@ public @interface JcrFileNode {
     /**
      * Determines how to read the file when JCROM maps a JCR node to an object.
      * Defaults to LoadType.STREAM, but can also be set to LoadType.BYTES (in
-     * which case the content will be read into a byte array).
+     * which case the content will be read into a byte array), LoadType.TEMP_FILE
+     * or LoadType.MMAP (in which case the content will be spooled to a temporary file).
      *
      * @return a value determining how to load the File from JCR
      */
     LoadType loadType() default LoadType.STREAM;
 
+    /**
+     * Size in bytes above which a content loaded with LoadType.BYTES is spooled to a temporary file instead, as with
+     * LoadType.TEMP_FILE. Defaults to -1, which never spools the content.
+     * 
+     * @return the maximum size of the contents loaded in memory
+     * @since 2.2.1
+     */
+    long spillThreshold() default -1;
+
     /**
      * Setting this to true will turn on lazy loading for this field.
      * The default is false.
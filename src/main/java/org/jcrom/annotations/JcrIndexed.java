@@ -0,0 +1,43 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to mark @JcrProperty fields that are indexed in memory by a {@link org.jcrom.JcrIndex},
+ * to look entities up by value without going through the query engine.
+ * It can be applied to single-valued fields without converter.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface JcrIndexed {
+
+    /**
+     * Setting this to true will also keep the values sorted, to allow range scans. The default is false.
+     * 
+     * @return whether to keep the indexed values sorted
+     */
+    boolean sorted() default false;
+}
@@ -52,4 +52,15 @@ public @interface JcrProperty {
      */
     Class<? extends Converter<?, ?>> converter() default DefaultConverter.class;
 
+    /**
+     * Setting this to true will turn on lazy loading for this field: the value is read from the repository
+     * on first access, through a proxy. Applies to InputStream fields without converter, and is ignored
+     * for the other types, in particular byte[] that cannot be proxied.
+     * The default is false.
+     * 
+     * @return whether to apply lazy loading to this field
+     * @since 2.2.1
+     */
+    boolean lazy() default false;
+
 }
@@ -60,4 +60,15 @@ public @interface JcrReference {
      * @return whether to force this field to use a weak reference
      */
     boolean weak() default false;
+
+    /**
+     * Setting this to true will check that the referenced nodes exist before writing references by identifier, failing
+     * with an ItemNotFoundException otherwise. The default is false: the reference values are created from the
+     * identifiers without loading the referenced nodes, and the repository enforces the integrity of non-weak
+     * references when the session is saved.
+     * 
+     * @return whether to check the existence of the referenced nodes
+     * @since 2.2.1
+     */
+    boolean validate() default false;
 }
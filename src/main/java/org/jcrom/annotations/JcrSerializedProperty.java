@@ -41,4 +41,14 @@ public @interface JcrSerializedProperty {
      */
     String name() default "fieldName";
 
+    /**
+     * Setting this to true will turn on lazy loading for this field: the value is deserialized on first access,
+     * through a proxy of the field type. Ignored when the field type cannot be proxied (final classes and arrays).
+     * The default is false.
+     * 
+     * @return whether to apply lazy loading to this field
+     * @since 2.2.1
+     */
+    boolean lazy() default false;
+
 }
@@ -113,8 +113,11 @@ public class DefaultJcromCallback implements JcromCallback {
      */
     @Override
     public void doUpdateClassNameToProperty(Node node, JcrNode jcrNode, Object entity) throws JcrMappingException, RepositoryException {
-        // map the class name to a property
-        node.setProperty(jcrNode.classNameProperty(), entity.getClass().getCanonicalName());
+        // map the class name to a property, unless it is unchanged: the node may not be checked out
+        String className = entity.getClass().getCanonicalName();
+        if (!node.hasProperty(jcrNode.classNameProperty()) || !node.getProperty(jcrNode.classNameProperty()).getString().equals(className)) {
+            node.setProperty(jcrNode.classNameProperty(), className);
+        }
     }
 
     /**
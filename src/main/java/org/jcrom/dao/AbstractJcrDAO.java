@@ -19,16 +19,31 @@ package org.jcrom.dao;
 
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryManager;
 import javax.jcr.query.QueryResult;
+import javax.jcr.query.RowIterator;
 import javax.jcr.query.qom.Column;
 import javax.jcr.query.qom.Constraint;
 import javax.jcr.query.qom.Ordering;
@@ -37,12 +52,16 @@ import javax.jcr.query.qom.Source;
 import javax.jcr.version.Version;
 import javax.jcr.version.VersionHistory;
 import javax.jcr.version.VersionIterator;
+import javax.jcr.version.VersionManager;
 
 import org.jcrom.JcrMappingException;
+import org.jcrom.JcrQuery;
 import org.jcrom.Jcrom;
+import org.jcrom.VersionInfo;
 import org.jcrom.annotations.JcrNode;
 import org.jcrom.callback.JcromCallback;
 import org.jcrom.util.JcrUtils;
+import org.jcrom.util.NodeCache;
 import org.jcrom.util.NodeFilter;
 import org.jcrom.util.PathUtils;
 import org.jcrom.util.ReflectionUtils;
@@ -68,12 +87,21 @@ import org.jcrom.util.ReflectionUtils;
  */
 public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
 
+    private static final Logger logger = Logger.getLogger(AbstractJcrDAO.class.getName());
+
+    /**
+     * The number of nodes removed between two saves by {@link #removeAll(Collection)} and {@link #removeAll(JcrQuery)}.
+     */
+    protected static final int REMOVE_CHUNK_SIZE = 1000;
+
     protected final Jcrom jcrom;
     protected final Session session;
     protected final Class<T> entityClass;
     protected final String[] mixinTypes;
     protected final boolean isVersionable;
 
+    private volatile RemovalProgressListener removalProgressListener;
+
     /**
      * <p>
      * Use this constructor when you intend to override the getSession()
@@ -165,6 +193,25 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         return mixinTypes;
     }
 
+    /**
+     * @return the listener notified after each save of a chunked removal, or null
+     * @since 2.2.1
+     */
+    public RemovalProgressListener getRemovalProgressListener() {
+        return removalProgressListener;
+    }
+
+    /**
+     * Sets the listener notified after each save of {@link #removeAll(Collection)}, {@link #removeAll(JcrQuery)} and
+     * {@link #removeSubtree(String, int)}. Pass <code>null</code> to remove it (default).
+     * 
+     * @param removalProgressListener the listener, or <code>null</code>
+     * @since 2.2.1
+     */
+    public void setRemovalProgressListener(RemovalProgressListener removalProgressListener) {
+        this.removalProgressListener = removalProgressListener;
+    }
+
     private boolean checkIfVersionable() {
         // check mixin type array
         for (String mixinType : getMixinTypes()) {
@@ -185,8 +232,7 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
     }
 
     protected Node getNodeById(String id) throws RepositoryException {
-        // return getSession().getNodeByUUID(uuid);
-        return getSession().getNodeByIdentifier(id);
+        return PathUtils.getNodeById(id, getSession());
     }
 
     protected Node getNode(String absolutePath) throws RepositoryException {
@@ -353,14 +399,19 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
     protected T update(Node node, T entity, NodeFilter nodeFilter, JcromCallback action) {
         try {
             if (isVersionable) {
-                //node.checkout();
-                JcrUtils.checkoutRecursively(node);
-            }
-            Node updatedNode = getJcrom().updateNode(node, entity, nodeFilter, action);
-            updatedNode.getSession().save();
-            if (isVersionable) {
-                //node.checkin();
-                JcrUtils.checkinRecursively(updatedNode);
+                // versionable nodes are checked out by the mapper just before being modified,
+                // then only the modified ones are checked in
+                List<Node> modifiedNodes = new ArrayList<Node>();
+                Node updatedNode = getJcrom().updateNode(node, entity, nodeFilter, action, modifiedNodes);
+                updatedNode.getSession().save();
+                for (Node modifiedNode : modifiedNodes) {
+                    if (modifiedNode.isCheckedOut()) {
+                        JcrUtils.checkin(modifiedNode);
+                    }
+                }
+            } else {
+                Node updatedNode = getJcrom().updateNode(node, entity, nodeFilter, action);
+                updatedNode.getSession().save();
             }
             return entity;
         } catch (RepositoryException e) {
@@ -392,6 +443,7 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
             }
 
             Session session = getSession();
+            NodeCache.invalidate();
             if (newParentPath.equals("/")) {
                 // special case, moving to root
                 session.move(sourcePath, newParentPath + entityName);
@@ -430,6 +482,7 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
 
             Node node = getNode(path);
             node.remove();
+            NodeCache.invalidate();
             node.getSession().save();
 
             if (isVersionable) {
@@ -465,6 +518,7 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
             }
 
             node.remove();
+            NodeCache.invalidate();
             node.getSession().save();
 
             if (isVersionable) {
@@ -479,10 +533,61 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
     }
 
+    @Override
+    public long removeAll(JcrQuery<T> query) {
+        return removeAll(query.listIds());
+    }
+
+    @Override
+    public long removeAll(Collection<String> ids) {
+        // the cached nodes are about to be removed
+        NodeCache.invalidate();
+        try {
+            Session session = getSession();
+            ChunkedRemoval removal = new ChunkedRemoval(session, REMOVE_CHUNK_SIZE, removalProgressListener);
+            for (String id : ids) {
+                Node node;
+                try {
+                    node = session.getNodeByIdentifier(id);
+                } catch (ItemNotFoundException e) {
+                    // already removed, with one of its ancestors
+                    continue;
+                }
+                removal.removeSubtree(node);
+            }
+            return removal.finish();
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not remove nodes", e);
+        } finally {
+            NodeCache.invalidate();
+        }
+    }
+
+    @Override
+    public long removeSubtree(String path, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive");
+        }
+        NodeCache.invalidate();
+        try {
+            Session session = getSession();
+            if (!PathUtils.nodeExists(path, session)) {
+                return 0;
+            }
+            ChunkedRemoval removal = new ChunkedRemoval(session, chunkSize, removalProgressListener);
+            removal.removeSubtree(PathUtils.getNode(path, session));
+            return removal.finish();
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not remove subtree", e);
+        } finally {
+            NodeCache.invalidate();
+        }
+    }
+
     @Override
     public boolean exists(String path) {
         try {
-            return getSession().getRootNode().hasNode(PathUtils.relativePath(path));
+            return PathUtils.nodeExists(path, getSession());
         } catch (RepositoryException e) {
             throw new JcrMappingException("Could not check if node exists", e);
         }
@@ -701,6 +806,7 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
             JcrUtils.checkout(node);
             //node.restore(versionName, removeExisting);
             JcrUtils.getVersionManager(node.getSession()).restore(node.getPath(), versionName, removeExisting);
+            NodeCache.invalidate();
         } catch (RepositoryException e) {
             throw new JcrMappingException("Could not restore version", e);
         }
@@ -882,14 +988,15 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
             VersionHistory versionHistory = JcrUtils.getVersionManager(node.getSession()).getVersionHistory(node.getPath());
             VersionIterator versionIterator = versionHistory.getAllVersions();
             versionIterator.skip(1);
+            Version baseVersion = JcrUtils.getVersionManager(node.getSession()).getBaseVersion(node.getPath());
+            String baseVersionName = baseVersion.getName();
+            Calendar baseVersionCreated = baseVersion.getCreated();
             while (versionIterator.hasNext()) {
                 Version version = versionIterator.nextVersion();
                 NodeIterator nodeIterator = version.getNodes();
                 while (nodeIterator.hasNext()) {
                     T entityVersion = getJcrom().fromNode(getEntityClass(), nodeIterator.nextNode(), nodeFilter);
-                    //Version baseVersion = node.getBaseVersion();
-                    Version baseVersion = JcrUtils.getVersionManager(node.getSession()).getBaseVersion(node.getPath());
-                    getJcrom().setBaseVersionInfo(entityVersion, baseVersion.getName(), baseVersion.getCreated());
+                    getJcrom().setBaseVersionInfo(entityVersion, baseVersionName, baseVersionCreated);
                     versionList.add(entityVersion);
                 }
             }
@@ -925,6 +1032,85 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
     }
 
+    @Override
+    public List<VersionInfo> getVersionInfoList(String path) {
+        return getVersionInfoList(path, null, 0, -1);
+    }
+
+    @Override
+    public List<VersionInfo> getVersionInfoList(String path, String[] propertyNames, long startIndex, long resultSize) {
+        try {
+            return getVersionInfoList(getNode(path), propertyNames, startIndex, resultSize);
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not get version info list", e);
+        }
+    }
+
+    @Override
+    public List<VersionInfo> getVersionInfoListById(String id) {
+        return getVersionInfoListById(id, null, 0, -1);
+    }
+
+    @Override
+    public List<VersionInfo> getVersionInfoListById(String id, String[] propertyNames, long startIndex, long resultSize) {
+        try {
+            Node node = getNodeById(id);
+            return getVersionInfoList(node, propertyNames, startIndex, resultSize);
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not get version info list", e);
+        }
+    }
+
+    /**
+     * Reads the version history of the node supplied without mapping the frozen nodes.
+     * The base version is retrieved once, and only the requested frozen properties are read.
+     * 
+     * @param node the versionable node
+     * @param propertyNames the names (or name globs) of the frozen properties to read, or null to read none
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return, or a negative value to return all
+     * @return a list of version descriptions
+     */
+    protected List<VersionInfo> getVersionInfoList(Node node, String[] propertyNames, long startIndex, long resultSize) {
+        try {
+            List<VersionInfo> versionInfoList = new ArrayList<VersionInfo>();
+            VersionManager versionManager = JcrUtils.getVersionManager(node.getSession());
+            VersionHistory versionHistory = versionManager.getVersionHistory(node.getPath());
+            String baseVersionName = versionManager.getBaseVersion(node.getPath()).getName();
+            VersionIterator versionIterator = versionHistory.getAllVersions();
+            versionIterator.skip(1 + startIndex);
+
+            long counter = 0;
+            while (versionIterator.hasNext() && counter != resultSize) {
+                Version version = versionIterator.nextVersion();
+                Node frozenNode = version.getFrozenNode();
+
+                Map<String, Value[]> frozenProperties = new HashMap<String, Value[]>();
+                if (propertyNames != null && propertyNames.length > 0) {
+                    PropertyIterator propertyIterator = frozenNode.getProperties(propertyNames);
+                    while (propertyIterator.hasNext()) {
+                        Property property = propertyIterator.nextProperty();
+                        frozenProperties.put(property.getName(), property.isMultiple() ? property.getValues() : new Value[] { property.getValue() });
+                    }
+                }
+
+                versionInfoList.add(new VersionInfo(version.getName(), version.getCreated(), versionHistory.getVersionLabels(version), getVersionNames(version.getPredecessors()), getVersionNames(version.getSuccessors()), version.getName().equals(baseVersionName), frozenNode.getIdentifier(), frozenProperties));
+                counter++;
+            }
+            return versionInfoList;
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not get version info list", e);
+        }
+    }
+
+    private static List<String> getVersionNames(Version[] versions) throws RepositoryException {
+        List<String> names = new ArrayList<String>(versions.length);
+        for (Version version : versions) {
+            names.add(version.getName());
+        }
+        return names;
+    }
+
     @Override
     public long getSize(String rootPath) {
         try {
@@ -977,6 +1163,31 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
     }
 
+    @Override
+    public JcrQuery<T> query() {
+        return new JcrQuery<T>(getJcrom(), getSession(), getEntityClass());
+    }
+
+    @Override
+    public List<T> findAllAfter(String rootPath, String lastName, NodeFilter nodeFilter, long resultSize) {
+        try {
+            // keyset pagination: the repository seeks past the last name instead of counting the skipped nodes
+            String sql = "SELECT * FROM [nt:base] AS n WHERE ISCHILDNODE(n, " + PathUtils.toQueryPath(getNode(rootPath).getPath()) + ")";
+            if (lastName != null) {
+                sql += " AND NAME(n) > $lastName";
+            }
+            sql += " ORDER BY NAME(n)";
+            Query query = getSession().getWorkspace().getQueryManager().createQuery(sql, Query.JCR_SQL2);
+            if (lastName != null) {
+                query.bindValue("lastName", getSession().getValueFactory().createValue(lastName, PropertyType.NAME));
+            }
+            setBounds(query, 0, resultSize);
+            return toList(query.execute().getNodes(), nodeFilter, resultSize);
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not find nodes", e);
+        }
+    }
+
     /**
      * Find JCR nodes that match the xpath supplied, and map to objects.
      * 
@@ -990,10 +1201,9 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         try {
             QueryManager queryManager = getSession().getWorkspace().getQueryManager();
             Query query = queryManager.createQuery(xpath, Query.XPATH);
+            setBounds(query, startIndex, resultSize);
             QueryResult result = query.execute();
-            NodeIterator nodeIterator = result.getNodes();
-            nodeIterator.skip(startIndex);
-            return toList(nodeIterator, nodeFilter, resultSize);
+            return toList(result.getNodes(), nodeFilter, resultSize);
         } catch (RepositoryException e) {
             throw new JcrMappingException("Could not find nodes by XPath", e);
         }
@@ -1030,10 +1240,9 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         try {
             QueryManager queryManager = getSession().getWorkspace().getQueryManager();
             Query query = queryManager.createQuery(sql, Query.JCR_SQL2);
+            setBounds(query, startIndex, resultSize);
             QueryResult result = query.execute();
-            NodeIterator nodeIterator = result.getNodes();
-            nodeIterator.skip(startIndex);
-            return toList(nodeIterator, nodeFilter, resultSize);
+            return toList(result.getNodes(), nodeFilter, resultSize);
         } catch (RepositoryException e) {
             throw new JcrMappingException("Could not find nodes by SQL", e);
         }
@@ -1057,6 +1266,34 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
     }
 
+    /**
+     * Find the rows that match the SQL supplied, and map each row to an instance of a projection class, without loading the nodes.
+     * The columns of the query must be named after the properties mapped by the projection class, for example
+     * <code>SELECT n.[title] AS [title] FROM [nt:unstructured] AS n</code>. See {@link Jcrom#fromRow(Class, javax.jcr.query.Row)}.
+     * 
+     * @param projectionClass a class declaring a subset of the @JcrProperty fields of the entity class
+     * @param sql the SQL for finding the rows
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return, or a negative value to return all
+     * @return a list of objects mapped from the rows
+     * @since 2.2.1
+     */
+    protected <P> List<P> findProjectionBySql(Class<P> projectionClass, String sql, long startIndex, long resultSize) {
+        try {
+            QueryManager queryManager = getSession().getWorkspace().getQueryManager();
+            Query query = queryManager.createQuery(sql, Query.JCR_SQL2);
+            setBounds(query, startIndex, resultSize);
+            List<P> objects = new ArrayList<P>();
+            RowIterator rowIterator = query.execute().getRows();
+            while (rowIterator.hasNext()) {
+                objects.add(getJcrom().fromRow(projectionClass, rowIterator.nextRow()));
+            }
+            return objects;
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not find rows by SQL", e);
+        }
+    }
+
     /**
      * Find JCR nodes with one or more selectors, and map to objects.
      * 
@@ -1078,6 +1315,49 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
     }
 
+    /**
+     * Find JCR nodes with one or more selectors, and map to objects.
+     * The offset and the limit of the result are executed by the repository.
+     * 
+     * @param source the node-tuple source; non-null
+     * @param constraint the constraint, or null if none
+     * @param orderings zero or more orderings; null is equivalent to a zero-length array
+     * @param columns  the columns; null is equivalent to a zero-length array
+     * @param nodeFilter the NodeFilter to apply when updating child nodes and references
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return
+     * @return a list of objects mapped from the nodes
+     * @since 2.2.1
+     */
+    protected List<T> findByQOM(Source source, Constraint constraint, Ordering orderings[], Column columns[], NodeFilter nodeFilter, long startIndex, long resultSize) {
+        try {
+            QueryObjectModelFactory factory = getSession().getWorkspace().getQueryManager().getQOMFactory();
+            Query query = factory.createQuery(source, constraint, orderings, columns);
+            setBounds(query, startIndex, resultSize);
+            QueryResult result = query.execute();
+            return toList(result.getNodes(), nodeFilter, resultSize);
+        } catch (RepositoryException e) {
+            throw new JcrMappingException("Could not find nodes by QOM", e);
+        }
+    }
+
+    /**
+     * Lets the repository skip the first results and stop after the result size, instead of iterating over them.
+     * 
+     * @param query the query to bound
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return, or a negative value to return all
+     * @throws RepositoryException
+     */
+    protected static void setBounds(Query query, long startIndex, long resultSize) throws RepositoryException {
+        if (startIndex > 0) {
+            query.setOffset(startIndex);
+        }
+        if (resultSize >= 0) {
+            query.setLimit(resultSize);
+        }
+    }
+
     /**
      * Maps JCR nodes to a List of JcrEntity implementations.
      * 
@@ -1113,4 +1393,92 @@ public abstract class AbstractJcrDAO<T> implements JcrDAO<T> {
         }
         return objects;
     }
+
+    /**
+     * Removes subtrees bottom-up, saving the session every chunkSize nodes. The versionable nodes preventing a removal
+     * are checked out once per batch, and checked in when the batch is saved. The listener, if any, is notified after
+     * each save.
+     */
+    private static final class ChunkedRemoval {
+
+        private final Session session;
+        private final int chunkSize;
+        private final RemovalProgressListener listener;
+        private final Map<String, Node> checkedOutNodes = new LinkedHashMap<String, Node>();
+        private final Set<String> checkedParentPaths = new HashSet<String>();
+        private int pending;
+        private long removed;
+
+        ChunkedRemoval(Session session, int chunkSize, RemovalProgressListener listener) {
+            this.session = session;
+            this.chunkSize = chunkSize;
+            this.listener = listener;
+        }
+
+        void removeSubtree(Node node) throws RepositoryException {
+            // remove the descendants first, loading at most chunkSize children at a time
+            List<Node> children;
+            do {
+                children = new ArrayList<Node>();
+                NodeIterator nodeIterator = node.getNodes();
+                while (nodeIterator.hasNext() && children.size() < chunkSize) {
+                    Node child = nodeIterator.nextNode();
+                    // protected child nodes are removed with their parent
+                    if (!child.getDefinition().isProtected()) {
+                        children.add(child);
+                    }
+                }
+                for (Node child : children) {
+                    removeSubtree(child);
+                }
+            } while (children.size() == chunkSize);
+            removeNode(node);
+        }
+
+        private void removeNode(Node node) throws RepositoryException {
+            Node parent = node.getParent();
+            if (checkedParentPaths.add(parent.getPath()) && !parent.isCheckedOut()) {
+                // the parent, or its nearest versionable ancestor, is checked in
+                Node versionable = parent;
+                while (!versionable.isNodeType(NodeType.MIX_VERSIONABLE) && versionable.getDepth() > 0) {
+                    versionable = versionable.getParent();
+                }
+                if (!checkedOutNodes.containsKey(versionable.getPath())) {
+                    JcrUtils.checkout(versionable);
+                    checkedOutNodes.put(versionable.getPath(), versionable);
+                }
+            }
+            node.remove();
+            removed++;
+            if (++pending >= chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws RepositoryException {
+            session.save();
+            for (Map.Entry<String, Node> checkedOutNode : checkedOutNodes.entrySet()) {
+                // the node may have been removed in this batch
+                if (session.nodeExists(checkedOutNode.getKey())) {
+                    JcrUtils.checkin(checkedOutNode.getValue());
+                }
+            }
+            checkedOutNodes.clear();
+            checkedParentPaths.clear();
+            pending = 0;
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Removed " + removed + " nodes");
+            }
+            if (listener != null) {
+                listener.chunkRemoved(removed);
+            }
+        }
+
+        long finish() throws RepositoryException {
+            if (pending > 0) {
+                flush();
+            }
+            return removed;
+        }
+    }
 }
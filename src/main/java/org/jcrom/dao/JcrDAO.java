@@ -17,10 +17,13 @@
  */
 package org.jcrom.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.jcr.Node;
 
+import org.jcrom.JcrQuery;
+import org.jcrom.VersionInfo;
 import org.jcrom.annotations.JcrNode;
 import org.jcrom.callback.JcromCallback;
 import org.jcrom.util.NodeFilter;
@@ -285,6 +288,41 @@ public interface JcrDAO<T> {
      */
     void removeById(String id);
 
+    /**
+     * Permanently remove the entities found by the query supplied, with their descendants.
+     * The nodes are removed bottom-up, and the session is saved every 1000 nodes.
+     * Handles checkout and checkin for mix:versionable parents, once per batch.
+     * 
+     * @param query the query finding the entities to remove
+     * @return the number of nodes removed, descendants included
+     * @since 2.2.1
+     */
+    long removeAll(JcrQuery<T> query);
+
+    /**
+     * Permanently remove the entities with the Identifiers supplied, with their descendants.
+     * The nodes are removed bottom-up, and the session is saved every 1000 nodes.
+     * Handles checkout and checkin for mix:versionable parents, once per batch.
+     * 
+     * @param ids the Identifiers of the entities
+     * @return the number of nodes removed, descendants included
+     * @since 2.2.1
+     */
+    long removeAll(Collection<String> ids);
+
+    /**
+     * Permanently remove the node with the path supplied and all its descendants.
+     * The nodes are removed bottom-up, and the session is saved every chunkSize nodes, so that the transient changes
+     * stay bounded however large the subtree is.
+     * Handles checkout and checkin for mix:versionable parents, once per batch.
+     * 
+     * @param path the full path of the root of the subtree
+     * @param chunkSize the number of nodes removed between two saves
+     * @return the number of nodes removed
+     * @since 2.2.1
+     */
+    long removeSubtree(String path, int chunkSize);
+
     /**
      * Check whether an entity with the path supplied exists in JCR.
      * 
@@ -486,7 +524,7 @@ public interface JcrDAO<T> {
      * @param path the full path of the entity to be loaded
      * @param nodeFilter the NodeFilter to apply when loading child nodes and references
      * @param startIndex the zero based index of the first item to return
-     * @param resultSize the number of items to return
+     * @param resultSize the number of items to return, or a negative value to return all
      * @return a list of object instances mapped from the JCR nodes with the path supplied, or null if no such node was found
      * @since 2.1.0
      */
@@ -547,12 +585,56 @@ public interface JcrDAO<T> {
      * @param id the Identifier generated by JCR
      * @param nodeFilter the NodeFilter to apply when loading child nodes and references
      * @param startIndex the zero based index of the first item to return
-     * @param resultSize the number of items to return
+     * @param resultSize the number of items to return, or a negative value to return all
      * @return a list of object instances mapped from the JCR nodes with the id supplied, or null if no such node was found
      * @since 2.1.0
      */
     List<T> getVersionListById(String id, NodeFilter nodeFilter, long startIndex, long resultSize);
 
+    /**
+     * Get a lightweight description of all versions by path, without mapping the frozen nodes to entities.
+     * 
+     * @param path the full path of the versionable entity
+     * @return a list of version descriptions, ordered from the oldest to the most recent version
+     * @since 2.2.1
+     */
+    List<VersionInfo> getVersionInfoList(String path);
+
+    /**
+     * Get a lightweight description of versions by path, without mapping the frozen nodes to entities.
+     * Takes parameters that control the size and offset of the result, and the frozen properties to read.
+     * 
+     * @param path the full path of the versionable entity
+     * @param propertyNames the names (or name globs) of the frozen properties to read for each version, or null to read none
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return, or a negative value to return all
+     * @return a list of version descriptions, ordered from the oldest to the most recent version
+     * @since 2.2.1
+     */
+    List<VersionInfo> getVersionInfoList(String path, String[] propertyNames, long startIndex, long resultSize);
+
+    /**
+     * Get a lightweight description of all versions by Identifier lookup, without mapping the frozen nodes to entities.
+     * 
+     * @param id the Identifier generated by JCR
+     * @return a list of version descriptions, ordered from the oldest to the most recent version
+     * @since 2.2.1
+     */
+    List<VersionInfo> getVersionInfoListById(String id);
+
+    /**
+     * Get a lightweight description of versions by Identifier lookup, without mapping the frozen nodes to entities.
+     * Takes parameters that control the size and offset of the result, and the frozen properties to read.
+     * 
+     * @param id the Identifier generated by JCR
+     * @param propertyNames the names (or name globs) of the frozen properties to read for each version, or null to read none
+     * @param startIndex the zero based index of the first item to return
+     * @param resultSize the number of items to return, or a negative value to return all
+     * @return a list of version descriptions, ordered from the oldest to the most recent version
+     * @since 2.2.1
+     */
+    List<VersionInfo> getVersionInfoListById(String id, String[] propertyNames, long startIndex, long resultSize);
+
     /**
      * Get the total number of versions by path.
      * 
@@ -792,4 +874,26 @@ public interface JcrDAO<T> {
      */
     List<T> findAll(String rootPath, NodeFilter nodeFilter, long startIndex, long resultSize);
 
+    /**
+     * Find the entities represented by this DAO that follow the child node named lastName, ordered by node name.
+     * Unlike {@link #findAll(String, NodeFilter, long, long)}, the cost of a page does not depend on its position:
+     * the name of the last entity of a page is the continuation token of the next page.
+     * 
+     * @param rootPath root path of the found entities
+     * @param lastName the name of the last entity of the previous page, or null to get the first page
+     * @param nodeFilter the NodeFilter to apply when loading child nodes and references
+     * @param resultSize the number of items to return
+     * @return the entities following lastName, ordered by node name
+     * @since 2.2.1
+     */
+    List<T> findAllAfter(String rootPath, String lastName, NodeFilter nodeFilter, long resultSize);
+
+    /**
+     * Create a typed criteria query on the entities represented by this DAO.
+     * 
+     * @return a new query, to complete with conditions, orderings and bounds
+     * @since 2.2.1
+     */
+    JcrQuery<T> query();
+
 }
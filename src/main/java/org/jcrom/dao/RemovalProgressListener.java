@@ -0,0 +1,35 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.dao;
+
+/**
+ * Receives the progress of the chunked removals of an {@link AbstractJcrDAO}, such as
+ * {@link JcrDAO#removeSubtree(String, int)}.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public interface RemovalProgressListener {
+
+    /**
+     * Called after each save of a chunked removal.
+     * 
+     * @param removed the number of nodes removed so far by the current call, descendants included
+     */
+    void chunkRemoved(long removed);
+}
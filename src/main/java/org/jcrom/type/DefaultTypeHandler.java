@@ -30,6 +30,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jcr.Binary;
 import javax.jcr.RepositoryException;
@@ -43,11 +45,49 @@ import org.jcrom.util.io.IOUtils;
 
 /**
  * The default implementation of the interface {@link TypeHandler}.
+ * <p/>
+ * Single values are converted by the {@link ValueCodec} registered for their type, which is looked up once per type.
+ * Codecs are registered by default for String, Date, Calendar, Timestamp, int, long, double, boolean, Locale, enums,
+ * BigDecimal, UUID, URI and the java.time types, and additional codecs can be registered with
+ * {@link #registerCodec(Class, ValueCodec)}.
  * 
  * @author Nicolas Dos Santos
  */
 public class DefaultTypeHandler implements TypeHandler {
 
+    private final ConcurrentMap<Class<?>, ValueCodec<?>> codecs = new ConcurrentHashMap<Class<?>, ValueCodec<?>>(ValueCodecs.getDefaultCodecs());
+
+    /**
+     * Registers the codec used to convert the values of the given type, replacing the codec previously registered
+     * for this type, if any. Codecs must be registered before the classes using them are mapped.
+     * 
+     * @param type the type of the entity attribute values
+     * @param codec the codec
+     * @since 2.2.1
+     */
+    public <T> void registerCodec(Class<T> type, ValueCodec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Returns the codec used to convert the values of the given type.
+     * 
+     * @param type the type of the entity attribute values
+     * @return the codec, or null if the type is not converted by a codec
+     * @since 2.2.1
+     */
+    public ValueCodec<?> getCodec(Class<?> type) {
+        ValueCodec<?> codec = codecs.get(type);
+        if (codec == null && type.isEnum()) {
+            codec = ValueCodecs.createEnumCodec(type);
+            ValueCodec<?> previous = codecs.putIfAbsent(type, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+        return codec;
+    }
+
     @Override
     public Object resolveAddEntity(Object entity) {
         return entity;
@@ -69,7 +109,7 @@ public class DefaultTypeHandler implements TypeHandler {
 
     @Override
     public boolean isValidMapValueType(Class<?> type) {
-        return type == String.class || isArrayOfType(type, String.class) || type == Date.class || isArrayOfType(type, Date.class) || type == Calendar.class || isArrayOfType(type, Calendar.class) || type == Timestamp.class || isArrayOfType(type, Timestamp.class) || type == Integer.class || isArrayOfType(type, Integer.class) || type == int.class || isArrayOfType(type, int.class) || type == Long.class || isArrayOfType(type, Long.class) || type == long.class || isArrayOfType(type, long.class) || type == Double.class || isArrayOfType(type, Double.class) || type == double.class || isArrayOfType(type, double.class) || type == Boolean.class || isArrayOfType(type, Boolean.class) || type == boolean.class || isArrayOfType(type, boolean.class) || type == Locale.class || isArrayOfType(type, Locale.class) || type.isEnum() || (type.isArray() && type.getComponentType().isEnum());
+        return getCodec(type) != null || (type.isArray() && getCodec(type.getComponentType()) != null);
     }
 
     @Override
@@ -102,14 +142,9 @@ public class DefaultTypeHandler implements TypeHandler {
         Object fieldValue = null;
 
         if (value != null) {
-            if (type == String.class) {
-                fieldValue = value.getString();
-            } else if (type == Date.class) {
-                fieldValue = value.getDate().getTime();
-            } else if (type == Timestamp.class) {
-                fieldValue = new Timestamp(value.getDate().getTimeInMillis());
-            } else if (type == Calendar.class) {
-                fieldValue = value.getDate();
+            ValueCodec<?> codec = getCodec(type);
+            if (codec != null) {
+                fieldValue = codec.decode(value);
             } else if (type == InputStream.class) {
                 //fieldValue = value.getStream();
                 fieldValue = value.getBinary().getStream();
@@ -121,18 +156,6 @@ public class DefaultTypeHandler implements TypeHandler {
                 } catch (IOException e) {
                     throw new RepositoryException("Could not the Value stream to byte array: " + e.getMessage(), e);
                 }
-            } else if (type == Integer.class || type == int.class) {
-                fieldValue = (int) value.getDouble();
-            } else if (type == Long.class || type == long.class) {
-                fieldValue = value.getLong();
-            } else if (type == Double.class || type == double.class) {
-                fieldValue = value.getDouble();
-            } else if (type == Boolean.class || type == boolean.class) {
-                fieldValue = value.getBoolean();
-            } else if (type == Locale.class) {
-                fieldValue = JcrUtils.parseLocale(value.getString());
-            } else if (type.isEnum()) {
-                fieldValue = Enum.valueOf((Class<? extends Enum>) type, value.getString());
             }
         }
 
@@ -157,7 +180,7 @@ public class DefaultTypeHandler implements TypeHandler {
                 if (type.getComponentType() == int.class) {
                     int[] arr = new int[values.length];
                     for (int i = 0; i < values.length; i++) {
-                        arr[i] = (int) values[i].getDouble();
+                        arr[i] = (int) values[i].getLong();
                     }
                     fieldValue = arr;
                 } else if (type.getComponentType() == long.class) {
@@ -209,18 +232,11 @@ public class DefaultTypeHandler implements TypeHandler {
     public Value createValue(Class<?> type, Object value, ValueFactory valueFactory) throws RepositoryException {
         Value nodeValue = null;
 
-        if (type == String.class) {
-            nodeValue = valueFactory.createValue((String) value);
-        } else if (type == Date.class) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTime((Date) value);
-            nodeValue = valueFactory.createValue(cal);
-        } else if (type == Timestamp.class) {
-            Calendar cal = Calendar.getInstance();
-            cal.setTimeInMillis(((Timestamp) value).getTime());
-            nodeValue = valueFactory.createValue(cal);
-        } else if (type == Calendar.class) {
-            nodeValue = valueFactory.createValue((Calendar) value);
+        // registerCodec pairs each codec with its type, and the value supplied is of the type supplied
+        @SuppressWarnings("unchecked")
+        ValueCodec<Object> codec = (ValueCodec<Object>) getCodec(type);
+        if (codec != null) {
+            nodeValue = codec.encode(value, valueFactory);
         } else if (type == InputStream.class) {
             //nodeValue = valueFactory.createValue((InputStream) fieldValue);
             Binary binary = valueFactory.createBinary((InputStream) value);
@@ -229,18 +245,6 @@ public class DefaultTypeHandler implements TypeHandler {
             //nodeValue = valueFactory.createValue(new ByteArrayInputStream((byte[]) fieldValue));
             Binary binary = valueFactory.createBinary(new ByteArrayInputStream((byte[]) value));
             nodeValue = valueFactory.createValue(binary);
-        } else if (type == Integer.class || type == int.class) {
-            nodeValue = valueFactory.createValue((Integer) value);
-        } else if (type == Long.class || type == long.class) {
-            nodeValue = valueFactory.createValue((Long) value);
-        } else if (type == Double.class || type == double.class) {
-            nodeValue = valueFactory.createValue((Double) value);
-        } else if (type == Boolean.class || type == boolean.class) {
-            nodeValue = valueFactory.createValue((Boolean) value);
-        } else if (type == Locale.class) {
-            nodeValue = valueFactory.createValue(((Locale) value).toString());
-        } else if (type.isEnum()) {
-            nodeValue = valueFactory.createValue(((Enum<?>) value).name());
         }
 
         return nodeValue;
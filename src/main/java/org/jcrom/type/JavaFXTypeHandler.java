@@ -17,17 +17,19 @@
  */
 package org.jcrom.type;
 
-import static org.jcrom.util.ReflectionUtils.getMethod;
-
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -50,11 +52,31 @@ import org.jcrom.util.ReflectionUtils;
 
 /**
  * Implementation of {@link TypeHandler} to handle JavaFX types.
+ * <p/>
+ * The accessors of the property fields are looked up once per class. The updates that must be done in the
+ * JavaFX thread are queued and applied by a single <code>Platform.runLater</code> call, so that mapping an
+ * entity graph does not schedule one runnable per property. A property updated again before the queue is
+ * applied only receives its last value.
  * 
  * @author Nicolas Dos Santos
  */
 public class JavaFXTypeHandler extends DefaultTypeHandler {
 
+    /**
+     * Accessor methods by class, name and parameter types. A null method records a missing accessor.
+     */
+    private static final ConcurrentMap<MethodKey, MethodHolder> methods = new ConcurrentHashMap<MethodKey, MethodHolder>();
+
+    /**
+     * Updates waiting to be applied in the JavaFX thread.
+     */
+    private static final JavaFXUpdateQueue pendingUpdates = new JavaFXUpdateQueue(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Platform.runLater(command);
+        }
+    });
+
     @Override
     public Object resolveAddEntity(Object entity) {
         if (Property.class.isAssignableFrom(entity.getClass())) {
@@ -122,7 +144,7 @@ public class JavaFXTypeHandler extends DefaultTypeHandler {
         } else if (StringProperty.class.isAssignableFrom(type)) {
             fieldValue = value.getString();
         } else if (IntegerProperty.class.isAssignableFrom(type)) {
-            fieldValue = (int) value.getDouble();
+            fieldValue = (int) value.getLong();
         } else if (LongProperty.class.isAssignableFrom(type)) {
             fieldValue = value.getLong();
         } else if (DoubleProperty.class.isAssignableFrom(type)) {
@@ -300,6 +322,28 @@ public class JavaFXTypeHandler extends DefaultTypeHandler {
         return name.substring(0, 1).toUpperCase() + name.substring(1);
     }
 
+    /**
+     * Returns the public method of the given class, looked up once with {@link ReflectionUtils#getMethod(Class, String, Class...)}.
+     */
+    private static Method getMethod(Class<?> type, String name, Class<?>... parametersType) throws NoSuchMethodException {
+        MethodKey key = new MethodKey(type, name, parametersType);
+        MethodHolder holder = methods.get(key);
+        if (holder == null) {
+            Method method;
+            try {
+                method = ReflectionUtils.getMethod(type, name, parametersType);
+            } catch (NoSuchMethodException e) {
+                method = null;
+            }
+            holder = new MethodHolder(method);
+            methods.putIfAbsent(key, holder);
+        }
+        if (holder.method == null) {
+            throw new NoSuchMethodException(type.getName() + "." + name);
+        }
+        return holder.method;
+    }
+
     /**
      * Invoke the setter of a property in the current thread and then in the JavaFX thread.
      * Actually, if a visible node of the JavaFX scene graph is bound to the property, it
@@ -309,7 +353,7 @@ public class JavaFXTypeHandler extends DefaultTypeHandler {
         try {
             setter.invoke(obj, value);
         } catch (RuntimeException e) {
-            Platform.runLater(new Runnable() {
+            pendingUpdates.add(obj, setter, new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -342,7 +386,7 @@ public class JavaFXTypeHandler extends DefaultTypeHandler {
         try {
             finalProperty.setValue(value);
         } catch (RuntimeException e) {
-            Platform.runLater(new Runnable() {
+            pendingUpdates.add(finalProperty, null, new Runnable() {
                 @Override
                 public void run() {
                     finalProperty.setValue(value);
@@ -379,4 +423,40 @@ public class JavaFXTypeHandler extends DefaultTypeHandler {
             }
         }
     }
+
+    private static final class MethodKey {
+
+        private final Class<?> type;
+        private final String name;
+        private final Class<?>[] parametersType;
+
+        private MethodKey(Class<?> type, String name, Class<?>[] parametersType) {
+            this.type = type;
+            this.name = name;
+            this.parametersType = parametersType;
+        }
+
+        @Override
+        public int hashCode() {
+            return (type.hashCode() * 31 + name.hashCode()) * 31 + Arrays.hashCode(parametersType);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) obj;
+            return type == other.type && name.equals(other.name) && Arrays.equals(parametersType, other.parametersType);
+        }
+    }
+
+    private static final class MethodHolder {
+
+        private final Method method;
+
+        private MethodHolder(Method method) {
+            this.method = method;
+        }
+    }
 }
@@ -0,0 +1,122 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.type;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Updates waiting to be applied in the JavaFX thread. An update replaces the one queued for the same target, so that
+ * only the last value is applied when a property is updated several times before the queue is run. The queued
+ * updates are applied in order by a single task, which is only scheduled when none is pending.
+ * 
+ * @author Nicolas Dos Santos
+ */
+final class JavaFXUpdateQueue {
+
+    private final Executor executor;
+
+    private final Map<UpdateKey, Runnable> pendingUpdates = new LinkedHashMap<UpdateKey, Runnable>();
+
+    private boolean scheduled;
+
+    /**
+     * @param executor the executor running the queue in the JavaFX thread
+     */
+    JavaFXUpdateQueue(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues an update.
+     * 
+     * @param target the object updated, compared by identity
+     * @param member the setter invoked on the target, or null if the target is a property
+     * @param update the update
+     */
+    void add(Object target, Object member, Runnable update) {
+        boolean schedule;
+        synchronized (pendingUpdates) {
+            UpdateKey key = new UpdateKey(target, member);
+            // moved to the end, so that the updates are applied in the order of their last value
+            pendingUpdates.remove(key);
+            pendingUpdates.put(key, update);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        applyPendingUpdates();
+                    }
+                });
+            } catch (RuntimeException e) {
+                synchronized (pendingUpdates) {
+                    scheduled = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void applyPendingUpdates() {
+        List<Runnable> updates;
+        synchronized (pendingUpdates) {
+            updates = new ArrayList<Runnable>(pendingUpdates.values());
+            pendingUpdates.clear();
+            scheduled = false;
+        }
+        for (Runnable update : updates) {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static final class UpdateKey {
+
+        private final Object target;
+        private final Object member;
+
+        private UpdateKey(Object target, Object member) {
+            this.target = target;
+            this.member = member;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(target) * 31 + (member != null ? member.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof UpdateKey)) {
+                return false;
+            }
+            UpdateKey other = (UpdateKey) obj;
+            return target == other.target && (member != null ? member.equals(other.member) : other.member == null);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.type;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+/**
+ * <p>
+ * Interface to implement to convert a type of entity attribute value to a JCR {@link Value} and conversely.<br/>
+ * Unlike a {@link org.jcrom.converter.Converter}, which is declared on each field, a codec is registered once for a type
+ * in the {@link DefaultTypeHandler}, and is then used by all the fields, List and array elements, and Map values of
+ * that type.
+ * </p>
+ * 
+ * <p>Example:</p>
+ * <pre>
+ * public class ColorCodec implements ValueCodec&lt;Color&gt; {
+ *
+ *   &#64;Override
+ *   public Color decode(Value value) throws RepositoryException { ... }
+ *
+ *   &#64;Override
+ *   public Value encode(Color color, ValueFactory valueFactory) throws RepositoryException { ... }
+ *
+ * }
+ * </pre>
+ * <pre>
+ * DefaultTypeHandler typeHandler = new DefaultTypeHandler();
+ * typeHandler.registerCodec(Color.class, new ColorCodec());
+ * Jcrom jcrom = new Jcrom(true, false, new HashSet&lt;Class&lt;?&gt;&gt;(), typeHandler);
+ * </pre>
+ * 
+ * @param T the type of the entity attribute
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * Converts the JCR value into the value to be stored in the entity attribute.
+     * 
+     * @param value the JCR value, never null
+     * @return the entity attribute value
+     * @throws RepositoryException
+     */
+    T decode(Value value) throws RepositoryException;
+
+    /**
+     * Converts the entity attribute value into the JCR value to be stored in the property.
+     * 
+     * @param value the entity attribute value
+     * @param valueFactory {@link ValueFactory} used to create the {@link Value}
+     * @return the JCR value
+     * @throws RepositoryException
+     */
+    Value encode(T value, ValueFactory valueFactory) throws RepositoryException;
+
+}
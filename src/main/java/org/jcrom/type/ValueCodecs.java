@@ -0,0 +1,330 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.type;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.ValueFormatException;
+
+import org.jcrom.util.JcrUtils;
+
+/**
+ * The {@link ValueCodec} implementations registered by default in the {@link DefaultTypeHandler}.
+ * 
+ * @author Nicolas Dos Santos
+ */
+final class ValueCodecs {
+
+    /**
+     * The java.time types, stored as their ISO-8601 representation. They are looked up by name, as they are only
+     * available from Java 8.
+     */
+    private static final String[] TEMPORAL_TYPES = { "java.time.Instant", "java.time.LocalDate", "java.time.LocalDateTime", "java.time.LocalTime", "java.time.OffsetDateTime", "java.time.ZonedDateTime" };
+
+    /**
+     * The calendar cloned to create date values, which is cheaper than the time zone and locale lookups of
+     * <code>Calendar.getInstance()</code>. It is replaced when the default time zone or locale changes.
+     */
+    private static volatile CalendarPrototype calendarPrototype = new CalendarPrototype(TimeZone.getDefault(), Locale.getDefault());
+
+    private static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public String decode(Value value) throws RepositoryException {
+            return value.getString();
+        }
+
+        @Override
+        public Value encode(String value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Date> DATE = new ValueCodec<Date>() {
+        @Override
+        public Date decode(Value value) throws RepositoryException {
+            return value.getDate().getTime();
+        }
+
+        @Override
+        public Value encode(Date value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(toCalendar(value.getTime()));
+        }
+    };
+
+    private static final ValueCodec<Timestamp> TIMESTAMP = new ValueCodec<Timestamp>() {
+        @Override
+        public Timestamp decode(Value value) throws RepositoryException {
+            return new Timestamp(value.getDate().getTimeInMillis());
+        }
+
+        @Override
+        public Value encode(Timestamp value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(toCalendar(value.getTime()));
+        }
+    };
+
+    private static final ValueCodec<Calendar> CALENDAR = new ValueCodec<Calendar>() {
+        @Override
+        public Calendar decode(Value value) throws RepositoryException {
+            return value.getDate();
+        }
+
+        @Override
+        public Value encode(Calendar value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+        @Override
+        public Integer decode(Value value) throws RepositoryException {
+            return (int) value.getLong();
+        }
+
+        @Override
+        public Value encode(Integer value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public Long decode(Value value) throws RepositoryException {
+            return value.getLong();
+        }
+
+        @Override
+        public Value encode(Long value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        @Override
+        public Double decode(Value value) throws RepositoryException {
+            return value.getDouble();
+        }
+
+        @Override
+        public Value encode(Double value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Boolean> BOOLEAN = new ValueCodec<Boolean>() {
+        @Override
+        public Boolean decode(Value value) throws RepositoryException {
+            return value.getBoolean();
+        }
+
+        @Override
+        public Value encode(Boolean value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<Locale> LOCALE = new ValueCodec<Locale>() {
+        @Override
+        public Locale decode(Value value) throws RepositoryException {
+            return JcrUtils.parseLocale(value.getString());
+        }
+
+        @Override
+        public Value encode(Locale value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value.toString());
+        }
+    };
+
+    private static final ValueCodec<BigDecimal> DECIMAL = new ValueCodec<BigDecimal>() {
+        @Override
+        public BigDecimal decode(Value value) throws RepositoryException {
+            return value.getDecimal();
+        }
+
+        @Override
+        public Value encode(BigDecimal value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value);
+        }
+    };
+
+    private static final ValueCodec<UUID> UUID_CODEC = new ValueCodec<UUID>() {
+        @Override
+        public UUID decode(Value value) throws RepositoryException {
+            try {
+                return UUID.fromString(value.getString());
+            } catch (IllegalArgumentException e) {
+                throw new ValueFormatException("Could not parse the UUID " + value.getString(), e);
+            }
+        }
+
+        @Override
+        public Value encode(UUID value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value.toString());
+        }
+    };
+
+    private static final ValueCodec<URI> URI_CODEC = new ValueCodec<URI>() {
+        @Override
+        public URI decode(Value value) throws RepositoryException {
+            try {
+                return URI.create(value.getString());
+            } catch (IllegalArgumentException e) {
+                throw new ValueFormatException("Could not parse the URI " + value.getString(), e);
+            }
+        }
+
+        @Override
+        public Value encode(URI value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value.toString(), PropertyType.URI);
+        }
+    };
+
+    private ValueCodecs() {
+    }
+
+    /**
+     * Returns a new map of the default codecs by type.
+     */
+    static Map<Class<?>, ValueCodec<?>> getDefaultCodecs() {
+        Map<Class<?>, ValueCodec<?>> codecs = new HashMap<Class<?>, ValueCodec<?>>();
+        codecs.put(String.class, STRING);
+        codecs.put(Date.class, DATE);
+        codecs.put(Timestamp.class, TIMESTAMP);
+        codecs.put(Calendar.class, CALENDAR);
+        codecs.put(Integer.class, INTEGER);
+        codecs.put(int.class, INTEGER);
+        codecs.put(Long.class, LONG);
+        codecs.put(long.class, LONG);
+        codecs.put(Double.class, DOUBLE);
+        codecs.put(double.class, DOUBLE);
+        codecs.put(Boolean.class, BOOLEAN);
+        codecs.put(boolean.class, BOOLEAN);
+        codecs.put(Locale.class, LOCALE);
+        codecs.put(BigDecimal.class, DECIMAL);
+        codecs.put(UUID.class, UUID_CODEC);
+        codecs.put(URI.class, URI_CODEC);
+        for (String typeName : TEMPORAL_TYPES) {
+            try {
+                Class<?> type = Class.forName(typeName);
+                codecs.put(type, new TemporalCodec(type.getMethod("parse", CharSequence.class)));
+            } catch (ClassNotFoundException e) {
+                // running on Java 7 or older
+            } catch (NoSuchMethodException e) {
+                // running on Java 7 or older
+            }
+        }
+        return codecs;
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static ValueCodec<?> createEnumCodec(Class<?> type) {
+        return new EnumCodec(type);
+    }
+
+    private static Calendar toCalendar(long time) {
+        CalendarPrototype prototype = calendarPrototype;
+        TimeZone zone = TimeZone.getDefault();
+        Locale locale = Locale.getDefault();
+        if (!prototype.zone.equals(zone) || !prototype.locale.equals(locale)) {
+            prototype = new CalendarPrototype(zone, locale);
+            calendarPrototype = prototype;
+        }
+        Calendar cal = (Calendar) prototype.calendar.clone();
+        cal.setTimeInMillis(time);
+        return cal;
+    }
+
+    /**
+     * A calendar with the time zone and locale it was created for. It is never modified.
+     */
+    private static final class CalendarPrototype {
+
+        private final TimeZone zone;
+        private final Locale locale;
+        private final Calendar calendar;
+
+        private CalendarPrototype(TimeZone zone, Locale locale) {
+            this.zone = zone;
+            this.locale = locale;
+            this.calendar = Calendar.getInstance(zone, locale);
+        }
+    }
+
+    private static final class EnumCodec<E extends Enum<E>> implements ValueCodec<E> {
+
+        private final Class<E> type;
+
+        private EnumCodec(Class<E> type) {
+            this.type = type;
+        }
+
+        @Override
+        public E decode(Value value) throws RepositoryException {
+            return Enum.valueOf(type, value.getString());
+        }
+
+        @Override
+        public Value encode(E value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value.name());
+        }
+    }
+
+    /**
+     * Codec of a java.time type, read with its static <code>parse(CharSequence)</code> method and written with
+     * <code>toString()</code>.
+     */
+    private static final class TemporalCodec implements ValueCodec<Object> {
+
+        private final Method parse;
+
+        private TemporalCodec(Method parse) {
+            this.parse = parse;
+        }
+
+        @Override
+        public Object decode(Value value) throws RepositoryException {
+            try {
+                return parse.invoke(null, value.getString());
+            } catch (InvocationTargetException e) {
+                throw new ValueFormatException("Could not parse the " + parse.getDeclaringClass().getSimpleName() + " " + value.getString(), e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new RepositoryException("Could not invoke " + parse, e);
+            }
+        }
+
+        @Override
+        public Value encode(Object value, ValueFactory valueFactory) throws RepositoryException {
+            return valueFactory.createValue(value.toString());
+        }
+    }
+}
@@ -17,14 +17,15 @@
  */
 package org.jcrom.util;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.Calendar;
 
-import org.apache.tika.Tika;
 import org.jcrom.JcrDataProvider;
 import org.jcrom.JcrDataProviderImpl;
 import org.jcrom.JcrFile;
@@ -39,13 +40,46 @@ import org.jcrom.util.io.IOUtils;
  */
 public final class JcrDataUtils {
 
+    private static volatile MimeTypeDetector mimeTypeDetector;
+
     private JcrDataUtils() {
     }
 
+    /**
+     * Returns the detector used to set the MIME type of the files created without one.
+     * The default detector, based on Apache Tika, is created on first use and shared.
+     * 
+     * @return the MIME type detector
+     * @since 2.2.1
+     */
+    public static MimeTypeDetector getMimeTypeDetector() {
+        MimeTypeDetector detector = mimeTypeDetector;
+        if (detector == null) {
+            synchronized (JcrDataUtils.class) {
+                detector = mimeTypeDetector;
+                if (detector == null) {
+                    detector = new TikaMimeTypeDetector();
+                    mimeTypeDetector = detector;
+                }
+            }
+        }
+        return detector;
+    }
+
+    /**
+     * Sets the detector used to set the MIME type of the files created without one.
+     * 
+     * @param detector the MIME type detector, or null to use the default one
+     * @since 2.2.1
+     */
+    public static void setMimeTypeDetector(MimeTypeDetector detector) {
+        mimeTypeDetector = detector;
+    }
+
     public static JcrFile fromFile(String name, File file) {
         JcrFile jcrFile = fromFile(name, file, null);
         try {
-            jcrFile.setMimeType(new Tika().detect(file));
+            jcrFile.setMimeType(detectMimeType(file));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -73,9 +107,12 @@ public final class JcrDataUtils {
     }
 
     public static JcrFile fromInputStream(String name, InputStream input) {
-        JcrFile jcrFile = fromInputStream(name, input, null);
+        MimeTypeDetector detector = getMimeTypeDetector();
+        // the first bytes are read and then reset, so the stream must support marks
+        InputStream markableInput = input.markSupported() ? input : new BufferedInputStream(input, detector.getPrefixLength());
+        JcrFile jcrFile = fromInputStream(name, markableInput, null);
         try {
-            jcrFile.setMimeType(new Tika().detect(input));
+            jcrFile.setMimeType(detectMimeType(markableInput));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -104,7 +141,7 @@ public final class JcrDataUtils {
 
     public static JcrFile fromByteArray(String name, byte[] bytes) {
         JcrFile jcrFile = fromByteArray(name, bytes, null);
-        jcrFile.setMimeType(new Tika().detect(bytes));
+        jcrFile.setMimeType(detectMimeType(bytes));
 
         return jcrFile;
     }
@@ -128,6 +165,56 @@ public final class JcrDataUtils {
         return jcrFile;
     }
 
+    private static String detectMimeType(File file) throws IOException {
+        MimeTypeDetector detector = getMimeTypeDetector();
+        String mimeType = detector.detect(file.getName());
+        if (mimeType == null) {
+            InputStream input = FileUtils.openInputStream(file);
+            try {
+                mimeType = detector.detect(file.getName(), readPrefix(input, detector.getPrefixLength()));
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        }
+        return mimeType;
+    }
+
+    /**
+     * Detects the MIME type of a stream from its content only.
+     */
+    private static String detectMimeType(InputStream input) throws IOException {
+        MimeTypeDetector detector = getMimeTypeDetector();
+        int prefixLength = detector.getPrefixLength();
+        input.mark(prefixLength);
+        try {
+            return detector.detect(null, readPrefix(input, prefixLength));
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * Detects the MIME type of a byte array from its content only.
+     */
+    private static String detectMimeType(byte[] bytes) {
+        MimeTypeDetector detector = getMimeTypeDetector();
+        int prefixLength = detector.getPrefixLength();
+        return detector.detect(null, bytes.length > prefixLength ? Arrays.copyOf(bytes, prefixLength) : bytes);
+    }
+
+    /**
+     * Reads at most the number of bytes supplied from the start of a stream.
+     */
+    private static byte[] readPrefix(InputStream input, int length) throws IOException {
+        byte[] prefix = new byte[length];
+        int count = 0;
+        int n;
+        while (count < length && (n = input.read(prefix, count, length - count)) != -1) {
+            count += n;
+        }
+        return count < length ? Arrays.copyOf(prefix, count) : prefix;
+    }
+
     public static String toString(JcrDataProvider dataProvider, String encoding) {
         String data = null;
         switch (dataProvider.getType()) {
@@ -0,0 +1,51 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.util;
+
+/**
+ * Detects the MIME type of the files created by {@link JcrDataUtils}.
+ * The detection first tries the name of the file, and then reads the first bytes of the content.
+ * Implementations must be thread-safe.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public interface MimeTypeDetector {
+
+    /**
+     * Detects the MIME type of a file from its name only.
+     * 
+     * @param name the name of the file, can be null
+     * @return the MIME type, or null if the name is not enough to detect it
+     */
+    String detect(String name);
+
+    /**
+     * Detects the MIME type of a file from the first bytes of its content.
+     * 
+     * @param name the name of the file, can be null
+     * @param prefix the first bytes of the content, at most {@link #getPrefixLength()} bytes
+     * @return the MIME type
+     */
+    String detect(String name, byte[] prefix);
+
+    /**
+     * @return the maximum number of bytes of content read to detect a MIME type
+     */
+    int getPrefixLength();
+}
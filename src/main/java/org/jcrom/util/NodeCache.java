@@ -0,0 +1,255 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+
+/**
+ * Request-scoped cache of the nodes looked up by path or by identifier.
+ * <p>
+ * A cache is opened for a session on the current thread, and is then used by {@link PathUtils}, and therefore by the
+ * DAOs and the mappers, for the lookups made with that session. Lookups of missing nodes are cached as well. The cache
+ * is cleared whenever Jcrom or a DAO modifies the repository; code modifying the nodes directly, or refreshing the
+ * session, must call {@link #clear()}.
+ * </p>
+ * <p>
+ * A whole subtree can be loaded with a single query by {@link #prefetch(Node, long)}. The lookups of the nodes of a
+ * prefetched subtree, including the missing ones, are then answered from memory.
+ * </p>
+ * 
+ * <pre>
+ * NodeCache cache = NodeCache.open(session);
+ * try {
+ *     ...
+ * } finally {
+ *     cache.close();
+ * }
+ * </pre>
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public final class NodeCache {
+
+    private static final ThreadLocal<NodeCache> current = new ThreadLocal<NodeCache>();
+
+    /**
+     * Marker of the paths and identifiers of missing nodes.
+     */
+    private static final Object MISSING = new Object();
+
+    private final Session session;
+    private final NodeCache previous;
+    private final Map<String, Object> nodesByPath = new HashMap<String, Object>();
+    private final Map<String, Object> nodesById = new HashMap<String, Object>();
+    private final List<String> prefetchedPaths = new ArrayList<String>();
+    private int openCount = 1;
+
+    private NodeCache(Session session, NodeCache previous) {
+        this.session = session;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens a cache for the session supplied on the current thread. If a cache is already open for this session, it is
+     * shared, and must be closed as many times as it was opened.
+     * 
+     * @param session the session whose lookups are cached
+     * @return the cache
+     */
+    public static NodeCache open(Session session) {
+        NodeCache cache = current.get();
+        if (cache != null && cache.session == session) {
+            cache.openCount++;
+            return cache;
+        }
+        cache = new NodeCache(session, cache);
+        current.set(cache);
+        return cache;
+    }
+
+    /**
+     * Returns the cache open for the session supplied on the current thread.
+     * 
+     * @param session the session
+     * @return the cache, or null if there is none
+     */
+    public static NodeCache get(Session session) {
+        NodeCache cache = current.get();
+        return cache != null && cache.session == session ? cache : null;
+    }
+
+    /**
+     * Clears the cache open on the current thread, if any, after a modification of the repository.
+     */
+    public static void invalidate() {
+        NodeCache cache = current.get();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Closes this cache. The cache previously open on the current thread, if any, is restored.
+     */
+    public void close() {
+        if (current.get() != this) {
+            throw new IllegalStateException("The node cache is not the current one");
+        }
+        if (--openCount == 0) {
+            clear();
+            if (previous != null) {
+                current.set(previous);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached lookups.
+     */
+    public void clear() {
+        nodesByPath.clear();
+        nodesById.clear();
+        prefetchedPaths.clear();
+    }
+
+    /**
+     * Loads all the descendants of the node supplied with one JCR-SQL2 query, and caches them. The session must not
+     * have pending changes, which the query would not see.
+     * 
+     * @param root the root of the subtree
+     * @param limit the maximum number of descendants to load; larger subtrees are only partially cached
+     * @return true if the whole subtree is cached
+     * @throws RepositoryException
+     */
+    public boolean prefetch(Node root, long limit) throws RepositoryException {
+        String rootPath = root.getPath();
+        if (isPrefetched(rootPath)) {
+            return true;
+        }
+        Query query = session.getWorkspace().getQueryManager().createQuery("SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, " + PathUtils.toQueryPath(rootPath) + ")", Query.JCR_SQL2);
+        query.setLimit(limit + 1);
+        NodeIterator nodeIterator = query.execute().getNodes();
+        long count = 0;
+        nodesByPath.put(rootPath, root);
+        while (nodeIterator.hasNext()) {
+            Node node = nodeIterator.nextNode();
+            if (++count > limit) {
+                return false;
+            }
+            nodesByPath.put(node.getPath(), node);
+            nodesById.put(node.getIdentifier(), node);
+        }
+        prefetchedPaths.add(rootPath);
+        return true;
+    }
+
+    /**
+     * @param absolutePath an absolute path
+     * @return true if the node with the path supplied belongs to a prefetched subtree
+     */
+    public boolean isPrefetched(String absolutePath) {
+        for (String prefetchedPath : prefetchedPaths) {
+            if (absolutePath.equals(prefetchedPath) || absolutePath.startsWith(prefetchedPath.equals("/") ? "/" : prefetchedPath + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param absolutePath the absolute path of the node
+     * @return the node
+     * @throws PathNotFoundException if the node does not exist
+     * @throws RepositoryException
+     */
+    public Node getNode(String absolutePath) throws RepositoryException {
+        String path = absolutePath.charAt(0) == '/' ? absolutePath : "/" + absolutePath;
+        Object node = nodesByPath.get(path);
+        if (node == MISSING) {
+            throw new PathNotFoundException(path);
+        }
+        if (node == null) {
+            int lastSlash = path.lastIndexOf('/');
+            if (!path.equals("/") && isPrefetched(lastSlash == 0 ? "/" : path.substring(0, lastSlash))) {
+                // the parent subtree is fully cached, so the node does not exist
+                nodesByPath.put(path, MISSING);
+                throw new PathNotFoundException(path);
+            }
+            try {
+                node = path.equals("/") ? session.getRootNode() : session.getRootNode().getNode(PathUtils.relativePath(path));
+            } catch (PathNotFoundException e) {
+                nodesByPath.put(path, MISSING);
+                throw e;
+            }
+            nodesByPath.put(path, node);
+        }
+        return (Node) node;
+    }
+
+    /**
+     * @param absolutePath the absolute path of the node
+     * @return true if the node exists
+     * @throws RepositoryException
+     */
+    public boolean nodeExists(String absolutePath) throws RepositoryException {
+        try {
+            // the node is looked up rather than checked, as it is usually read next
+            getNode(absolutePath);
+            return true;
+        } catch (PathNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param id the identifier of the node
+     * @return the node
+     * @throws ItemNotFoundException if the node does not exist
+     * @throws RepositoryException
+     */
+    public Node getNodeById(String id) throws RepositoryException {
+        Object node = nodesById.get(id);
+        if (node == MISSING) {
+            throw new ItemNotFoundException(id);
+        }
+        if (node == null) {
+            try {
+                node = session.getNodeByIdentifier(id);
+            } catch (ItemNotFoundException e) {
+                nodesById.put(id, MISSING);
+                throw e;
+            }
+            nodesById.put(id, node);
+        }
+        return (Node) node;
+    }
+}
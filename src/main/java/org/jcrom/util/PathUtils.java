@@ -65,11 +65,54 @@ public final class PathUtils {
         return replaceNonAlphanumeric(str, '_');
     }
 
+    /**
+     * Quotes the path supplied to be used as the path operand of a JCR-SQL2 ISCHILDNODE, ISDESCENDANTNODE or ISSAMENODE
+     * constraint, which cannot be a bind variable. The path is enclosed in single quotes, or in double quotes if it
+     * contains a single quote; a quote of the enclosing kind found in the path is doubled.
+     * 
+     * @param path the absolute path of a node
+     * @return the quoted path
+     * @since 2.2.1
+     */
+    public static String toQueryPath(String path) {
+        char quote = path.indexOf('\'') >= 0 && path.indexOf('"') < 0 ? '"' : '\'';
+        StringBuilder quoted = new StringBuilder(path.length() + 2).append(quote);
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == quote) {
+                quoted.append(c);
+            }
+            quoted.append(c);
+        }
+        return quoted.append(quote).toString();
+    }
+
     public static Node getNode(String absolutePath, Session session) throws RepositoryException {
+        NodeCache cache = NodeCache.get(session);
+        if (cache != null) {
+            return cache.getNode(absolutePath);
+        }
         // special case, add directly to the root node
         return absolutePath.equals("/") ? session.getRootNode() : session.getRootNode().getNode(relativePath(absolutePath));
     }
 
+    /**
+     * Checks whether a node exists, using the {@link NodeCache} open for the session if any.
+     * 
+     * @param absolutePath the absolute path of the node
+     * @param session the session
+     * @return true if the node exists
+     * @throws RepositoryException
+     * @since 2.2.1
+     */
+    public static boolean nodeExists(String absolutePath, Session session) throws RepositoryException {
+        NodeCache cache = NodeCache.get(session);
+        if (cache != null) {
+            return cache.nodeExists(absolutePath);
+        }
+        return absolutePath.equals("/") || session.getRootNode().hasNode(relativePath(absolutePath));
+    }
+
     public static NodeIterator getNodes(String absolutePath, Session session) throws RepositoryException {
         // special case, add directly to the root node
         return absolutePath.equals("/") ? session.getRootNode().getNodes() : session.getRootNode().getNodes(relativePath(absolutePath));
@@ -84,6 +127,10 @@ public final class PathUtils {
     }
 
     public static Node getNodeById(String id, Session session) throws RepositoryException {
+        NodeCache cache = NodeCache.get(session);
+        if (cache != null) {
+            return cache.getNodeById(id);
+        }
         // return session.getNodeByUUID(uuid);
         return session.getNodeByIdentifier(id);
     }
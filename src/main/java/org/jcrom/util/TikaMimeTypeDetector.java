@@ -0,0 +1,152 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MimeTypes;
+import org.jcrom.JcrMappingException;
+
+/**
+ * {@link MimeTypeDetector} based on Apache Tika. By default, it uses the shared MIME types registry of Tika, without
+ * loading the parsers required by the Tika facade.
+ * <p>
+ * File extensions known to Tika are resolved without reading the content. The types detected from the content are
+ * kept in a LRU cache, keyed by the file extension and a SHA-256 digest of the whole prefix read for the detection.
+ * 
+ * @author Nicolas Dos Santos
+ * @since 2.2.1
+ */
+public class TikaMimeTypeDetector implements MimeTypeDetector {
+
+    private static final String DEFAULT_MIME_TYPE = MimeTypes.OCTET_STREAM;
+
+    private static final int DEFAULT_CACHE_SIZE = 256;
+
+    /**
+     * Minimum number of bytes of content read to detect a MIME type.
+     */
+    private static final int MIN_PREFIX_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Detector detector;
+    private final int prefixLength;
+    private final Map<String, String> cache;
+
+    public TikaMimeTypeDetector() {
+        this(MimeTypes.getDefaultMimeTypes(), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param detector the Tika detector used to detect MIME types
+     * @param cacheSize the maximum number of types kept in the cache, 0 to disable it
+     */
+    public TikaMimeTypeDetector(Detector detector, final int cacheSize) {
+        this.detector = detector;
+        this.prefixLength = Math.max(MimeTypes.getDefaultMimeTypes().getMinLength(), MIN_PREFIX_LENGTH);
+        if (cacheSize > 0) {
+            this.cache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        } else {
+            this.cache = null;
+        }
+    }
+
+    @Override
+    public String detect(String name) {
+        if (getExtension(name) == null) {
+            return null;
+        }
+        String mimeType = detect(name, (InputStream) null);
+        return DEFAULT_MIME_TYPE.equals(mimeType) ? null : mimeType;
+    }
+
+    @Override
+    public String detect(String name, byte[] prefix) {
+        if (cache == null) {
+            return detect(name, new ByteArrayInputStream(prefix));
+        }
+        String key = getCacheKey(name, prefix);
+        String mimeType = cache.get(key);
+        if (mimeType == null) {
+            mimeType = detect(name, new ByteArrayInputStream(prefix));
+            cache.put(key, mimeType);
+        }
+        return mimeType;
+    }
+
+    private String detect(String name, InputStream input) {
+        Metadata metadata = new Metadata();
+        if (name != null) {
+            metadata.set(Metadata.RESOURCE_NAME_KEY, name);
+        }
+        try {
+            return detector.detect(input, metadata).toString();
+        } catch (IOException e) {
+            throw new JcrMappingException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    private static String getCacheKey(String name, byte[] prefix) {
+        String extension = getExtension(name);
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(prefix);
+        } catch (NoSuchAlgorithmException e) {
+            throw new JcrMappingException("Could not compute the cache key of the MIME type", e);
+        }
+        StringBuilder key = new StringBuilder(2 * digest.length + 16);
+        key.append(extension != null ? extension : "").append('|');
+        for (byte b : digest) {
+            key.append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+        }
+        return key.toString();
+    }
+
+    private static String getExtension(String name) {
+        if (name == null) {
+            return null;
+        }
+        int index = name.lastIndexOf('.');
+        if (index < 0 || index == name.length() - 1) {
+            return null;
+        }
+        return name.substring(index + 1).toLowerCase();
+    }
+}
@@ -19,6 +19,7 @@ package org.jcrom;
 
 import org.jcrom.jackrabbit.AllJackrabbitTests;
 import org.jcrom.modeshape.AllModeShapeTests;
+import org.jcrom.type.TestJavaFXUpdateQueue;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
@@ -27,7 +28,7 @@ import org.junit.runners.Suite.SuiteClasses;
  * @author Nicolas Dos Santos
  */
 @RunWith(Suite.class)
-@SuiteClasses({ TestFilters.class, TestPathUtils.class, TestReflection.class, TestsJavaFXTypeHandler.class, TestValidator.class, AllJackrabbitTests.class, AllModeShapeTests.class })
+@SuiteClasses({ TestFilters.class, TestJcrDataUtils.class, TestLazyLoadDetector.class, TestPathUtils.class, TestReflection.class, TestTempFileDataProvider.class, TestsJavaFXTypeHandler.class, TestJavaFXUpdateQueue.class, TestValidator.class, AllJackrabbitTests.class, AllModeShapeTests.class })
 public class AllJcromTests {
 
 }
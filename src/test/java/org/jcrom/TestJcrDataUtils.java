@@ -0,0 +1,97 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+import org.jcrom.util.JcrDataUtils;
+import org.jcrom.util.MimeTypeDetector;
+import org.jcrom.util.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * @author Nicolas Dos Santos
+ */
+public class TestJcrDataUtils {
+
+    private static final byte[] JPEG_BYTES = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00, 0x01 };
+
+    @Test
+    public void testDetectMimeType() throws Exception {
+        assertEquals("text/plain", JcrDataUtils.fromByteArray("notes.txt", "hello".getBytes("UTF-8")).getMimeType());
+        assertEquals("image/jpeg", JcrDataUtils.fromByteArray("image", JPEG_BYTES).getMimeType());
+        assertEquals("image/jpeg", JcrDataUtils.fromByteArray("other-image", JPEG_BYTES).getMimeType());
+        // byte arrays are detected from their content only, as with the Tika facade
+        assertEquals("image/jpeg", JcrDataUtils.fromByteArray("image.txt", JPEG_BYTES).getMimeType());
+    }
+
+    @Test
+    public void testDetectMimeTypeWithSameHeader() throws Exception {
+        String prolog = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+        byte[] svg = (prolog + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10\" height=\"10\"/>").getBytes("UTF-8");
+        byte[] xml = (prolog + "<catalog><book id=\"1\"/></catalog>").getBytes("UTF-8");
+        assertEquals("image/svg+xml", JcrDataUtils.fromByteArray("image", svg).getMimeType());
+        // the cached type of the SVG content must not be returned for another content with the same header
+        assertEquals("application/xml", JcrDataUtils.fromByteArray("catalog", xml).getMimeType());
+    }
+
+    @Test
+    public void testDetectMimeTypeFromStreamWithoutMark() throws Exception {
+        InputStream input = new FilterInputStream(new ByteArrayInputStream(JPEG_BYTES)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        JcrFile jcrFile = JcrDataUtils.fromInputStream("image", input);
+        assertEquals("image/jpeg", jcrFile.getMimeType());
+        // the bytes read for the detection are still available
+        assertArrayEquals(JPEG_BYTES, IOUtils.toByteArray(jcrFile.getDataProvider().getInputStream()));
+    }
+
+    @Test
+    public void testCustomMimeTypeDetector() throws Exception {
+        JcrDataUtils.setMimeTypeDetector(new MimeTypeDetector() {
+            @Override
+            public String detect(String name) {
+                return null;
+            }
+
+            @Override
+            public String detect(String name, byte[] prefix) {
+                return "application/x-custom";
+            }
+
+            @Override
+            public int getPrefixLength() {
+                return 4;
+            }
+        });
+        try {
+            assertEquals("application/x-custom", JcrDataUtils.fromByteArray("notes.txt", JPEG_BYTES).getMimeType());
+        } finally {
+            JcrDataUtils.setMimeTypeDetector(null);
+        }
+        assertEquals("image/jpeg", JcrDataUtils.fromByteArray("notes.txt", JPEG_BYTES).getMimeType());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Nicolas Dos Santos
+ */
+public class TestLazyLoadDetector {
+
+    @Test
+    public void testSiblingResolutionsAreReported() {
+        LazyLoadDetector detector = new LazyLoadDetector(3, true);
+        Object parent = new Object();
+        for (int i = 0; i < 5; i++) {
+            detector.record(parent, "reference", "/parents/parent" + i + "/reference");
+        }
+        detector.record(parent, "children", "/parents/parent0/children");
+
+        List<LazyLoadStatistics> report = detector.getReport();
+        assertEquals(2, report.size());
+        LazyLoadStatistics stats = report.get(0);
+        assertEquals("java.lang.Object", stats.getOwnerClassName());
+        assertEquals("reference", stats.getFieldName());
+        assertEquals(5, stats.getLoadCount());
+        assertEquals(5, stats.getOwnerCount());
+        assertEquals(1, stats.getCallSites().size());
+        // frames of the JCROM packages, this test included, are skipped when looking for the call site
+        assertTrue(stats.getCallSites().iterator().next().startsWith("org.junit.runners.model.FrameworkMethod$1.runReflectiveCall("));
+        assertTrue(detector.isSuspect(stats));
+        assertFalse(detector.isSuspect(report.get(1)));
+        assertEquals(1, detector.getSuspects().size());
+
+        detector.reset();
+        assertTrue(detector.getReport().isEmpty());
+    }
+
+    @Test
+    public void testRepeatedResolutionOfSameEntityIsNotSuspect() {
+        LazyLoadDetector detector = new LazyLoadDetector(3, false);
+        for (int i = 0; i < 5; i++) {
+            detector.record(null, "reference", "/parent/reference");
+        }
+        LazyLoadStatistics stats = detector.getReport().get(0);
+        assertEquals(5, stats.getLoadCount());
+        assertEquals(1, stats.getOwnerCount());
+        assertTrue(stats.getCallSites().isEmpty());
+        assertTrue(detector.getSuspects().isEmpty());
+    }
+}
@@ -38,4 +38,12 @@ public class TestPathUtils {
         String path2 = "how_are_you?";
         assertEquals("how_are_you", PathUtils.createValidName(path2));
     }
+
+    @Test
+    public void testToQueryPath() {
+        assertEquals("'/content/parents'", PathUtils.toQueryPath("/content/parents"));
+        assertEquals("\"/content/it's\"", PathUtils.toQueryPath("/content/it's"));
+        assertEquals("'/it''s \"quoted\"'", PathUtils.toQueryPath("/it's \"quoted\""));
+        assertEquals("'/a]) OR ISDESCENDANTNODE(n, [/'", PathUtils.toQueryPath("/a]) OR ISDESCENDANTNODE(n, [/"));
+    }
 }
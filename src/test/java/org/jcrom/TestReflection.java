@@ -40,7 +40,7 @@ public class TestReflection {
     public void listClassesInPackage() throws Exception {
 
         Set<Class<?>> classes = ReflectionUtils.getClasses("org.jcrom.annotations");
-        assertEquals(19, classes.size());
+        assertEquals(21, classes.size());
         assertTrue(classes.contains(JcrChildNode.class));
         assertTrue(classes.contains(JcrFileNode.LoadType.class));
 
@@ -53,6 +53,6 @@ public class TestReflection {
         assertTrue(jcrClasses.contains(Node.class));
 
         Set<Class<?>> classesToMap = ReflectionUtils.getClasses("org.jcrom.dao");
-        assertEquals(12, classesToMap.size());
+        assertEquals(14, classesToMap.size());
     }
 }
@@ -0,0 +1,86 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+/**
+ * @author Nicolas Dos Santos
+ */
+public class TestTempFileDataProvider {
+
+    private static final byte[] CONTENT = "temporary content".getBytes();
+
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile("jcrom", ".tmp");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(CONTENT);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testSerializedCopyDoesNotOwnTheFile() throws Exception {
+        File file = createTempFile();
+        TempFileDataProvider dataProvider = new TempFileDataProvider(file);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(dataProvider);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        // the copy holds the content, and is not a TempFileDataProvider that would delete the file
+        assertSame(JcrDataProviderImpl.class, copy.getClass());
+        assertTrue(((JcrDataProvider) copy).isBytes());
+        assertArrayEquals(CONTENT, ((JcrDataProvider) copy).getBytes());
+        assertTrue(file.exists());
+
+        dataProvider.close();
+        assertFalse(file.exists());
+        assertArrayEquals(CONTENT, ((JcrDataProvider) copy).getBytes());
+    }
+
+    @Test
+    public void testFileIsDeletedWhenCollected() throws Exception {
+        File file = createTempFile();
+        new TempFileDataProvider(file);
+        for (int i = 0; i < 100 && file.exists(); i++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+        assertFalse(file.exists());
+    }
+}
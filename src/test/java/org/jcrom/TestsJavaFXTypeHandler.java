@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 
 import org.jcrom.entities.JavaFXEntity;
@@ -44,6 +45,46 @@ public class TestsJavaFXTypeHandler {
 
     private final TypeHandler typeHandler = new JavaFXTypeHandler();
 
+    /**
+     * An entity whose property is read and written through its value accessors.
+     */
+    public static class Book {
+
+        public StringProperty title;
+
+        private String value = "book";
+
+        public String getTitle() {
+            return value;
+        }
+
+        public void setTitle(String value) {
+            this.value = value;
+        }
+    }
+
+    public static class Novel extends Book {
+
+        @Override
+        public String getTitle() {
+            return "novel";
+        }
+    }
+
+    /**
+     * An entity with a property of the same name, only exposed by its property getter.
+     */
+    public static class Movie {
+
+        public StringProperty title;
+
+        private final StringProperty titleProperty = new SimpleStringProperty("movie");
+
+        public StringProperty titleProperty() {
+            return titleProperty;
+        }
+    }
+
     @Test
     public void testGetObject() throws NoSuchFieldException, IllegalAccessException {
         JavaFXEntity javaFXEntity = new JavaFXEntity();
@@ -135,4 +176,27 @@ public class TestsJavaFXTypeHandler {
         assertEquals(JavaFXEntity.class, typeHandler.getType(fieldObjectProperty.getType(), fieldObjectProperty.getGenericType(), javaFXEntity));
     }
 
+    @Test
+    public void testAccessorsAreResolvedPerClass() throws NoSuchFieldException, IllegalAccessException {
+        Field bookTitle = Book.class.getField("title");
+        Field movieTitle = Movie.class.getField("title");
+        Book book = new Book();
+        Movie movie = new Movie();
+
+        // the missing getter of Movie is not mistaken for the getter of Book, and conversely
+        for (int i = 0; i < 2; i++) {
+            assertEquals("movie", typeHandler.getObject(movieTitle, movie));
+            assertEquals("book", typeHandler.getObject(bookTitle, book));
+        }
+
+        typeHandler.setObject(movieTitle, movie, "Alien");
+        typeHandler.setObject(bookTitle, book, "Dune");
+        typeHandler.setObject(movieTitle, movie, "Brazil");
+        assertEquals("Brazil", movie.titleProperty().getValue());
+        assertEquals("Dune", book.getTitle());
+        assertEquals("Brazil", typeHandler.getObject(movieTitle, movie));
+        // the field declared by Book is read with the getter of the subclass
+        assertEquals("novel", typeHandler.getObject(bookTitle, new Novel()));
+    }
+
 }
@@ -0,0 +1,62 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jcrom.AbstractJcrEntity;
+import org.jcrom.annotations.JcrChildNode;
+import org.jcrom.annotations.JcrChildNode.Bucketing;
+
+/**
+ *
+ * @author Nicolas Dos Santos
+ */
+public class EntityWithBucketedChildren extends AbstractJcrEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @JcrChildNode(bucketing = Bucketing.HASH)
+    private List<TreeNode> comments;
+
+    @JcrChildNode(bucketing = Bucketing.DATE, lazy = true)
+    private List<TreeNode> events;
+
+    public EntityWithBucketedChildren() {
+        this.comments = new ArrayList<TreeNode>();
+        this.events = new ArrayList<TreeNode>();
+    }
+
+    public List<TreeNode> getComments() {
+        return comments;
+    }
+
+    public void setComments(List<TreeNode> comments) {
+        this.comments = comments;
+    }
+
+    public List<TreeNode> getEvents() {
+        return events;
+    }
+
+    public void setEvents(List<TreeNode> events) {
+        this.events = events;
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.jcrom.AbstractJcrEntity;
+import org.jcrom.annotations.JcrProperty;
+
+/**
+ * Entity with properties converted by the value codecs added to the built-in ones.
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class EntityWithCodecs extends AbstractJcrEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @JcrProperty
+    private BigDecimal price;
+    @JcrProperty
+    private UUID reference;
+    @JcrProperty
+    private URI link;
+    @JcrProperty
+    private List<URI> mirrors;
+    @JcrProperty
+    private int quantity;
+
+    public EntityWithCodecs() {
+        this.mirrors = new ArrayList<URI>();
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public UUID getReference() {
+        return reference;
+    }
+
+    public void setReference(UUID reference) {
+        this.reference = reference;
+    }
+
+    public URI getLink() {
+        return link;
+    }
+
+    public void setLink(URI link) {
+        this.link = link;
+    }
+
+    public List<URI> getMirrors() {
+        return mirrors;
+    }
+
+    public void addMirror(URI mirror) {
+        mirrors.add(mirror);
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import org.jcrom.AbstractJcrEntity;
+import org.jcrom.annotations.JcrProperty;
+import org.jcrom.annotations.JcrSerializedProperty;
+
+/**
+ *
+ * @author Nicolas Dos Santos
+ */
+public class EntityWithLazyProperties extends AbstractJcrEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @JcrProperty(lazy = true)
+    private InputStream data;
+
+    @JcrSerializedProperty(name = "noteList", lazy = true)
+    private ArrayList<String> notes;
+
+    public EntityWithLazyProperties() {
+    }
+
+    public InputStream getData() {
+        return data;
+    }
+
+    public void setData(InputStream data) {
+        this.data = data;
+    }
+
+    public ArrayList<String> getNotes() {
+        return notes;
+    }
+
+    public void setNotes(ArrayList<String> notes) {
+        this.notes = notes;
+    }
+
+}
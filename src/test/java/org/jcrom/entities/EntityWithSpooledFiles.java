@@ -0,0 +1,80 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import org.jcrom.AbstractJcrEntity;
+import org.jcrom.JcrFile;
+import org.jcrom.annotations.JcrFileNode;
+import org.jcrom.annotations.JcrFileNode.LoadType;
+
+/**
+ *
+ * @author Nicolas Dos Santos
+ */
+public class EntityWithSpooledFiles extends AbstractJcrEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @JcrFileNode(loadType = LoadType.TEMP_FILE)
+    private JcrFile tempFile;
+
+    @JcrFileNode(loadType = LoadType.MMAP)
+    private JcrFile mappedFile;
+
+    @JcrFileNode(loadType = LoadType.BYTES, spillThreshold = 1024)
+    private JcrFile largeFile;
+
+    @JcrFileNode(loadType = LoadType.BYTES, spillThreshold = 1024)
+    private JcrFile smallFile;
+
+    public EntityWithSpooledFiles() {
+    }
+
+    public JcrFile getTempFile() {
+        return tempFile;
+    }
+
+    public void setTempFile(JcrFile tempFile) {
+        this.tempFile = tempFile;
+    }
+
+    public JcrFile getMappedFile() {
+        return mappedFile;
+    }
+
+    public void setMappedFile(JcrFile mappedFile) {
+        this.mappedFile = mappedFile;
+    }
+
+    public JcrFile getLargeFile() {
+        return largeFile;
+    }
+
+    public void setLargeFile(JcrFile largeFile) {
+        this.largeFile = largeFile;
+    }
+
+    public JcrFile getSmallFile() {
+        return smallFile;
+    }
+
+    public void setSmallFile(JcrFile smallFile) {
+        this.smallFile = smallFile;
+    }
+
+}
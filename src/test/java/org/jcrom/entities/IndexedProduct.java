@@ -0,0 +1,78 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import org.jcrom.AbstractJcrEntity;
+import org.jcrom.annotations.JcrIndexed;
+import org.jcrom.annotations.JcrNode;
+import org.jcrom.annotations.JcrProperty;
+
+/**
+ *
+ * @author Nicolas Dos Santos
+ */
+@JcrNode(classNameProperty = "className")
+public class IndexedProduct extends AbstractJcrEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    @JcrIndexed
+    @JcrProperty
+    private String sku;
+
+    @JcrIndexed(sorted = true)
+    @JcrProperty
+    private double price;
+
+    @JcrProperty
+    private String description;
+
+    public IndexedProduct() {
+    }
+
+    public IndexedProduct(String sku, double price) {
+        this.name = sku;
+        this.sku = sku;
+        this.price = price;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public void setSku(String sku) {
+        this.sku = sku;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+}
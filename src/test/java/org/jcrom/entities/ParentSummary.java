@@ -0,0 +1,55 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.entities;
+
+import org.jcrom.annotations.JcrName;
+import org.jcrom.annotations.JcrPath;
+import org.jcrom.annotations.JcrProperty;
+
+/**
+ * Projection of {@link Parent} on a few properties.
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class ParentSummary {
+
+    @JcrPath
+    private String path;
+    @JcrName
+    private String name;
+    @JcrProperty
+    private String title;
+    @JcrProperty
+    private int fingers;
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getFingers() {
+        return fingers;
+    }
+}
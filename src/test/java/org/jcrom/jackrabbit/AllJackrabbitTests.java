@@ -28,7 +28,7 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({
 // @formatter:off
     TestAdobeCQ.class, TestConverter.class, TestInstantiation.class, TestJavaFX.class,
-    TestJcrFileReference.class, TestJcromCallback.class, TestJcrReference.class, TestLazyLoading.class,
+    TestJcrFileReference.class, TestJcrIndex.class, TestJcromCallback.class, TestJcrReference.class, TestLazyLoading.class,
     TestMapping.class, TestReferenceHistory.class, TestUpdateChildNodePerformance.class, TestUserManager.class
 // @formatter:on
 })
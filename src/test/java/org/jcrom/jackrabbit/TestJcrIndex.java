@@ -0,0 +1,171 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.jackrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.jcrom.JcrIndex;
+import org.jcrom.JcrMappingException;
+import org.jcrom.Jcrom;
+import org.jcrom.entities.IndexedProduct;
+import org.jcrom.entities.Parent;
+import org.junit.Test;
+
+/**
+ * 
+ * @author Nicolas Dos Santos
+ */
+public class TestJcrIndex extends TestAbstract {
+
+    @Test
+    public void testIndexedLookups() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(IndexedProduct.class);
+
+        Node products = session.getRootNode().addNode("products");
+        session.getRootNode().addNode("archive");
+        String chairId = jcrom.addNode(products, new IndexedProduct("chair", 49.5)).getIdentifier();
+        String tableId = jcrom.addNode(products, new IndexedProduct("table", 199.0)).getIdentifier();
+        String lampId = jcrom.addNode(products, new IndexedProduct("lamp", 25.0)).getIdentifier();
+        session.save();
+
+        JcrIndex<IndexedProduct> index = new JcrIndex<IndexedProduct>(jcrom, IndexedProduct.class, "/products");
+        Session indexSession = repo.login(new SimpleCredentials(userID, password));
+        try {
+            index.start(indexSession);
+            assertEquals(3, index.size());
+            assertEquals(chairId, index.getId("sku", "chair"));
+            assertNull(index.getId("sku", "sofa"));
+            assertTrue(index.getIds("sku", null).isEmpty());
+            assertNull(index.getId("sku", null));
+            assertEquals(Arrays.asList(lampId, chairId), index.getIds("price", 25.0, true, 100.0, false));
+            assertEquals(Arrays.asList(chairId, tableId), index.getIds("price", 25.0, false, null, false));
+
+            index.rebuild();
+            assertEquals(3, index.size());
+            assertEquals(Arrays.asList(lampId, chairId, tableId), index.getIds("price", null, false, null, false));
+
+            IndexedProduct chair = jcrom.fromNode(IndexedProduct.class, session.getNodeByIdentifier(index.getId("sku", "chair")));
+            assertEquals(49.5, chair.getPrice(), 0);
+
+            // the index follows the updates, additions, moves and removals
+            chair.setPrice(300.0);
+            jcrom.updateNode(session.getNodeByIdentifier(chairId), chair);
+            String sofaId = jcrom.addNode(products, new IndexedProduct("sofa", 120.0)).getIdentifier();
+            session.getNodeByIdentifier(tableId).remove();
+            session.save();
+            session.move("/products/lamp", "/archive/lamp");
+            session.save();
+
+            // the size alone may match before all the events are handled
+            waitForPrices(index, Arrays.asList(sofaId, chairId));
+            assertEquals(2, index.size());
+            assertEquals(sofaId, index.getId("sku", "sofa"));
+            assertTrue(index.getIds("sku", "table").isEmpty());
+            assertTrue(index.getIds("sku", "lamp").isEmpty());
+
+            session.move("/archive/lamp", "/products/lamp");
+            session.save();
+            waitForIndex(index, 3);
+            assertEquals(lampId, index.getId("sku", "lamp"));
+
+            index.stop();
+            assertEquals(0, index.size());
+        } finally {
+            indexSession.logout();
+        }
+    }
+
+    @Test
+    public void testMoveSubtree() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(IndexedProduct.class);
+
+        Node products = session.getRootNode().addNode("products");
+        products.addNode("store");
+        session.getRootNode().addNode("archive");
+        Node shelf = products.addNode("shelf");
+        String chairId = jcrom.addNode(shelf, new IndexedProduct("chair", 49.5)).getIdentifier();
+        String tableId = jcrom.addNode(shelf, new IndexedProduct("table", 199.0)).getIdentifier();
+        session.save();
+
+        JcrIndex<IndexedProduct> index = new JcrIndex<IndexedProduct>(jcrom, IndexedProduct.class, "/products");
+        Session indexSession = repo.login(new SimpleCredentials(userID, password));
+        try {
+            index.start(indexSession);
+            assertEquals(2, index.size());
+
+            // the indexed children of a node moved under the root path stay indexed
+            session.move("/products/shelf", "/products/store/shelf");
+            session.save();
+            // events are delivered in order, so the move is handled once the lamp is indexed
+            String lampId = jcrom.addNode(products, new IndexedProduct("lamp", 25.0)).getIdentifier();
+            session.save();
+            waitForIndex(index, 3);
+            assertEquals(chairId, index.getId("sku", "chair"));
+            assertEquals(Arrays.asList(lampId, chairId, tableId), index.getIds("price", null, false, null, false));
+
+            session.move("/products/store/shelf", "/archive/shelf");
+            session.save();
+            waitForIndex(index, 1);
+
+            session.move("/archive/shelf", "/products/shelf");
+            session.save();
+            waitForIndex(index, 3);
+            assertEquals(tableId, index.getId("sku", "table"));
+        } finally {
+            index.stop();
+            indexSession.logout();
+        }
+    }
+
+    @Test
+    public void testNoIndexedField() {
+        try {
+            new JcrIndex<Parent>(new Jcrom(), Parent.class, "/parents");
+            fail("JcrMappingException expected");
+        } catch (JcrMappingException e) {
+            // expected
+        }
+    }
+
+    private static void waitForPrices(JcrIndex<?> index, List<String> expectedIds) throws InterruptedException {
+        for (int i = 0; i < 100 && !index.getIds("price", null, false, null, false).equals(expectedIds); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expectedIds, index.getIds("price", null, false, null, false));
+    }
+
+    private static void waitForIndex(JcrIndex<?> index, int expectedSize) throws InterruptedException {
+        // observation events are delivered asynchronously
+        for (int i = 0; i < 100 && index.size() != expectedSize; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(expectedSize, index.size());
+    }
+}
@@ -18,15 +18,22 @@
 package org.jcrom.jackrabbit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
 import javax.jcr.PropertyType;
 import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
+import javax.jcr.Value;
 
 import org.jcrom.JcrMappingException;
 import org.jcrom.Jcrom;
@@ -193,6 +200,86 @@ public class TestJcrReference extends TestAbstract {
 		assertEquals("b2", container1.map.get("a").name);
 	}
 
+	@Test
+	public void testUpdateReferenceMap() throws RepositoryException {
+		Jcrom jcrom = new Jcrom();
+		jcrom.map(Container.class);
+		jcrom.map(B.class);
+
+		B b1 = new B("mb1");
+		B b2 = new B("mb2");
+		B b3 = new B("mb3");
+		jcrom.addNode(session.getRootNode(), b1);
+		jcrom.addNode(session.getRootNode(), b2);
+		jcrom.addNode(session.getRootNode(), b3);
+
+		Container container = new Container();
+		container.name = "c3";
+		container.map.put("a", b1);
+		container.map.put("b", b2);
+		Node node = jcrom.addNode(session.getRootNode(), container);
+		session.save();
+		Node referenceContainer = node.getNode("map");
+
+		// change one key, remove the other one, and add a new one
+		container.map.put("a", b3);
+		container.map.remove("b");
+		container.map.put("c", b1);
+		jcrom.updateNode(node, container);
+		session.save();
+
+		// the reference container is updated in place
+		assertEquals("/mb3", referenceContainer.getProperty("a").getString());
+		assertFalse(referenceContainer.hasProperty("b"));
+		assertEquals("/mb1", referenceContainer.getProperty("c").getString());
+
+		Container updated = jcrom.fromNode(Container.class, node);
+		assertEquals(2, updated.map.size());
+		assertEquals("mb3", updated.map.get("a").name);
+		assertEquals("mb1", updated.map.get("c").name);
+	}
+
+	@Test
+	public void testValidatedReferences() throws RepositoryException {
+		Jcrom jcrom = new Jcrom();
+		jcrom.map(ValidatedContainer.class);
+		jcrom.map(B.class);
+
+		B b1 = new B("vb1");
+		B b2 = new B("vb2");
+		jcrom.addNode(session.getRootNode(), b1, new String[] { "mix:referenceable" });
+		jcrom.addNode(session.getRootNode(), b2, new String[] { "mix:referenceable" });
+		session.save();
+		// not saved yet, so not visible to the existence query
+		B b3 = new B("vb3");
+		jcrom.addNode(session.getRootNode(), b3, new String[] { "mix:referenceable" });
+
+		ValidatedContainer container = new ValidatedContainer();
+		container.name = "vc";
+		container.refs.add(b1);
+		container.refs.add(b2);
+		container.refs.add(b3);
+		Node node = jcrom.addNode(session.getRootNode(), container);
+		session.save();
+
+		Value[] values = node.getProperty("refs").getValues();
+		assertEquals(3, values.length);
+		assertEquals(PropertyType.REFERENCE, values[0].getType());
+		assertEquals(b3.getId(), values[2].getString());
+
+		// a reference to a missing node is rejected before being written
+		B missing = new B("missing");
+		missing.setId(UUID.randomUUID().toString());
+		container.refs.add(missing);
+		try {
+			jcrom.updateNode(node, container);
+			fail("A reference to a missing node should have been rejected");
+		} catch (JcrMappingException e) {
+			assertTrue(e.getCause() instanceof ItemNotFoundException);
+		}
+		assertEquals(3, node.getProperty("refs").getValues().length);
+	}
+
 	public static class A1 {
 
 		@JcrName
@@ -424,4 +511,20 @@ public class TestJcrReference extends TestAbstract {
 
 	}
 
+	public static class ValidatedContainer {
+
+		@JcrName
+		private String name;
+
+		@JcrPath
+		private String path;
+
+		@JcrReference(validate = true)
+		protected List<B> refs = new ArrayList<B>();
+
+		public ValidatedContainer() {
+		}
+
+	}
+
 }
@@ -18,25 +18,46 @@
 package org.jcrom.jackrabbit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.jcr.Node;
+import javax.jcr.Session;
 import javax.jcr.SimpleCredentials;
 
+import net.sf.cglib.proxy.Factory;
+
+import org.jcrom.JcrDataProviderImpl;
 import org.jcrom.JcrFile;
+import org.jcrom.JcrSnapshot;
 import org.jcrom.Jcrom;
+import org.jcrom.LazyLoadDetector;
+import org.jcrom.LazyLoadStatistics;
+import org.jcrom.LazyProxy;
 import org.jcrom.SessionFactory;
 import org.jcrom.SessionFactoryImpl;
 import org.jcrom.dao.TreeDAO;
+import org.jcrom.entities.Document;
 import org.jcrom.entities.DynamicObject;
+import org.jcrom.entities.EntityWithLazyProperties;
 import org.jcrom.entities.LazyInterface;
 import org.jcrom.entities.LazyObject;
 import org.jcrom.entities.Tree;
 import org.jcrom.entities.TreeNode;
+import org.jcrom.util.NodeFilter;
+import org.jcrom.util.io.IOUtils;
 import org.junit.Test;
 
 /**
@@ -88,6 +109,10 @@ public class TestLazyLoading extends TestAbstract {
         Node treeRootNode = jcrom.addNode(session.getRootNode(), tree);
 
         Tree fromNode = jcrom.fromNode(Tree.class, treeRootNode);
+        // lazy lists are not enhanced, and proxies of the same type share their class
+        assertTrue(fromNode.getLazyObjects() instanceof LazyProxy);
+        assertFalse(fromNode.getLazyObjects() instanceof Factory);
+        assertSame(fromNode.getLazyObject().getClass(), jcrom.fromNode(Tree.class, treeRootNode).getLazyObject().getClass());
         assertEquals(tree.getChildren().size(), fromNode.getChildren().size());
 
         assertEquals(lazyObject1.getString(), fromNode.getLazyObject().getString());
@@ -292,4 +317,265 @@ public class TestLazyLoading extends TestAbstract {
         assertTrue(modifiedTree.getStartNode().getName().equals(productsNode.getName()));
         assertTrue(modifiedTree.getStartNode().getChildren().size() == productsNode.getChildren().size());
     }
+
+    @Test
+    public void testUpdateSkipsUnloadedLazyFields() throws Exception {
+
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(Tree.class).map(LazyObject.class);
+
+        LazyInterface lazyObject = new LazyObject();
+        lazyObject.setName("one");
+        lazyObject.setString("a");
+
+        Tree tree = new Tree();
+        tree.setName("Tree");
+        tree.addChild(new TreeNode("home"));
+        tree.addChild(new TreeNode("news"));
+        tree.setTemplateNode(new TreeNode("template"));
+        tree.setLazyObject(lazyObject);
+        tree.addLazyObject(lazyObject);
+
+        Node treeNode = jcrom.addNode(session.getRootNode(), tree);
+        session.save();
+
+        LazyLoadDetector detector = new LazyLoadDetector();
+        jcrom.setLazyLoadDetector(detector);
+
+        // the lazy fields that were never loaded are not loaded nor rewritten
+        Tree loadedTree = jcrom.fromNode(Tree.class, treeNode);
+        jcrom.updateNode(treeNode, loadedTree);
+        session.save();
+        assertTrue(detector.getReport().isEmpty());
+
+        Tree updatedTree = jcrom.fromNode(Tree.class, treeNode);
+        assertEquals(2, updatedTree.getChildren().size());
+        assertEquals("template", updatedTree.getTemplateNode().getName());
+        assertEquals(1, updatedTree.getLazyObjects().size());
+
+        // the loaded lazy fields are written
+        updatedTree.getLazyObject().setString("b");
+        updatedTree.getChildren().remove(0);
+        jcrom.updateNode(treeNode, updatedTree);
+        session.save();
+
+        Tree reloadedTree = jcrom.fromNode(Tree.class, treeNode);
+        assertEquals("b", reloadedTree.getLazyObject().getString());
+        assertEquals(1, reloadedTree.getChildren().size());
+        assertEquals("news", reloadedTree.getChildren().get(0).getName());
+    }
+
+    @Test
+    public void testUpdateOtherNodeWritesUnloadedLazyFields() throws Exception {
+
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(Tree.class).map(LazyObject.class);
+
+        LazyInterface lazyObject = new LazyObject();
+        lazyObject.setName("one");
+        lazyObject.setString("a");
+
+        Tree tree = new Tree();
+        tree.setName("Tree");
+        tree.addChild(new TreeNode("home"));
+        tree.addChild(new TreeNode("news"));
+        tree.setTemplateNode(new TreeNode("template"));
+        tree.addLazyObject(lazyObject);
+
+        Node sourceNode = jcrom.addNode(session.getRootNode().addNode("source"), tree);
+        Tree emptyTree = new Tree();
+        emptyTree.setName("Tree");
+        Node targetNode = jcrom.addNode(session.getRootNode().addNode("target"), emptyTree);
+        session.save();
+
+        // the lazy fields were never loaded, but the target node does not hold their state
+        Tree loadedTree = jcrom.fromNode(Tree.class, sourceNode);
+        jcrom.updateNode(targetNode, loadedTree);
+        session.save();
+
+        Tree copiedTree = jcrom.fromNode(Tree.class, targetNode);
+        assertEquals(2, copiedTree.getChildren().size());
+        assertEquals("home", copiedTree.getChildren().get(0).getName());
+        assertEquals("template", copiedTree.getTemplateNode().getName());
+        assertEquals(1, copiedTree.getLazyObjects().size());
+        assertEquals(2, jcrom.fromNode(Tree.class, sourceNode).getChildren().size());
+    }
+
+    @Test
+    public void testLazyProperties() throws Exception {
+
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(EntityWithLazyProperties.class);
+
+        EntityWithLazyProperties entity = new EntityWithLazyProperties();
+        entity.setName("lazyProperties");
+        entity.setData(new ByteArrayInputStream("content".getBytes("UTF-8")));
+        entity.setNotes(new ArrayList<String>(Arrays.asList("first", "second")));
+
+        Node node = jcrom.addNode(session.getRootNode(), entity);
+        session.save();
+
+        LazyLoadDetector detector = new LazyLoadDetector();
+        jcrom.setLazyLoadDetector(detector);
+
+        EntityWithLazyProperties loaded = jcrom.fromNode(EntityWithLazyProperties.class, node);
+        assertTrue(loaded.getData() instanceof Factory);
+        assertTrue(loaded.getNotes() instanceof Factory);
+
+        // the values are read on first access
+        assertEquals("content", IOUtils.toString(loaded.getData(), "UTF-8"));
+        assertEquals(2, loaded.getNotes().size());
+        assertEquals("second", loaded.getNotes().get(1));
+
+        // the resolutions are recorded under the Java field names, not the property names
+        Set<String> fieldNames = new HashSet<String>();
+        for (LazyLoadStatistics stats : detector.getReport()) {
+            fieldNames.add(stats.getFieldName());
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("data", "notes")), fieldNames);
+        jcrom.setLazyLoadDetector(null);
+
+        // a lazy serialized value is stored without its proxy
+        loaded.getNotes().add("third");
+        loaded.setData(new ByteArrayInputStream("modified".getBytes("UTF-8")));
+        jcrom.updateNode(node, loaded);
+        session.save();
+
+        EntityWithLazyProperties updated = jcrom.fromNode(EntityWithLazyProperties.class, node);
+        assertEquals("modified", IOUtils.toString(updated.getData(), "UTF-8"));
+        assertEquals(Arrays.asList("first", "second", "third"), new ArrayList<String>(updated.getNotes()));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(Tree.class).map(LazyObject.class);
+
+        TreeNode homeNode = new TreeNode("home");
+        homeNode.addChild(new TreeNode("news"));
+        homeNode.addChild(new TreeNode("products"));
+
+        LazyInterface lazyObject = new LazyObject();
+        lazyObject.setName("one");
+        lazyObject.setString("a");
+
+        Tree tree = new Tree();
+        tree.setName("Tree");
+        tree.setPath("/");
+        tree.addChild(homeNode);
+        tree.setTemplateNode(new TreeNode("template"));
+        tree.setLazyObject(lazyObject);
+        tree.addLazyObject(lazyObject);
+
+        Node treeRootNode = jcrom.addNode(session.getRootNode(), tree);
+        session.save();
+
+        JcrSnapshot<Tree> snapshot = new JcrSnapshot<Tree>(jcrom, Tree.class, "/Tree", new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE));
+        Session snapshotSession = repo.login(new SimpleCredentials(userID, password));
+        try {
+            snapshot.start(snapshotSession);
+            Tree frozenTree = snapshot.get();
+
+            // the whole graph is loaded, without any proxy
+            assertFalse(frozenTree.getChildren() instanceof LazyProxy);
+            assertEquals(TreeNode.class, frozenTree.getTemplateNode().getClass());
+            assertEquals(LazyObject.class, frozenTree.getLazyObject().getClass());
+            assertEquals("a", frozenTree.getLazyObjects().get(0).getString());
+            TreeNode frozenHome = frozenTree.getChildren().get(0);
+            assertEquals(2, frozenHome.getChildren().size());
+            assertFalse(frozenHome.getChildren() instanceof LazyProxy);
+            try {
+                frozenHome.getChildren().add(new TreeNode("about"));
+                fail("UnsupportedOperationException expected");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+
+            // a change replaces the graph, and leaves the previous one untouched
+            Tree fromNode = jcrom.fromNode(Tree.class, treeRootNode);
+            fromNode.getChildren().get(0).addChild(new TreeNode("about"));
+            jcrom.updateNode(treeRootNode, fromNode);
+            session.save();
+
+            for (int i = 0; i < 100 && snapshot.get() == frozenTree; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(3, snapshot.get().getChildren().get(0).getChildren().size());
+            assertEquals(2, frozenHome.getChildren().size());
+
+            snapshot.stop();
+            assertEquals(3, snapshot.get().getChildren().get(0).getChildren().size());
+        } finally {
+            snapshotSession.logout();
+        }
+    }
+
+    @Test
+    public void testSnapshotDanglingReference() throws Exception {
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(Tree.class);
+
+        TreeNode startNode = new TreeNode("start");
+        jcrom.addNode(session.getRootNode(), startNode);
+        Tree tree = new Tree();
+        tree.setName("Tree");
+        tree.setPath("/");
+        tree.setStartNode(startNode);
+        jcrom.addNode(session.getRootNode(), tree);
+        session.save();
+        assertEquals("start", jcrom.fromNode(Tree.class, session.getNode("/Tree")).getStartNode().getName());
+
+        // the lazy reference now loads to null
+        session.getNode("/start").remove();
+        session.save();
+
+        JcrSnapshot<Tree> snapshot = new JcrSnapshot<Tree>(jcrom, Tree.class, "/Tree", new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE));
+        Session snapshotSession = repo.login(new SimpleCredentials(userID, password));
+        try {
+            snapshot.start(snapshotSession);
+            snapshot.stop();
+        } finally {
+            snapshotSession.logout();
+        }
+        Tree frozenTree = snapshot.get();
+        Field startNodeField = Tree.class.getDeclaredField("startNode");
+        startNodeField.setAccessible(true);
+        assertNull(startNodeField.get(frozenTree));
+    }
+
+    @Test
+    public void testSnapshotFiles() throws Exception {
+        Jcrom jcrom = new Jcrom(true, true);
+        jcrom.map(Document.class);
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        JcrFile file = new JcrFile();
+        file.setName("file");
+        file.setMimeType("text/plain");
+        file.setLastModified(Calendar.getInstance());
+        file.setDataProvider(new JcrDataProviderImpl(content.toString().getBytes("UTF-8")));
+        Document document = new Document();
+        document.setName("document");
+        document.setPath("/");
+        document.setFile(file);
+        jcrom.addNode(session.getRootNode(), document);
+        session.save();
+
+        JcrSnapshot<Document> snapshot = new JcrSnapshot<Document>(jcrom, Document.class, "/document", new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE));
+        Session snapshotSession = repo.login(new SimpleCredentials(userID, password));
+        try {
+            snapshot.start(snapshotSession);
+            snapshot.stop();
+        } finally {
+            snapshotSession.logout();
+        }
+
+        // the content streamed from the repository is read while the session is alive
+        JcrFile frozenFile = snapshot.get().getFile();
+        assertTrue(frozenFile.getDataProvider().isBytes());
+        assertEquals(content.toString(), new String(frozenFile.getDataProvider().getBytes(), "UTF-8"));
+    }
 }
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -30,16 +31,25 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Currency;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.UUID;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -47,24 +57,35 @@ import javax.jcr.PathNotFoundException;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
 import javax.jcr.Value;
+import javax.jcr.ValueFactory;
 import javax.jcr.nodetype.NodeType;
 
 import junit.framework.Assert;
 
+import org.jcrom.JcrDataProvider;
 import org.jcrom.JcrDataProviderImpl;
 import org.jcrom.JcrFile;
 import org.jcrom.JcrMappingException;
 import org.jcrom.Jcrom;
+import org.jcrom.RangedJcrDataProvider;
+import org.jcrom.TempFileDataProvider;
+import org.jcrom.VersionInfo;
+import org.jcrom.annotations.JcrNode;
+import org.jcrom.callback.DefaultJcromCallback;
+import org.jcrom.dao.AbstractJcrDAO;
 import org.jcrom.dao.ChildDAO;
 import org.jcrom.dao.ChildDAO2;
 import org.jcrom.dao.ChildDAO3;
 import org.jcrom.dao.ChildDAO4;
 import org.jcrom.dao.CustomJCRFileDAO;
 import org.jcrom.dao.EntityWithMapChildrenDAO;
+import org.jcrom.dao.JcrDAO;
 import org.jcrom.dao.ParentDAO2;
 import org.jcrom.dao.ParentDAO3;
 import org.jcrom.dao.ParentDAO4;
+import org.jcrom.dao.RemovalProgressListener;
 import org.jcrom.entities.A;
 import org.jcrom.entities.AImpl;
 import org.jcrom.entities.Address;
@@ -86,8 +107,11 @@ import org.jcrom.entities.EntityModifiedMapFieldAdded;
 import org.jcrom.entities.EntityParent;
 import org.jcrom.entities.EntityToBeModified;
 import org.jcrom.entities.EntityWithBigDecimalSerialization;
+import org.jcrom.entities.EntityWithBucketedChildren;
+import org.jcrom.entities.EntityWithCodecs;
 import org.jcrom.entities.EntityWithMapChildren;
 import org.jcrom.entities.EntityWithSerializedProperties;
+import org.jcrom.entities.EntityWithSpooledFiles;
 import org.jcrom.entities.EnumEntity;
 import org.jcrom.entities.FinalEntity;
 import org.jcrom.entities.First;
@@ -97,6 +121,7 @@ import org.jcrom.entities.Parent;
 import org.jcrom.entities.Parent2;
 import org.jcrom.entities.Parent3;
 import org.jcrom.entities.Parent4;
+import org.jcrom.entities.ParentSummary;
 import org.jcrom.entities.Person;
 import org.jcrom.entities.Photo;
 import org.jcrom.entities.ProtectedPropertyNode;
@@ -107,13 +132,19 @@ import org.jcrom.entities.Second;
 import org.jcrom.entities.Shape;
 import org.jcrom.entities.ShapeParent;
 import org.jcrom.entities.Square;
+import org.jcrom.entities.TreeNode;
 import org.jcrom.entities.Triangle;
 import org.jcrom.entities.UserProfile;
 import org.jcrom.entities.WithParentInterface;
 import org.jcrom.invalidobject.InvalidEntity;
+import org.jcrom.type.DefaultTypeHandler;
+import org.jcrom.type.ValueCodec;
 import org.jcrom.util.JcrUtils;
+import org.jcrom.util.NodeCache;
 import org.jcrom.util.NodeFilter;
 import org.jcrom.util.PathUtils;
+import org.jcrom.util.io.FileUtils;
+import org.jcrom.util.io.IOUtils;
 import org.junit.Test;
 
 /**
@@ -853,6 +884,22 @@ public class TestMapping extends TestAbstract {
             System.out.println("Version [" + version.getVersionName() + "] [" + version.getBody() + "], base [" + version.getBaseVersionName() + "] [" + version.getBaseVersionCreated() + "]");
         }
 
+        List<VersionInfo> versionInfos = versionedDao.getVersionInfoList(entity.getPath(), new String[] { "body" }, 0, -1);
+        assertEquals(versionedDao.getVersionSize(entity.getPath()), versionInfos.size());
+        VersionInfo firstVersion = versionInfos.get(0);
+        assertEquals("1.0", firstVersion.getName());
+        assertEquals("First", firstVersion.getFrozenProperties().get("body")[0].getString());
+        assertFalse(firstVersion.getSuccessors().isEmpty());
+        int baseVersions = 0;
+        for (VersionInfo versionInfo : versionInfos) {
+            if (versionInfo.isBaseVersion()) {
+                baseVersions++;
+                assertEquals("Third", versionInfo.getFrozenProperties().get("body")[0].getString());
+            }
+        }
+        assertEquals(1, baseVersions);
+        assertEquals(1, versionedDao.getVersionInfoList(entity.getPath(), null, 1, 1).size());
+
         // move
         VersionedEntity anotherEntity = new VersionedEntity();
         anotherEntity.setName("anotherEntity");
@@ -880,6 +927,82 @@ public class TestMapping extends TestAbstract {
         versionedDao.remove(loadedEntity.getPath());
     }
 
+    @Test
+    public void versioningDAOOnlyModifiedNodes() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(VersionedEntity.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("versionedEntities");
+        VersionedDAO versionedDao = new VersionedDAO(session, jcrom);
+
+        VersionedEntity entity = new VersionedEntity();
+        entity.setTitle("MyEntity");
+        entity.setBody("First");
+        entity.setPath(rootNode.getPath());
+
+        VersionedEntity child = new VersionedEntity();
+        child.setName("child");
+        child.setBody("childBody");
+        entity.addVersionedChild(child);
+
+        versionedDao.create(entity);
+
+        String childPath = entity.getVersionedChildren().get(0).getPath();
+        long childVersions = JcrUtils.getVersionManager(session).getVersionHistory(childPath).getAllVersions().getSize();
+
+        // only the parent is modified
+        entity.setBody("Second");
+        versionedDao.update(entity);
+
+        assertEquals(2, versionedDao.getVersionSize(entity.getPath()));
+        assertEquals(childVersions, JcrUtils.getVersionManager(session).getVersionHistory(childPath).getAllVersions().getSize());
+        assertFalse(session.getNode(childPath).isCheckedOut());
+
+        // only the child is modified
+        entity.getVersionedChildren().get(0).setBody("childBody2");
+        versionedDao.update(entity);
+
+        assertEquals(2, versionedDao.getVersionSize(entity.getPath()));
+        assertEquals(childVersions + 1, JcrUtils.getVersionManager(session).getVersionHistory(childPath).getAllVersions().getSize());
+        assertEquals("childBody2", versionedDao.get(entity.getPath()).getVersionedChildren().get(0).getBody());
+        assertFalse(session.getNode(entity.getPath()).isCheckedOut());
+    }
+
+    @Test
+    public void versioningDAORenameUnderVersionedParent() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        session.save();
+        JcrDAO<Parent> parentDao = new AbstractJcrDAO<Parent>(Parent.class, session, jcrom, new String[] { "mix:versionable" }) {
+        };
+
+        Parent dad = createParent("John Bobs");
+        dad.setPath(rootNode.getPath());
+        dad.setAdoptedChild(createChild("Baby"));
+        parentDao.create(dad);
+        assertFalse(session.getNode(dad.getPath()).isCheckedOut());
+
+        // renaming the non-versionable child modifies its checked-in versionable parent
+        dad.getAdoptedChild().setName("Junior");
+        final List<String> classNameUpdates = new ArrayList<String>();
+        parentDao.update(dad, new DefaultJcromCallback(jcrom) {
+            @Override
+            public void doUpdateClassNameToProperty(Node node, JcrNode jcrNode, Object entity) throws JcrMappingException, RepositoryException {
+                classNameUpdates.add(node.getPath());
+                super.doUpdateClassNameToProperty(node, jcrNode, entity);
+            }
+        });
+        // the callback is invoked even though the class name is unchanged
+        assertEquals(Arrays.asList(dad.getPath()), classNameUpdates);
+
+        assertTrue(session.nodeExists(dad.getPath() + "/adoptedChild/Junior"));
+        assertFalse(session.nodeExists(dad.getPath() + "/adoptedChild/Baby"));
+        assertFalse(session.getNode(dad.getPath()).isCheckedOut());
+        assertEquals("Junior", parentDao.get(dad.getPath()).getAdoptedChild().getName());
+    }
+
     /**
      * Thanks to Andrius Kurtinaitis for identifying this problem and
      * contributing this test case.
@@ -1119,6 +1242,345 @@ public class TestMapping extends TestAbstract {
 
     }
 
+    @Test
+    public void testDAOsWithNodeCache() throws Exception {
+
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        session.getRootNode().getNode("content").addNode("archive");
+        session.save();
+        ParentDAO parentDao = new ParentDAO(session, jcrom);
+
+        Parent dad = createParent("John Bobs");
+        dad.setPath(rootNode.getPath());
+        String dadPath = rootNode.getPath() + "/" + PathUtils.createValidName(dad.getName());
+
+        NodeCache cache = NodeCache.open(session);
+        try {
+            assertSame(cache, NodeCache.get(session));
+            // the missing node is cached, until the DAO creates it
+            assertFalse(parentDao.exists(dadPath));
+            assertFalse(parentDao.exists(dadPath));
+            parentDao.create(dad);
+            assertTrue(parentDao.exists(dadPath));
+            assertSame(PathUtils.getNode(dadPath, session), PathUtils.getNode(dadPath, session));
+
+            Parent loadedParent = parentDao.get(dadPath);
+            assertEquals(dad.getNickName(), loadedParent.getNickName());
+            assertSame(PathUtils.getNodeById(loadedParent.getId(), session), PathUtils.getNodeById(loadedParent.getId(), session));
+
+            parentDao.move(loadedParent, "/content/archive");
+            assertFalse(parentDao.exists(dadPath));
+            assertTrue(parentDao.exists("/content/archive/" + PathUtils.createValidName(dad.getName())));
+
+            parentDao.remove("/content/archive/" + PathUtils.createValidName(dad.getName()));
+            assertFalse(parentDao.exists("/content/archive/" + PathUtils.createValidName(dad.getName())));
+
+            // direct modifications require the cache to be cleared
+            assertFalse(PathUtils.nodeExists("/content/other", session));
+            session.getRootNode().getNode("content").addNode("other");
+            assertFalse(PathUtils.nodeExists("/content/other", session));
+            cache.clear();
+            assertTrue(PathUtils.nodeExists("/content/other", session));
+        } finally {
+            cache.close();
+        }
+        assertNull(NodeCache.get(session));
+    }
+
+    @Test
+    public void testValueCodecs() throws Exception {
+        DefaultTypeHandler typeHandler = new DefaultTypeHandler();
+        assertFalse(typeHandler.isPropertyType(Currency.class));
+        typeHandler.registerCodec(Currency.class, new ValueCodec<Currency>() {
+            @Override
+            public Currency decode(Value value) throws RepositoryException {
+                return Currency.getInstance(value.getString());
+            }
+
+            @Override
+            public Value encode(Currency value, ValueFactory valueFactory) throws RepositoryException {
+                return valueFactory.createValue(value.getCurrencyCode());
+            }
+        });
+        assertTrue(typeHandler.isPropertyType(Currency.class));
+        assertTrue(typeHandler.isPropertyType(Currency[].class));
+        Jcrom jcrom = new Jcrom(true, false, new HashSet<Class<?>>(), typeHandler);
+        jcrom.map(EntityWithCodecs.class);
+
+        EntityWithCodecs entity = new EntityWithCodecs();
+        entity.setName("codecs");
+        entity.setPrice(new BigDecimal("12345678901234567890.123456789"));
+        entity.setReference(UUID.randomUUID());
+        entity.setLink(URI.create("http://jcrom.org/docs"));
+        entity.addMirror(URI.create("http://mirror1.jcrom.org"));
+        entity.addMirror(URI.create("http://mirror2.jcrom.org"));
+        entity.setQuantity(Integer.MAX_VALUE);
+
+        Node newNode = jcrom.addNode(session.getRootNode(), entity);
+        session.save();
+        assertEquals(PropertyType.DECIMAL, newNode.getProperty("price").getType());
+        assertEquals(PropertyType.URI, newNode.getProperty("link").getType());
+
+        EntityWithCodecs fromNode = jcrom.fromNode(EntityWithCodecs.class, newNode);
+        assertEquals(entity.getPrice(), fromNode.getPrice());
+        assertEquals(entity.getReference(), fromNode.getReference());
+        assertEquals(entity.getLink(), fromNode.getLink());
+        assertEquals(entity.getMirrors(), fromNode.getMirrors());
+        assertEquals(entity.getQuantity(), fromNode.getQuantity());
+
+        Value currency = typeHandler.createValue(Currency.class, Currency.getInstance("EUR"), session.getValueFactory());
+        assertEquals("EUR", currency.getString());
+        assertEquals(Currency.getInstance("EUR"), typeHandler.getValue(Currency.class, null, currency, null));
+
+        // java.time types are stored as ISO-8601 strings when running on Java 8 or newer
+        try {
+            Class<?> localDateClass = Class.forName("java.time.LocalDate");
+            ValueCodec<Object> codec = (ValueCodec<Object>) typeHandler.getCodec(localDateClass);
+            Object date = localDateClass.getMethod("of", int.class, int.class, int.class).invoke(null, 2015, 3, 14);
+            Value value = codec.encode(date, session.getValueFactory());
+            assertEquals("2015-03-14", value.getString());
+            assertEquals(date, codec.decode(value));
+        } catch (ClassNotFoundException e) {
+            // running on Java 7 or older
+        }
+    }
+
+    @Test
+    public void testDescendantPrefetch() throws Exception {
+
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        Parent dad = createParent("John Bobs");
+        dad.setAdoptedChild(createChild("Baby"));
+        dad.addChild(createChild("Jane"));
+        dad.addChild(createChild("Julie"));
+        Node dadNode = jcrom.addNode(rootNode, dad);
+        session.save();
+
+        Parent expected = jcrom.fromNode(Parent.class, dadNode);
+
+        jcrom.setPrefetchLimit(1000);
+        assertEquals(1000, jcrom.getPrefetchLimit());
+        Parent loadedParent = jcrom.fromNode(Parent.class, dadNode);
+        assertNull(NodeCache.get(session));
+        assertEquals(expected.getAdoptedChild().getName(), loadedParent.getAdoptedChild().getName());
+        assertEquals(expected.getChildren().size(), loadedParent.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertEquals(expected.getChildren().get(i).getName(), loadedParent.getChildren().get(i).getName());
+        }
+        assertEquals(expected.getTags(), loadedParent.getTags());
+
+        NodeCache cache = NodeCache.open(session);
+        try {
+            assertTrue(cache.prefetch(dadNode, 1000));
+            assertTrue(cache.isPrefetched(dadNode.getPath()));
+            assertTrue(cache.isPrefetched(dadNode.getPath() + "/adoptedChild"));
+            assertFalse(cache.isPrefetched(rootNode.getPath()));
+            // missing nodes under a prefetched node are answered from the cache
+            assertTrue(PathUtils.nodeExists(dadNode.getPath() + "/adoptedChild", session));
+            assertFalse(PathUtils.nodeExists(dadNode.getPath() + "/missing", session));
+
+            // a subtree larger than the limit is not marked as prefetched
+            cache.clear();
+            assertFalse(cache.prefetch(dadNode, 2));
+            assertFalse(cache.isPrefetched(dadNode.getPath()));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testDAORemoveAll() throws Exception {
+
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class).map(VersionedEntity.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        session.save();
+        ParentDAO parentDao = new ParentDAO(session, jcrom);
+
+        List<Parent> parents = new ArrayList<Parent>();
+        for (int i = 0; i < 5; i++) {
+            Parent parent = createParent("Parent" + i);
+            parent.setPath(rootNode.getPath());
+            parent.addChild(createChild("Child1"));
+            parent.addChild(createChild("Child2"));
+            parents.add(parentDao.create(parent));
+        }
+        long subtreeSize = getSubtreeSize(session.getNode(parents.get(0).getPath()));
+        assertTrue(subtreeSize > 3);
+
+        // small chunks, saved several times
+        final List<Long> progress = new ArrayList<Long>();
+        parentDao.setRemovalProgressListener(new RemovalProgressListener() {
+            @Override
+            public void chunkRemoved(long removed) {
+                progress.add(removed);
+            }
+        });
+        assertEquals(subtreeSize, parentDao.removeSubtree(parents.get(0).getPath(), 2));
+        assertEquals((subtreeSize + 1) / 2, progress.size());
+        assertEquals(2L, progress.get(0).longValue());
+        assertEquals(subtreeSize, progress.get(progress.size() - 1).longValue());
+        parentDao.setRemovalProgressListener(null);
+        assertFalse(parentDao.exists(parents.get(0).getPath()));
+        assertFalse(session.hasPendingChanges());
+        assertEquals(0, parentDao.removeSubtree(parents.get(0).getPath(), 2));
+
+        // a descendant of an entity removed in the same call is ignored
+        String childId = session.getNode(parents.get(1).getPath()).getNode("children").getNodes().nextNode().getIdentifier();
+        assertEquals(2 * subtreeSize, parentDao.removeAll(Arrays.asList(session.getNode(parents.get(1).getPath()).getIdentifier(), childId, session.getNode(parents.get(2).getPath()).getIdentifier())));
+        assertFalse(parentDao.exists(parents.get(1).getPath()));
+        assertFalse(parentDao.exists(parents.get(2).getPath()));
+
+        assertEquals(2 * subtreeSize, parentDao.removeAll(parentDao.query().childOf(rootNode.getPath())));
+        assertEquals(0, parentDao.findAll(rootNode.getPath()).size());
+
+        // versionable nodes are checked out and in again
+        Node versionedRootNode = session.getRootNode().getNode("content").addNode("versionedEntities");
+        session.save();
+        VersionedDAO versionedDao = new VersionedDAO(session, jcrom);
+        VersionedEntity entity = new VersionedEntity();
+        entity.setTitle("MyEntity");
+        entity.setPath(versionedRootNode.getPath());
+        for (int i = 0; i < 3; i++) {
+            VersionedEntity child = new VersionedEntity();
+            child.setName("child" + i);
+            entity.addVersionedChild(child);
+        }
+        entity.addUnversionedChild(createChild("John"));
+        versionedDao.create(entity);
+        Node entityNode = session.getNode(entity.getPath());
+        assertFalse(entityNode.isCheckedOut());
+
+        Node childrenNode = entityNode.getNode("versionedChildren");
+        assertEquals(getSubtreeSize(childrenNode) - 1, versionedDao.removeAll(Arrays.asList(childrenNode.getNode("child0").getIdentifier(), childrenNode.getNode("child1").getIdentifier(), childrenNode.getNode("child2").getIdentifier())));
+        assertFalse(childrenNode.hasNodes());
+        assertFalse(entityNode.isCheckedOut());
+        assertTrue(versionedDao.removeSubtree(entity.getPath(), 1) > 1);
+        assertFalse(versionedDao.exists(entity.getPath()));
+    }
+
+    private static long getSubtreeSize(Node node) throws RepositoryException {
+        long size = 1;
+        NodeIterator nodeIterator = node.getNodes();
+        while (nodeIterator.hasNext()) {
+            size += getSubtreeSize(nodeIterator.nextNode());
+        }
+        return size;
+    }
+
+    @Test
+    public void testDAOQuery() throws Exception {
+
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        session.getRootNode().addNode("other");
+        ParentDAO parentDao = new ParentDAO(session, jcrom);
+
+        String[] names = { "Ann", "Bob", "Bill", "Carl", "Betty" };
+        for (int i = 0; i < names.length; i++) {
+            Parent parent = createParent(names[i]);
+            parent.setFingers(i);
+            parent.setPath(rootNode.getPath());
+            parentDao.create(parent);
+        }
+        Parent other = createParent("Bart");
+        parentDao.create("/other", other);
+        session.save();
+
+        List<Parent> parents = parentDao.query().descendantOf(rootNode.getPath()).where("title").like("B%").orderBy("title").list();
+        assertEquals(3, parents.size());
+        assertEquals("Betty", parents.get(0).getTitle());
+        assertEquals("Bill", parents.get(1).getTitle());
+        assertEquals("Bob", parents.get(2).getTitle());
+
+        // ordering, offset and limit are executed by the repository
+        parents = parentDao.query().descendantOf(rootNode.getPath()).where("fingers").ge(1).orderByDescending("fingers").offset(1).limit(2).list();
+        assertEquals(2, parents.size());
+        assertEquals("Carl", parents.get(0).getTitle());
+        assertEquals("Bill", parents.get(1).getTitle());
+
+        parents = parentDao.query().where("name").eq("Ann").list();
+        assertEquals(1, parents.size());
+
+        // the statement only depends on the shape of the query
+        assertEquals(parentDao.query().where("title").eq("Ann").getStatement(), parentDao.query().where("title").eq("Bob").getStatement());
+        assertTrue(parentDao.query().where("title").eq("Ann").getStatement().endsWith("WHERE n.[title] = $p0"));
+
+        // paths are quoted, and are not part of the cached statement
+        Parent quoted = createParent("Quentin");
+        parentDao.create(session.getRootNode().addNode("it's").getPath(), quoted);
+        session.save();
+        parents = parentDao.query().childOf("/it's").list();
+        assertEquals(1, parents.size());
+        assertEquals("Quentin", parents.get(0).getTitle());
+        assertTrue(parentDao.query().childOf("/it's").getStatement().endsWith("WHERE ISCHILDNODE(n, \"/it's\")"));
+        assertTrue(parentDao.query().childOf("/other").getStatement().endsWith("WHERE ISCHILDNODE(n, '/other')"));
+        assertEquals(1, parentDao.findAllAfter("/it's", null, new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE), -1).size());
+
+        // projection on a few properties
+        List<ParentSummary> summaries = parentDao.query().descendantOf(rootNode.getPath()).where("fingers").lt(2).orderBy("fingers").project(ParentSummary.class);
+        assertEquals(2, summaries.size());
+        assertEquals("Ann", summaries.get(0).getTitle());
+        assertEquals("Ann", summaries.get(0).getName());
+        assertEquals(rootNode.getPath() + "/Ann", summaries.get(0).getPath());
+        assertEquals(0, summaries.get(0).getFingers());
+        assertEquals("Bob", summaries.get(1).getTitle());
+        assertEquals(1, summaries.get(1).getFingers());
+
+        try {
+            parentDao.query().where("children");
+            fail("Child nodes are not mapped to a property");
+        } catch (JcrMappingException e) {
+        }
+    }
+
+    @Test
+    public void testDAOPagination() throws Exception {
+
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Node rootNode = session.getRootNode().addNode("content").addNode("parents");
+        ParentDAO parentDao = new ParentDAO(session, jcrom);
+
+        String[] names = { "Carl", "Bob", "Ann", "Bill", "Betty" };
+        for (String name : names) {
+            Parent parent = createParent(name);
+            parent.setPath(rootNode.getPath());
+            parentDao.create(parent);
+        }
+        session.save();
+
+        NodeFilter nodeFilter = new NodeFilter(NodeFilter.INCLUDE_ALL, NodeFilter.DEPTH_INFINITE);
+        List<Parent> page = parentDao.findAllAfter(rootNode.getPath(), null, nodeFilter, 2);
+        assertEquals(2, page.size());
+        assertEquals("Ann", page.get(0).getName());
+        assertEquals("Betty", page.get(1).getName());
+
+        page = parentDao.findAllAfter(rootNode.getPath(), page.get(1).getName(), nodeFilter, 2);
+        assertEquals(2, page.size());
+        assertEquals("Bill", page.get(0).getName());
+        assertEquals("Bob", page.get(1).getName());
+
+        page = parentDao.findAllAfter(rootNode.getPath(), page.get(1).getName(), nodeFilter, 2);
+        assertEquals(1, page.size());
+        assertEquals("Carl", page.get(0).getName());
+
+        // positional pages keep the document order
+        page = parentDao.findAll(rootNode.getPath(), nodeFilter, 3, 10);
+        assertEquals(2, page.size());
+        assertEquals("Bill", page.get(0).getName());
+    }
+
     @Test
     public void testDAOCreateNode() throws Exception {
         Jcrom jcrom = new Jcrom(true, true);
@@ -1786,6 +2248,173 @@ public class TestMapping extends TestAbstract {
         assertEquals(parent.getChildren().size(), updateParentFromNode.getChildren().size());
     }
 
+    @Test
+    public void testReorderChildren() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Parent parent = createParent("John Bobs");
+        for (int i = 0; i < 6; i++) {
+            parent.addChild(createChild("Child" + i));
+        }
+        Node node = jcrom.addNode(session.getRootNode(), parent);
+        session.save();
+
+        Parent loadedParent = jcrom.fromNode(Parent.class, node);
+        List<Child> children = loadedParent.getChildren();
+        // move the last child first, swap two children, remove one and insert a new one in the middle
+        children.add(0, children.remove(5));
+        children.add(2, children.remove(3));
+        children.remove(4);
+        children.add(3, createChild("NewChild"));
+        List<String> expectedNames = new ArrayList<String>();
+        for (Child child : children) {
+            expectedNames.add(PathUtils.createValidName(child.getTitle()));
+        }
+        jcrom.updateNode(node, loadedParent);
+        session.save();
+
+        List<String> names = new ArrayList<String>();
+        for (Child child : jcrom.fromNode(Parent.class, node).getChildren()) {
+            names.add(child.getName());
+        }
+        assertEquals(Arrays.asList("Child5", "Child0", "Child2", "NewChild", "Child1", "Child4"), expectedNames);
+        assertEquals(expectedNames, names);
+    }
+
+    @Test
+    public void testBucketedChildren() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(EntityWithBucketedChildren.class);
+
+        EntityWithBucketedChildren entity = new EntityWithBucketedChildren();
+        entity.setName("log");
+        Set<String> commentNames = new HashSet<String>();
+        for (int i = 0; i < 20; i++) {
+            entity.getComments().add(new TreeNode("comment" + i));
+            commentNames.add("comment" + i);
+        }
+        entity.getEvents().add(new TreeNode("started"));
+        entity.getEvents().add(new TreeNode("stopped"));
+        Node node = jcrom.addNode(session.getRootNode(), entity);
+        session.save();
+
+        // the children are stored in their buckets
+        NodeIterator buckets = node.getNode("comments").getNodes();
+        while (buckets.hasNext()) {
+            Node bucket = buckets.nextNode();
+            assertTrue(bucket.getName().matches("[0-9a-f]{2}"));
+            assertTrue(bucket.isNodeType("jcrom:bucket"));
+            assertTrue(bucket.getNodes().nextNode().getName().startsWith("comment"));
+        }
+        Calendar today = Calendar.getInstance();
+        String eventBucket = String.format("/log/events/%04d/%02d/%02d", today.get(Calendar.YEAR), today.get(Calendar.MONTH) + 1, today.get(Calendar.DAY_OF_MONTH));
+        assertTrue(session.nodeExists(eventBucket + "/started"));
+
+        EntityWithBucketedChildren loadedEntity = jcrom.fromNode(EntityWithBucketedChildren.class, node);
+        assertEquals(commentNames, getNames(loadedEntity.getComments()));
+        assertEquals(Arrays.asList("started", "stopped"), new ArrayList<String>(getNames(loadedEntity.getEvents())));
+
+        // update, add and remove children
+        loadedEntity.getComments().get(0).getChildren().add(new TreeNode("reply"));
+        String removedName = loadedEntity.getComments().remove(1).getName();
+        commentNames.remove(removedName);
+        loadedEntity.getComments().add(new TreeNode("comment20"));
+        commentNames.add("comment20");
+        loadedEntity.getEvents().add(new TreeNode("restarted"));
+        jcrom.updateNode(node, loadedEntity);
+        session.save();
+
+        EntityWithBucketedChildren updatedEntity = jcrom.fromNode(EntityWithBucketedChildren.class, node);
+        assertEquals(commentNames, getNames(updatedEntity.getComments()));
+        assertEquals(3, updatedEntity.getEvents().size());
+        for (TreeNode comment : updatedEntity.getComments()) {
+            assertEquals(comment.getName().equals(loadedEntity.getComments().get(0).getName()) ? 1 : 0, comment.getChildren().size());
+        }
+        // no bucket is left empty
+        buckets = node.getNode("comments").getNodes();
+        while (buckets.hasNext()) {
+            assertTrue(buckets.nextNode().hasNodes());
+        }
+
+        // migrate children stored directly in the container node
+        jcrom.addNode(node.getNode("comments"), new TreeNode("flat1"));
+        jcrom.addNode(node.getNode("comments"), new TreeNode("flat2"));
+        assertEquals(2, jcrom.bucketChildNodes(node, EntityWithBucketedChildren.class, "comments"));
+        assertEquals(0, jcrom.bucketChildNodes(node, EntityWithBucketedChildren.class, "comments"));
+        session.save();
+        commentNames.add("flat1");
+        commentNames.add("flat2");
+        assertEquals(commentNames, getNames(jcrom.fromNode(EntityWithBucketedChildren.class, node).getComments()));
+
+        // a child named like a bucket is not taken for a bucket
+        Node ambiguous = jcrom.addNode(node.getNode("comments"), new TreeNode("0a"));
+        session.save();
+        commentNames.add("0a");
+        assertEquals(commentNames, getNames(jcrom.fromNode(EntityWithBucketedChildren.class, node).getComments()));
+        try {
+            jcrom.bucketChildNodes(node, EntityWithBucketedChildren.class, "comments");
+            fail("The child 0a is named like a bucket");
+        } catch (JcrMappingException e) {
+        }
+        assertTrue(session.nodeExists("/log/comments/0a"));
+        assertFalse(ambiguous.isNodeType("jcrom:bucket"));
+    }
+
+    private static Set<String> getNames(List<TreeNode> treeNodes) {
+        Set<String> names = new LinkedHashSet<String>();
+        for (TreeNode treeNode : treeNodes) {
+            names.add(treeNode.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testDatesFollowDefaultTimeZone() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        TimeZone defaultZone = TimeZone.getDefault();
+        try {
+            for (String zoneId : new String[] { "GMT+05:00", "GMT-03:00" }) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zoneId));
+                Parent parent = createParent("Zoned " + zoneId.substring(3, 4));
+                Node node = jcrom.addNode(session.getRootNode(), parent);
+                assertTrue(node.getProperty("birthDay").getString().endsWith(zoneId.substring(3)));
+                assertEquals(parent.getBirthDay(), jcrom.fromNode(Parent.class, node).getBirthDay());
+            }
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    public void testAddChildrenWithSameName() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(Parent.class);
+
+        Parent parent = createParent("John Bobs");
+        parent.addChild(createChild("Child0"));
+        Node node = jcrom.addNode(session.getRootNode(), parent);
+        session.save();
+
+        // two new entries copied from elsewhere, mapped to the same node name
+        Parent loadedParent = jcrom.fromNode(Parent.class, node);
+        for (int i = 0; i < 2; i++) {
+            Child copy = createChild("Copy");
+            copy.setPath("/elsewhere/Copy");
+            loadedParent.getChildren().add(copy);
+        }
+        jcrom.updateNode(node, loadedParent);
+        session.save();
+
+        List<String> names = new ArrayList<String>();
+        for (Child child : jcrom.fromNode(Parent.class, node).getChildren()) {
+            names.add(child.getName());
+        }
+        assertEquals(Arrays.asList("Child0", "Copy"), names);
+    }
+
     /**
      * Thanks to Decebal Suiu for contributing this test case.
      * @throws Exception 
@@ -1839,6 +2468,142 @@ public class TestMapping extends TestAbstract {
         assertTrue(fromNode.getDataProvider().getContentLength() > 0);
     }
 
+    @Test
+    public void testJcrFileSpooledLoadTypes() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(EntityWithSpooledFiles.class);
+
+        byte[] content = FileUtils.readFileToByteArray(new File("src/test/resources/ogg.jpg"));
+        EntityWithSpooledFiles entity = new EntityWithSpooledFiles();
+        entity.setName("spooled");
+        entity.setTempFile(createFile("temp.jpg"));
+        entity.setMappedFile(createFile("mapped.jpg"));
+        entity.setLargeFile(createFile("large.jpg"));
+        JcrFile smallFile = createFile("small.txt");
+        smallFile.setDataProvider(new JcrDataProviderImpl(new byte[] { 1, 2, 3 }));
+        entity.setSmallFile(smallFile);
+        Node node = jcrom.addNode(session.getRootNode(), entity);
+        session.save();
+
+        EntityWithSpooledFiles fromNode = jcrom.fromNode(EntityWithSpooledFiles.class, node);
+
+        TempFileDataProvider tempData = (TempFileDataProvider) fromNode.getTempFile().getDataProvider();
+        assertTrue(tempData.isFile());
+        assertTrue(Arrays.equals(content, FileUtils.readFileToByteArray(tempData.getFile())));
+
+        TempFileDataProvider mappedData = (TempFileDataProvider) fromNode.getMappedFile().getDataProvider();
+        ByteBuffer buffer = mappedData.getByteBuffer();
+        assertEquals(content.length, buffer.remaining());
+        byte[] mappedContent = new byte[buffer.remaining()];
+        buffer.get(mappedContent);
+        assertTrue(Arrays.equals(content, mappedContent));
+
+        // the content larger than the threshold is spooled, the other one is loaded in memory
+        assertTrue(fromNode.getLargeFile().getDataProvider() instanceof TempFileDataProvider);
+        assertTrue(fromNode.getSmallFile().getDataProvider().isBytes());
+
+        // the temporary files are deleted on close
+        File file = tempData.getFile();
+        tempData.close();
+        assertFalse(file.exists());
+        mappedData.close();
+        ((TempFileDataProvider) fromNode.getLargeFile().getDataProvider()).close();
+    }
+
+    @Test
+    public void testJcrFileRangedReads() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.map(JcrFile.class);
+
+        Node root = session.getRootNode().addNode("ranges");
+
+        File imageFile = new File("src/test/resources/ogg.jpg");
+        byte[] content = FileUtils.readFileToByteArray(imageFile);
+        Node node = jcrom.addNode(root, createFile("myfile"));
+        session.save();
+
+        JcrDataProvider[] dataProviders = { jcrom.fromNode(JcrFile.class, node).getDataProvider(), new JcrDataProviderImpl(imageFile), new JcrDataProviderImpl(content) };
+        for (JcrDataProvider provider : dataProviders) {
+            assertTrue(provider instanceof RangedJcrDataProvider);
+            RangedJcrDataProvider dataProvider = (RangedJcrDataProvider) provider;
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            assertEquals(100, dataProvider.read(buffer, 1000));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(content, 1000, 1100), buffer.array()));
+            assertEquals(-1, dataProvider.read(ByteBuffer.allocate(10), content.length));
+            // a large direct buffer is filled by chunks
+            ByteBuffer directBuffer = ByteBuffer.allocateDirect(content.length + 100);
+            int n = dataProvider.read(directBuffer, 0);
+            assertTrue(n > 0 && n <= content.length);
+            byte[] read = new byte[n];
+            directBuffer.flip();
+            directBuffer.get(read);
+            assertTrue(Arrays.equals(Arrays.copyOf(content, n), read));
+
+            InputStream range = dataProvider.openRange(content.length - 500, 200);
+            try {
+                assertTrue(Arrays.equals(Arrays.copyOfRange(content, content.length - 500, content.length - 300), IOUtils.toByteArray(range)));
+            } finally {
+                range.close();
+            }
+            range = dataProvider.openRange(content.length - 50, -1);
+            try {
+                assertTrue(Arrays.equals(Arrays.copyOfRange(content, content.length - 50, content.length), IOUtils.toByteArray(range)));
+            } finally {
+                range.close();
+            }
+        }
+    }
+
+    @Test
+    public void testJcrFileContentDigest() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.setContentDigest(true);
+        jcrom.map(JcrFile.class);
+
+        Node root = session.getRootNode().addNode("digests");
+
+        JcrFile file = createFile("myfile");
+        Node node = jcrom.addNode(root, file);
+        session.save();
+
+        Node contentNode = node.getNode("jcr:content");
+        String digest = contentNode.getProperty("jcrom:sha256").getString();
+        assertEquals(64, digest.length());
+        Calendar lastModified = contentNode.getProperty("jcr:lastModified").getDate();
+
+        // the same content from a stream, with another modification date, is not uploaded again
+        JcrFile sameFile = createFile("myfile", true);
+        sameFile.getLastModified().add(Calendar.DAY_OF_MONTH, 1);
+        jcrom.updateNode(node, sameFile);
+        assertFalse(session.hasPendingChanges());
+        assertEquals(lastModified.getTimeInMillis(), contentNode.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+
+        // a different content is uploaded
+        JcrFile otherFile = createFile("myfile");
+        otherFile.setDataProvider(new JcrDataProviderImpl(new byte[] { 1, 2, 3 }));
+        otherFile.setLastModified(Calendar.getInstance());
+        jcrom.updateNode(node, otherFile);
+        session.save();
+        assertFalse(digest.equals(contentNode.getProperty("jcrom:sha256").getString()));
+        assertEquals(3, contentNode.getProperty("jcr:data").getBinary().getSize());
+        assertEquals(otherFile.getLastModified().getTimeInMillis(), contentNode.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+
+        // the content written while the digests are disabled drops the stale digest
+        jcrom.setContentDigest(false);
+        jcrom.updateNode(node, createFile("myfile"));
+        session.save();
+        assertFalse(contentNode.hasProperty("jcrom:sha256"));
+        assertFalse(contentNode.getProperty("jcr:data").getBinary().getSize() == 3);
+
+        // so that the former content is uploaded again once the digests are enabled
+        jcrom.setContentDigest(true);
+        otherFile.setDataProvider(new JcrDataProviderImpl(new byte[] { 1, 2, 3 }));
+        jcrom.updateNode(node, otherFile);
+        session.save();
+        assertEquals(3, contentNode.getProperty("jcr:data").getBinary().getSize());
+        assertEquals(64, contentNode.getProperty("jcrom:sha256").getString().length());
+    }
+
     /**
      * Thanks to Danilo Barboza and postmaster@doubleegg.com for contributing this test case.
      * @throws Exception 
@@ -1843,6 +1843,41 @@ public class TestMapping extends ModeShapeSingleUseTest {
         assertTrue(fromNode.getDataProvider().getContentLength() > 0);
     }
 
+    @Test
+    public void testJcrFileContentDigest() throws Exception {
+        Jcrom jcrom = new Jcrom();
+        jcrom.setContentDigest(true);
+        jcrom.map(JcrFile.class);
+
+        Node root = ((Session) session).getRootNode().addNode("digests");
+
+        JcrFile file = createFile("myfile");
+        Node node = jcrom.addNode(root, file);
+        session.save();
+
+        Node contentNode = node.getNode("jcr:content");
+        String digest = contentNode.getProperty("jcrom:sha256").getString();
+        assertEquals(64, digest.length());
+        Calendar lastModified = contentNode.getProperty("jcr:lastModified").getDate();
+
+        // the same content from a stream, with another modification date, is not uploaded again
+        JcrFile sameFile = createFile("myfile", true);
+        sameFile.getLastModified().add(Calendar.DAY_OF_MONTH, 1);
+        jcrom.updateNode(node, sameFile);
+        assertFalse(session.hasPendingChanges());
+        assertEquals(lastModified.getTimeInMillis(), contentNode.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+
+        // a different content is uploaded
+        JcrFile otherFile = createFile("myfile");
+        otherFile.setDataProvider(new JcrDataProviderImpl(new byte[] { 1, 2, 3 }));
+        otherFile.setLastModified(Calendar.getInstance());
+        jcrom.updateNode(node, otherFile);
+        session.save();
+        assertFalse(digest.equals(contentNode.getProperty("jcrom:sha256").getString()));
+        assertEquals(3, contentNode.getProperty("jcr:data").getBinary().getSize());
+        assertEquals(otherFile.getLastModified().getTimeInMillis(), contentNode.getProperty("jcr:lastModified").getDate().getTimeInMillis());
+    }
+
     /**
      * Thanks to Danilo Barboza and postmaster@doubleegg.com for contributing this test case.
      * @throws Exception 
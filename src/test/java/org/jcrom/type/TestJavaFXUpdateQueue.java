@@ -0,0 +1,157 @@
+/**
+ * This file is part of the JCROM project.
+ * Copyright (C) 2008-2015 - All rights reserved.
+ * Authors: Olafur Gauti Gudmundsson, Nicolas Dos Santos
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jcrom.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+
+import org.junit.Test;
+
+/**
+ * @author Nicolas Dos Santos
+ */
+public class TestJavaFXUpdateQueue {
+
+    /**
+     * Stands for the JavaFX thread: the tasks are only run on {@link #pulse()}.
+     */
+    private static class PulseExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void pulse() {
+            List<Runnable> pulseTasks = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            for (Runnable task : pulseTasks) {
+                task.run();
+            }
+        }
+    }
+
+    @Test
+    public void testUpdatesCollapseToLastValue() {
+        PulseExecutor executor = new PulseExecutor();
+        JavaFXUpdateQueue queue = new JavaFXUpdateQueue(executor);
+        final StringProperty title = new SimpleStringProperty();
+        final StringProperty author = new SimpleStringProperty();
+        final List<String> applied = new ArrayList<String>();
+
+        for (final String value : Arrays.asList("a", "b", "c")) {
+            queue.add(title, null, new Runnable() {
+                @Override
+                public void run() {
+                    applied.add("title=" + value);
+                    title.setValue(value);
+                }
+            });
+        }
+        queue.add(author, null, new Runnable() {
+            @Override
+            public void run() {
+                applied.add("author=john");
+                author.setValue("john");
+            }
+        });
+
+        // a single task is scheduled, and each property only receives its last value
+        assertEquals(1, executor.tasks.size());
+        executor.pulse();
+        assertEquals(Arrays.asList("title=c", "author=john"), applied);
+        assertEquals("c", title.getValue());
+        assertEquals("john", author.getValue());
+
+        // a new task is scheduled once the queue is applied
+        queue.add(title, null, new Runnable() {
+            @Override
+            public void run() {
+                title.setValue("d");
+            }
+        });
+        assertEquals(1, executor.tasks.size());
+        executor.pulse();
+        assertEquals("d", title.getValue());
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void testSettersOfDistinctObjectsAreKept() throws NoSuchMethodException {
+        PulseExecutor executor = new PulseExecutor();
+        JavaFXUpdateQueue queue = new JavaFXUpdateQueue(executor);
+        final List<String> applied = new ArrayList<String>();
+        Object setter = StringBuilder.class.getMethod("append", String.class);
+
+        // equal targets are still distinct objects
+        queue.add(new String("target"), setter, new Runnable() {
+            @Override
+            public void run() {
+                applied.add("first");
+            }
+        });
+        queue.add(new String("target"), setter, new Runnable() {
+            @Override
+            public void run() {
+                applied.add("second");
+            }
+        });
+        executor.pulse();
+        assertEquals(Arrays.asList("first", "second"), applied);
+    }
+
+    @Test
+    public void testFailedSchedulingIsRetried() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final boolean[] started = { false };
+        JavaFXUpdateQueue queue = new JavaFXUpdateQueue(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!started[0]) {
+                    throw new IllegalStateException("Toolkit not initialized");
+                }
+                tasks.add(command);
+            }
+        });
+        Runnable update = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        try {
+            queue.add(this, null, update);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        started[0] = true;
+        queue.add(this, null, update);
+        assertEquals(1, tasks.size());
+    }
+}